@@ -0,0 +1,62 @@
+package io.will.langchain4jpoc.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of chat messages through {@link JacksonConfig.ChatMessageSerializer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatMessageSerializerBenchmark {
+
+    @Param({"10", "100"})
+    private int messageCount;
+
+    private ObjectMapper objectMapper;
+    private List<ChatMessage> messages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        // registers the serializer on the mapper
+        new JacksonConfig(objectMapper);
+
+        messages = new ArrayList<>();
+        messages.add(SystemMessage.from("You are a helpful assistant."));
+        for (int i = 1; i < messageCount; i++) {
+            messages.add(i % 2 == 1
+                    ? UserMessage.from("Question " + i + ": what is the capital of China?")
+                    : AiMessage.from("Answer " + i + ": the capital of China is Beijing."));
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(messages);
+    }
+}
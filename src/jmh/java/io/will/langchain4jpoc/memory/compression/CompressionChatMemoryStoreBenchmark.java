@@ -0,0 +1,82 @@
+package io.will.langchain4jpoc.memory.compression;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store overhead around the summarizing LLM call, which is stubbed out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionChatMemoryStoreBenchmark {
+
+    @Param({"4", "20"})
+    private int turns;
+
+    private CompressionChatMemoryStore store;
+    private List<ChatMessage> history;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public String chat(String userMessage) {
+                return "The user is called Will and lives in Guangzhou.";
+            }
+        };
+        store = new CompressionChatMemoryStore(new InMemoryChatMemoryStore(), chatModel,
+                new CharacterRatioTokenCountEstimator(4), false, 1, 1, new SimpleMeterRegistry());
+        // compress on every update
+        ReflectionTestUtils.setField(store, "threshold", 1);
+
+        history = new ArrayList<>();
+        history.add(SystemMessage.from("You are a helpful assistant."));
+        for (int i = 0; i < turns; i++) {
+            history.add(UserMessage.from("Question number " + i + ", what did I tell you about my plans for the weekend?"));
+            history.add(AiMessage.from("Answer number " + i + ", you said you were going hiking and then meeting friends for dinner."));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Benchmark
+    public List<ChatMessage> updateMessages() {
+        store.updateMessages("user123", history);
+        return store.getMessages("user123");
+    }
+
+    @Benchmark
+    public String buildCompressionPrompt() {
+        return CompressionChatMemoryStore.buildCompressionPrompt(history);
+    }
+}
@@ -0,0 +1,95 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of Mem0 search responses into chat messages, from the raw response body on.
+ * The client is stubbed with the decoder WebClient uses and the cache is off, so nothing but parsing and
+ * extraction is measured. {@link #treeModel()} is the former String/JsonNode approach, for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Mem0ChatMemoryStoreBenchmark {
+
+    @Param({"3", "50"})
+    private int memories;
+
+    private Mem0ChatMemoryStore store;
+    private ObjectMapper objectMapper;
+    private byte[] response;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        Jackson2JsonDecoder decoder = new Jackson2JsonDecoder(objectMapper);
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < memories; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"id\":\"").append(i).append("\",\"memory\":\"User mentioned fact number ").append(i)
+                    .append(" about their trip to Guangzhou\",\"score\":0.8").append(",\"user_id\":\"user123\"")
+                    .append(",\"categories\":[\"travel\"],\"created_at\":\"2025-01-01T00:00:00Z\"}");
+        }
+        response = body.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+        Mem0Client mem0Client = new Mem0Client("benchmark", "http://localhost", null, objectMapper, new SimpleMeterRegistry()) {
+            @Override
+            public List<Mem0Memory> searchMemories(String query, String userId, String appId, int topK) {
+                return decoder.decode(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(response)),
+                                ResolvableType.forClass(Mem0Memory.class), null, null)
+                        .cast(Mem0Memory.class)
+                        .collectList()
+                        .block();
+            }
+        };
+        store = new Mem0ChatMemoryStore(mem0Client, "benchmark", memories);
+    }
+
+    @Benchmark
+    public List<ChatMessage> searchMessages() {
+        return store.searchMessages("user123", "Where did I travel?");
+    }
+
+    @Benchmark
+    public List<ChatMessage> treeModel() throws IOException {
+        JsonNode tree = objectMapper.readTree(new String(response, StandardCharsets.UTF_8));
+        List<ChatMessage> messages = new ArrayList<>();
+        for (JsonNode memory : tree) {
+            if (memory.has("memory") && memory.get("memory").isTextual()) {
+                messages.add(UserMessage.from(memory.get("memory").asText()));
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,64 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import io.micrometer.context.ContextSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of making the query of a turn available to the chat memory: once per turn for binding it
+ * to the thread, and per signal for a streamed answer carrying the context.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryContextBenchmark {
+
+    @Param({"100"})
+    private int tokens;
+
+    private final Context context = QueryContext.createContext("user123", "What is my name?");
+
+    @Benchmark
+    public String bindPerTurn() {
+        try (ContextSnapshot.Scope scope = QueryContext.openScope(context)) {
+            return QueryContext.getQuery("user123");
+        }
+    }
+
+    @Benchmark
+    public Long streamedTurn() {
+        // the shape of the streaming endpoint: bind around the call, then let the tokens flow
+        return Flux.deferContextual(ctx -> {
+                    try (ContextSnapshot.Scope scope = QueryContext.openScope(ctx)) {
+                        return Flux.range(0, tokens);
+                    }
+                })
+                .contextWrite(context)
+                .count()
+                .block();
+    }
+
+    @Benchmark
+    public Integer streamWithoutContext() {
+        // baseline for streamedTurn
+        return Flux.range(0, tokens)
+                .then(Mono.just(tokens))
+                .block();
+    }
+}
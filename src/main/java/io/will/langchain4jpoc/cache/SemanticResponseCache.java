@@ -0,0 +1,200 @@
+package io.will.langchain4jpoc.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.will.langchain4jpoc.memory.vector.HnswIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers questions that are close enough to one answered before without going to the LLM.
+ * <p>
+ * Questions are embedded in-process and compared by cosine similarity with the cached ones of the same scope.
+ * Entries are bounded and expired by a Caffeine cache like the other caches of the application, and indexed by
+ * scope so that a lookup is an exact scan over the entries of its own scope only.
+ * <p>
+ * Answers are tied to the memory context they were produced with: every entry carries a fingerprint of the
+ * messages the memory gave the LLM, and only entries with the fingerprint of the current context can be hit.
+ * A session whose history has moved on (the user corrected a fact, say) asks the LLM again, and with the global
+ * scope an answer derived from the memory of one user is never given to a user with a different memory.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.semantic-cache.enabled", havingValue = "true")
+public class SemanticResponseCache {
+    private static final Logger logger = LoggerFactory.getLogger(SemanticResponseCache.class);
+
+    public enum Scope {
+        /** Answers are only reused within the memory ID they were given in. */
+        SESSION,
+        /** Answers are shared by all sessions with the same memory context, an empty one for instance. */
+        GLOBAL
+    }
+
+    private final EmbeddingModel embeddingModel;
+    private final double similarityThreshold;
+    private final Scope scope;
+    private final Cache<Long, Entry> entries;
+    // the entries of the cache by scope key, kept in step with it by the removal listener
+    private final ConcurrentMap<String, ConcurrentMap<Long, Entry>> entriesByScope = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+
+    public SemanticResponseCache(EmbeddingModel embeddingModel,
+                                 @Value("${chat.semantic-cache.similarity-threshold:0.92}") double similarityThreshold,
+                                 @Value("${chat.semantic-cache.scope:session}") Scope scope,
+                                 @Value("${chat.semantic-cache.max-entries:10000}") long maxEntries,
+                                 @Value("${chat.semantic-cache.ttl:1h}") Duration ttl,
+                                 MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.similarityThreshold = similarityThreshold;
+        this.scope = scope;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .removalListener((Long id, Entry entry, RemovalCause cause) -> {
+                    if (entry != null) {
+                        unindex(entry);
+                    }
+                })
+                .build();
+        this.hits = Counter.builder("chat.semantic-cache.lookups").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("chat.semantic-cache.lookups").tag("result", "miss").register(meterRegistry);
+        meterRegistry.gauge("chat.semantic-cache.size", entries, Cache::estimatedSize);
+        logger.info("Semantic response cache enabled, threshold: {}, scope: {}, max entries: {}, ttl: {}",
+                similarityThreshold, scope, maxEntries, ttl);
+    }
+
+    /**
+     * Embeds the query and looks for a cached answer to a similar one given with the same memory context.
+     * Blocks for the embedding. The returned lookup carries the embedding and the fingerprint of the context,
+     * so that a miss can be filled with {@link #put} without computing them again.
+     *
+     * @param context the messages of the memory the answer would be derived from, without the query itself
+     */
+    public Lookup lookup(Object memoryId, String query, List<ChatMessage> context) {
+        float[] vector = HnswIndex.normalize(embeddingModel.embed(query).content().vector());
+        String scopeKey = scope == Scope.GLOBAL ? "" : String.valueOf(memoryId);
+        String fingerprint = fingerprint(context);
+
+        Entry best = null;
+        double bestScore = similarityThreshold;
+        ConcurrentMap<Long, Entry> scopeEntries = entriesByScope.get(scopeKey);
+        if (scopeEntries != null) {
+            for (Entry entry : scopeEntries.values()) {
+                if (!entry.contextFingerprint().equals(fingerprint)) {
+                    continue;
+                }
+                double score = HnswIndex.dot(vector, entry.vector());
+                if (score >= bestScore) {
+                    best = entry;
+                    bestScore = score;
+                }
+            }
+        }
+
+        if (best != null && entries.getIfPresent(best.id()) != null) {
+            hits.increment();
+            logger.debug("Semantic cache hit for memory ID: {}, similarity: {}", memoryId, bestScore);
+            return new Lookup(scopeKey, fingerprint, vector, best.answer());
+        }
+        misses.increment();
+        return new Lookup(scopeKey, fingerprint, vector, null);
+    }
+
+    private static String fingerprint(List<ChatMessage> context) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(
+                    ChatMessageSerializer.messagesToJson(context).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public void put(Lookup miss, String answer) {
+        if (answer == null || answer.isBlank()) {
+            return;
+        }
+        long id = ids.incrementAndGet();
+        Entry entry = new Entry(id, miss.scopeKey(), miss.contextFingerprint(), miss.vector(), answer);
+        // indexed before it is cached, so that the removal listener can't run ahead of the index
+        entriesByScope.compute(entry.scopeKey(), (key, scopeEntries) -> {
+            ConcurrentMap<Long, Entry> updated = scopeEntries != null ? scopeEntries : new ConcurrentHashMap<>();
+            updated.put(id, entry);
+            return updated;
+        });
+        entries.put(id, entry);
+    }
+
+    private void unindex(Entry entry) {
+        entriesByScope.computeIfPresent(entry.scopeKey(), (key, scopeEntries) -> {
+            scopeEntries.remove(entry.id());
+            return scopeEntries.isEmpty() ? null : scopeEntries;
+        });
+    }
+
+    /**
+     * Wraps a streamed answer so that it is cached once it has completed. Cancelled or failed streams are not cached.
+     */
+    public Flux<String> cacheStream(Lookup miss, Flux<String> tokens) {
+        return Flux.defer(() -> {
+            StringBuilder answer = new StringBuilder();
+            return tokens
+                    .doOnNext(answer::append)
+                    .doOnComplete(() -> put(miss, answer.toString()));
+        });
+    }
+
+    /**
+     * Streams a cached answer word by word, the way the streaming endpoint would have sent it.
+     */
+    public static Flux<String> replay(String answer) {
+        return Flux.fromArray(answer.split("(?<=\\s)(?=\\S)"));
+    }
+
+    public double hitRate() {
+        double lookups = hits.count() + misses.count();
+        return lookups == 0 ? 0.0 : hits.count() / lookups;
+    }
+
+    public long hitCount() {
+        return (long) hits.count();
+    }
+
+    public long missCount() {
+        return (long) misses.count();
+    }
+
+    public long size() {
+        return entries.estimatedSize();
+    }
+
+    public record Lookup(String scopeKey, String contextFingerprint, float[] vector, String answer) {
+        public boolean hit() {
+            return answer != null;
+        }
+    }
+
+    private record Entry(long id, String scopeKey, String contextFingerprint, float[] vector, String answer) {}
+}
@@ -0,0 +1,378 @@
+package io.will.langchain4jpoc.concurrent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits how much work runs at the same time, with a limit that follows the latency of that work.
+ * <p>
+ * The limit is adjusted gradient style: while calls are about as fast as their long-term average it grows by
+ * roughly its square root per call, once they get slower than {@code rttTolerance} times that average it shrinks
+ * in proportion, and a call that timed out or was turned away further down cuts it by a tenth.
+ * <p>
+ * Work over the limit waits in a queue per tenant. Tenants are served round robin, so one busy tenant can't make
+ * the others wait behind all of its work. Once the queue is full, or work has waited for {@code maxQueueWait},
+ * it fails with {@link LimitExceededException} rather than adding to the latency of everything behind it.
+ * Work that must not be lost is run with {@link #runWithoutShedding}, it queues like the rest but is never turned away.
+ * <p>
+ * The tenant is taken from the Reactor Context under {@link #TENANT_KEY} unless it is given explicitly.
+ */
+public class AdaptiveLimiter {
+    public static final String TENANT_KEY = AdaptiveLimiter.class.getName() + ".tenant";
+    public static final String DEFAULT_TENANT = "default";
+
+    // share of the limit kept after a call timed out or was rejected further down
+    private static final double DROP_FACTOR = 0.9;
+    private static final long MAX_RETRY_AFTER_SECONDS = 60;
+
+    private enum Outcome { SUCCESS, DROPPED, IGNORED }
+
+    private final String name;
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueSize;
+    private final int maxQueuePerTenant;
+    private final Duration maxQueueWait;
+    private final double rttTolerance;
+    private final double smoothing;
+    private final int longWindow;
+
+    // all guarded by this
+    private double limit;
+    private int inFlight;
+    private int queued;
+    // moving average of the latency in nanos over about longWindow calls, 0 until the first call
+    private double longRtt;
+    private final Map<String, ArrayDeque<Waiter>> queues = new HashMap<>();
+    private final ArrayDeque<String> tenantOrder = new ArrayDeque<>();
+
+    private final Timer queueWait;
+    // tagged with the reason (queue-full, queue-timeout)
+    private final Meter.MeterProvider<Counter> rejected;
+
+    private AdaptiveLimiter(String name,
+                            boolean enabled,
+                            int initialLimit,
+                            int minLimit,
+                            int maxLimit,
+                            int maxQueueSize,
+                            int maxQueuePerTenant,
+                            Duration maxQueueWait,
+                            double rttTolerance,
+                            double smoothing,
+                            int longWindow,
+                            MeterRegistry meterRegistry) {
+        this.name = name;
+        this.enabled = enabled;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.maxQueueSize = maxQueueSize;
+        this.maxQueuePerTenant = maxQueuePerTenant;
+        this.maxQueueWait = maxQueueWait;
+        this.rttTolerance = rttTolerance;
+        this.smoothing = smoothing;
+        this.longWindow = Math.max(1, longWindow);
+        this.limit = Math.clamp(initialLimit, this.minLimit, this.maxLimit);
+
+        this.queueWait = Timer.builder("chat.limiter.queue-wait")
+                .description("Time work waited in the queue before it was let through")
+                .tag("limiter", name)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("chat.limiter.rejected")
+                .tag("limiter", name)
+                .withRegistry(meterRegistry);
+    }
+
+    /**
+     * Creates a limiter and registers its gauges, which only get to see it once it is fully constructed.
+     */
+    public static AdaptiveLimiter create(String name,
+                                         boolean enabled,
+                                         int initialLimit,
+                                         int minLimit,
+                                         int maxLimit,
+                                         int maxQueueSize,
+                                         int maxQueuePerTenant,
+                                         Duration maxQueueWait,
+                                         double rttTolerance,
+                                         double smoothing,
+                                         int longWindow,
+                                         MeterRegistry meterRegistry) {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(name, enabled, initialLimit, minLimit, maxLimit, maxQueueSize,
+                maxQueuePerTenant, maxQueueWait, rttTolerance, smoothing, longWindow, meterRegistry);
+        Gauge.builder("chat.limiter.limit", limiter, AdaptiveLimiter::limit)
+                .description("Current concurrency limit")
+                .tag("limiter", name)
+                .register(meterRegistry);
+        Gauge.builder("chat.limiter.in-flight", limiter, AdaptiveLimiter::inFlight)
+                .tag("limiter", name)
+                .register(meterRegistry);
+        Gauge.builder("chat.limiter.queued", limiter, AdaptiveLimiter::queued)
+                .description("Work waiting for the limit, over all tenants")
+                .tag("limiter", name)
+                .register(meterRegistry);
+        return limiter;
+    }
+
+    /**
+     * A limiter that lets everything through right away.
+     */
+    public static AdaptiveLimiter unlimited(String name) {
+        return new AdaptiveLimiter(name, false, 1, 1, 1, 0, 0, Duration.ZERO, 1, 1, 1, new SimpleMeterRegistry());
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized double limit() {
+        return limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    public synchronized int queued() {
+        return queued;
+    }
+
+    public <T> Mono<T> run(Mono<T> work) {
+        return Mono.deferContextual(ctx -> run(ctx.getOrDefault(TENANT_KEY, DEFAULT_TENANT), work));
+    }
+
+    /**
+     * Runs the work once the limit allows, its latency is measured up to its value or completion.
+     */
+    public <T> Mono<T> run(String tenant, Mono<T> work) {
+        return run(tenant, work, true);
+    }
+
+    /**
+     * Like {@link #run(String, Mono)}, but the work waits for a place however full the queue is and however long
+     * it takes. It still counts against the limit and the queue, so sheddable work is turned away sooner instead.
+     */
+    public <T> Mono<T> runWithoutShedding(String tenant, Mono<T> work) {
+        return run(tenant, work, false);
+    }
+
+    private <T> Mono<T> run(String tenant, Mono<T> work, boolean sheddable) {
+        if (!enabled) {
+            return work;
+        }
+        return acquire(tenant, sheddable).flatMap(permit -> work
+                .doOnSuccess(value -> permit.release(Outcome.SUCCESS))
+                .doOnError(e -> permit.release(outcome(e)))
+                .doFinally(signalType -> permit.release(Outcome.IGNORED)));
+    }
+
+    public <T> Flux<T> run(Flux<T> work) {
+        return Flux.deferContextual(ctx -> run(ctx.getOrDefault(TENANT_KEY, DEFAULT_TENANT), work));
+    }
+
+    /**
+     * Runs the work once the limit allows. It holds its place until the stream has ended, but its latency is
+     * measured up to the first element only, so that long streams don't read as a slow upstream.
+     */
+    public <T> Flux<T> run(String tenant, Flux<T> work) {
+        if (!enabled) {
+            return work;
+        }
+        return acquire(tenant, true).flatMapMany(permit -> work
+                .doOnNext(value -> permit.sample())
+                .doOnComplete(() -> permit.release(Outcome.SUCCESS))
+                .doOnError(e -> permit.release(outcome(e)))
+                .doFinally(signalType -> permit.release(Outcome.IGNORED)));
+    }
+
+    private Mono<Permit> acquire(String tenant, boolean sheddable) {
+        return Mono.defer(() -> {
+            Waiter waiter;
+            synchronized (this) {
+                if (queued == 0 && inFlight < (int) limit) {
+                    inFlight++;
+                    return Mono.just(new Permit(inFlight));
+                }
+                ArrayDeque<Waiter> queue = queues.get(tenant);
+                if (sheddable && (queued >= maxQueueSize || (queue != null && queue.size() >= maxQueuePerTenant))) {
+                    return Mono.error(reject("queue-full", "queue is full"));
+                }
+                waiter = new Waiter();
+                if (queue == null) {
+                    queue = new ArrayDeque<>();
+                    queues.put(tenant, queue);
+                    tenantOrder.add(tenant);
+                }
+                queue.add(waiter);
+                queued++;
+            }
+            Mono<Permit> granted = waiter.sink.asMono()
+                    .doOnCancel(() -> cancel(tenant, waiter));
+            if (sheddable) {
+                granted = granted.timeout(maxQueueWait, Mono.error(() -> reject("queue-timeout", "waited too long in the queue")));
+            }
+            // claimed only once past the timeout, which drops a permit that arrives just as it fires;
+            // cancel() gives back every permit that wasn't claimed here
+            return granted
+                    .filter(permit -> waiter.claim())
+                    .doOnNext(permit -> queueWait.record(System.nanoTime() - waiter.enqueuedAt, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private void cancel(String tenant, Waiter waiter) {
+        Permit granted;
+        synchronized (this) {
+            granted = waiter.permit;
+            if (granted == null) {
+                ArrayDeque<Waiter> queue = queues.get(tenant);
+                if (queue != null && queue.remove(waiter)) {
+                    queued--;
+                    if (queue.isEmpty()) {
+                        queues.remove(tenant);
+                        tenantOrder.remove(tenant);
+                    }
+                }
+                return;
+            }
+        }
+        // let through just as it gave up waiting, the work never starts
+        if (waiter.claim()) {
+            granted.release(Outcome.IGNORED);
+        }
+    }
+
+    private void drain() {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            while (queued > 0 && inFlight < (int) limit) {
+                String tenant = tenantOrder.poll();
+                ArrayDeque<Waiter> queue = queues.get(tenant);
+                Waiter waiter = queue.poll();
+                queued--;
+                if (queue.isEmpty()) {
+                    queues.remove(tenant);
+                } else {
+                    tenantOrder.add(tenant);
+                }
+                inFlight++;
+                waiter.permit = new Permit(inFlight);
+                granted.add(waiter);
+            }
+        }
+        // emitted outside the lock, the work may start on this thread
+        granted.forEach(waiter -> waiter.sink.tryEmitValue(waiter.permit));
+    }
+
+    private synchronized void onSample(long rtt, int inFlightAtStart) {
+        rtt = Math.max(1, rtt);
+        longRtt = longRtt == 0 ? rtt : longRtt + (rtt - longRtt) / longWindow;
+        // after a long slow spell the average has caught up with it, let it come down quickly once calls are fast again
+        if (longRtt / rtt > 2) {
+            longRtt *= 0.95;
+        }
+        // with most of the limit unused the latency says nothing about whether more would fit
+        if (inFlightAtStart * 2 < limit) {
+            return;
+        }
+        double gradient = Math.clamp(rttTolerance * longRtt / rtt, 0.5, 1.0);
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.clamp(limit * (1 - smoothing) + newLimit * smoothing, minLimit, maxLimit);
+    }
+
+    private synchronized void onDropped() {
+        limit = Math.max(minLimit, limit * DROP_FACTOR);
+    }
+
+    private void onReleased() {
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    private LimitExceededException reject(String reason, String message) {
+        rejected.withTags("reason", reason).increment();
+        return new LimitExceededException(name, name + " limit reached, " + message, retryAfter());
+    }
+
+    /**
+     * About the time it takes to work through the queue at the current limit.
+     */
+    private synchronized Duration retryAfter() {
+        double seconds = longRtt / 1e9 * (queued + 1) / limit;
+        return Duration.ofSeconds(Math.clamp((long) Math.ceil(seconds), 1, MAX_RETRY_AFTER_SECONDS));
+    }
+
+    private static Outcome outcome(Throwable e) {
+        return e instanceof TimeoutException || e instanceof LimitExceededException ? Outcome.DROPPED : Outcome.IGNORED;
+    }
+
+    private final class Permit {
+        private final long start = System.nanoTime();
+        private final int inFlightAtStart;
+        private final AtomicBoolean sampled = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        void sample() {
+            if (sampled.compareAndSet(false, true)) {
+                onSample(System.nanoTime() - start, inFlightAtStart);
+            }
+        }
+
+        void release(Outcome outcome) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            switch (outcome) {
+                case SUCCESS -> sample();
+                case DROPPED -> {
+                    if (sampled.compareAndSet(false, true)) {
+                        onDropped();
+                    }
+                }
+                case IGNORED -> {
+                }
+            }
+            onReleased();
+        }
+    }
+
+    private static final class Waiter {
+        private final long enqueuedAt = System.nanoTime();
+        private final Sinks.One<Permit> sink = Sinks.one();
+        // set under the limiter's lock
+        private Permit permit;
+        // taken either by the work or, if the wait ended before the permit reached it, by cancel()
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.will.langchain4jpoc.concurrent;
+
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Runs reactive work one at a time per key, without parking a thread while waiting.
+ * <p>
+ * Each subscription queues behind the previous one for the same key and starts once that one has
+ * terminated or been cancelled. Different keys don't wait on each other. Only keys with work in
+ * flight are tracked.
+ */
+@Component
+public class KeyedSequencer {
+    private final ConcurrentMap<Object, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public <T> Mono<T> sequence(Object key, Mono<T> work) {
+        return Mono.defer(() -> {
+            Turn turn = enqueue(key);
+            return turn.previous()
+                    .then(work)
+                    .doFinally(signalType -> turn.finish());
+        });
+    }
+
+    public <T> Flux<T> sequence(Object key, Flux<T> work) {
+        return Flux.defer(() -> {
+            Turn turn = enqueue(key);
+            return turn.previous()
+                    .thenMany(work)
+                    .doFinally(signalType -> turn.finish());
+        });
+    }
+
+    public int activeKeys() {
+        return tails.size();
+    }
+
+    private Turn enqueue(Object key) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = tails.put(key, done);
+        return new Turn(key, previous, done);
+    }
+
+    private final class Turn {
+        private final Object key;
+        private final CompletableFuture<Void> previous;
+        private final CompletableFuture<Void> done;
+
+        private Turn(Object key, CompletableFuture<Void> previous, CompletableFuture<Void> done) {
+            this.key = key;
+            this.previous = previous;
+            this.done = done;
+        }
+
+        Mono<Void> previous() {
+            return previous != null ? Mono.fromFuture(previous, true) : Mono.empty();
+        }
+
+        void finish() {
+            // the tail is only dropped once the turn counts as done, until then later turns have to queue behind it
+            done.whenComplete((result, e) -> tails.remove(key, done));
+            // a turn cancelled while waiting must still not let the next one overtake its predecessor
+            if (previous != null) {
+                previous.whenComplete((result, e) -> done.complete(null));
+            } else {
+                done.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.will.langchain4jpoc.concurrent;
+
+import java.io.Serial;
+import java.time.Duration;
+
+/**
+ * Thrown when an {@link AdaptiveLimiter} turns work away, either because its queue is full or because the work
+ * waited in the queue for too long.
+ */
+public class LimitExceededException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String limiter;
+    private final Duration retryAfter;
+
+    public LimitExceededException(String limiter, String message, Duration retryAfter) {
+        super(message);
+        this.limiter = limiter;
+        this.retryAfter = retryAfter;
+    }
+
+    public String limiter() {
+        return limiter;
+    }
+
+    /**
+     * How long the caller should wait before trying again, at least one second.
+     */
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+}
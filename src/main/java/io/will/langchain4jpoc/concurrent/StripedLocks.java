@@ -0,0 +1,46 @@
+package io.will.langchain4jpoc.concurrent;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Fixed set of locks that keys are hashed onto.
+ * Work on the same key is serialized, while different keys rarely contend and no per-key state is kept.
+ */
+public class StripedLocks {
+    private final ReentrantLock[] locks;
+
+    public StripedLocks(int stripes) {
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public ReentrantLock lockFor(Object key) {
+        // spread the hash so that keys differing only in the high bits don't share a stripe
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return locks[Math.floorMod(hash, locks.length)];
+    }
+
+    public void run(Object key, Runnable action) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public <T> T call(Object key, Supplier<T> action) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
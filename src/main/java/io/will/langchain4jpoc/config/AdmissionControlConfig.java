@@ -0,0 +1,60 @@
+package io.will.langchain4jpoc.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.will.langchain4jpoc.concurrent.AdaptiveLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Adaptive concurrency limiters for chat requests as they come in and for the LLM and Mem0 calls they make,
+ * each configured by its {@link AdmissionControlProperties} settings. With admission control disabled they
+ * let everything through.
+ */
+@Configuration
+@EnableConfigurationProperties(AdmissionControlProperties.class)
+public class AdmissionControlConfig {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlConfig.class);
+
+    public static final String INBOUND_LIMITER = "inboundLimiter";
+    public static final String LLM_LIMITER = "llmLimiter";
+    public static final String MEM0_LIMITER = "mem0Limiter";
+
+    @Bean(INBOUND_LIMITER)
+    public AdaptiveLimiter inboundLimiter(AdmissionControlProperties properties, MeterRegistry meterRegistry) {
+        return limiter("inbound", properties, meterRegistry);
+    }
+
+    @Bean(LLM_LIMITER)
+    public AdaptiveLimiter llmLimiter(AdmissionControlProperties properties, MeterRegistry meterRegistry) {
+        return limiter("llm", properties, meterRegistry);
+    }
+
+    @Bean(MEM0_LIMITER)
+    public AdaptiveLimiter mem0Limiter(AdmissionControlProperties properties, MeterRegistry meterRegistry) {
+        return limiter("mem0", properties, meterRegistry);
+    }
+
+    static AdaptiveLimiter limiter(String name, AdmissionControlProperties properties, MeterRegistry meterRegistry) {
+        if (!properties.isEnabled()) {
+            return AdaptiveLimiter.unlimited(name);
+        }
+        AdmissionControlProperties.Limiter settings = properties.limiter(name);
+        logger.info("Creating limiter '{}', limit: {} ({}-{}), max queue size: {} ({} per tenant), max queue wait: {}",
+                name, settings.getInitialLimit(), settings.getMinLimit(), settings.getMaxLimit(),
+                settings.getMaxQueueSize(), settings.getMaxQueuePerTenant(), settings.getMaxQueueWait());
+        return AdaptiveLimiter.create(name, true,
+                settings.getInitialLimit(),
+                settings.getMinLimit(),
+                settings.getMaxLimit(),
+                settings.getMaxQueueSize(),
+                settings.getMaxQueuePerTenant(),
+                settings.getMaxQueueWait(),
+                settings.getRttTolerance(),
+                settings.getSmoothing(),
+                settings.getLongWindow(),
+                meterRegistry);
+    }
+}
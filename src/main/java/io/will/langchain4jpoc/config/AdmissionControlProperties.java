@@ -0,0 +1,137 @@
+package io.will.langchain4jpoc.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Adaptive concurrency limiters by name, e.g. {@code chat.admission.limiters.llm.max-limit=50}.
+ * A limiter without settings, and any value its settings leave out, gets the defaults below.
+ */
+@ConfigurationProperties(prefix = "chat.admission")
+public class AdmissionControlProperties {
+    private boolean enabled = true;
+    /** Request header naming the tenant, requests without it are queued by client address. */
+    private String tenantHeader = "X-Tenant-Id";
+    private Map<String, Limiter> limiters = new HashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getTenantHeader() {
+        return tenantHeader;
+    }
+
+    public void setTenantHeader(String tenantHeader) {
+        this.tenantHeader = tenantHeader;
+    }
+
+    public Map<String, Limiter> getLimiters() {
+        return limiters;
+    }
+
+    public void setLimiters(Map<String, Limiter> limiters) {
+        this.limiters = limiters;
+    }
+
+    public Limiter limiter(String name) {
+        return limiters.getOrDefault(name, new Limiter());
+    }
+
+    public static class Limiter {
+        private int initialLimit = 20;
+        private int minLimit = 2;
+        private int maxLimit = 200;
+        /** Work allowed to wait for the limit over all tenants, further work is rejected right away. */
+        private int maxQueueSize = 100;
+        /** Work of a single tenant allowed to wait, so that one tenant can't fill the whole queue. */
+        private int maxQueuePerTenant = 20;
+        /** Work still waiting after this is rejected. */
+        private Duration maxQueueWait = Duration.ofSeconds(2);
+        /** How much slower than their long-term average calls may get before the limit shrinks. */
+        private double rttTolerance = 1.5;
+        /** Weight of each adjustment, lower values make the limit move more slowly. */
+        private double smoothing = 0.2;
+        /** Calls the long-term average latency is taken over. */
+        private int longWindow = 600;
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public int getMaxQueueSize() {
+            return maxQueueSize;
+        }
+
+        public void setMaxQueueSize(int maxQueueSize) {
+            this.maxQueueSize = maxQueueSize;
+        }
+
+        public int getMaxQueuePerTenant() {
+            return maxQueuePerTenant;
+        }
+
+        public void setMaxQueuePerTenant(int maxQueuePerTenant) {
+            this.maxQueuePerTenant = maxQueuePerTenant;
+        }
+
+        public Duration getMaxQueueWait() {
+            return maxQueueWait;
+        }
+
+        public void setMaxQueueWait(Duration maxQueueWait) {
+            this.maxQueueWait = maxQueueWait;
+        }
+
+        public double getRttTolerance() {
+            return rttTolerance;
+        }
+
+        public void setRttTolerance(double rttTolerance) {
+            this.rttTolerance = rttTolerance;
+        }
+
+        public double getSmoothing() {
+            return smoothing;
+        }
+
+        public void setSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+        }
+
+        public int getLongWindow() {
+            return longWindow;
+        }
+
+        public void setLongWindow(int longWindow) {
+            this.longWindow = longWindow;
+        }
+    }
+}
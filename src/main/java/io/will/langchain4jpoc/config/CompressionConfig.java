@@ -0,0 +1,90 @@
+package io.will.langchain4jpoc.config;
+
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.will.langchain4jpoc.memory.compression.CharacterRatioTokenCountEstimator;
+import io.will.langchain4jpoc.memory.store.MappedLogChatMemoryStore;
+import io.will.langchain4jpoc.memory.store.MappedSegmentLog;
+import io.will.langchain4jpoc.memory.store.PackedChatMemoryStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "chat.memory.provider", havingValue = "compression")
+public class CompressionConfig {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionConfig.class);
+
+    public static final String TOKEN_COUNT_ESTIMATOR = "compressionTokenCountEstimator";
+    public static final String DELEGATE_STORE = "compressionDelegateStore";
+
+    @Value("${chat-memory.compression.store:in-memory}")
+    private String store;
+
+    @Value("${chat-memory.log.dir:./data/chat-memory}")
+    private String logDir;
+
+    @Value("${chat-memory.log.shards:8}")
+    private int logShards;
+
+    @Value("${chat-memory.log.segment-size:64MB}")
+    private DataSize logSegmentSize;
+
+    @Value("${chat-memory.log.fsync:interval}")
+    private MappedSegmentLog.FsyncPolicy logFsync;
+
+    @Value("${chat-memory.log.fsync-interval:1s}")
+    private Duration logFsyncInterval;
+
+    @Value("${chat-memory.log.compaction-interval:1m}")
+    private Duration logCompactionInterval;
+
+    @Value("${chat-memory.log.compaction-threshold:0.5}")
+    private double logCompactionThreshold;
+
+    @Value("${chat-memory.packed.compression-threshold:512}")
+    private int packedCompressionThreshold;
+
+    /**
+     * Store the compressed histories are kept in, see chat-memory.compression.store.
+     */
+    @Bean(DELEGATE_STORE)
+    public ChatMemoryStore compressionDelegateStore(MeterRegistry meterRegistry) {
+        if ("packed".equals(store)) {
+            logger.info("Creating PackedChatMemoryStore, deflating histories from {} bytes", packedCompressionThreshold);
+            return new PackedChatMemoryStore(packedCompressionThreshold, meterRegistry);
+        }
+        if ("mapped-log".equals(store)) {
+            logger.info("Creating MappedLogChatMemoryStore in {} with fsync policy: {}", logDir, logFsync);
+            MappedSegmentLog log = new MappedSegmentLog(
+                    Path.of(logDir),
+                    logShards,
+                    (int) logSegmentSize.toBytes(),
+                    logFsync,
+                    logFsyncInterval,
+                    logCompactionInterval,
+                    logCompactionThreshold);
+            return new MappedLogChatMemoryStore(log);
+        }
+        return new InMemoryChatMemoryStore();
+    }
+
+    /**
+     * Estimator for the token-based compression trigger, tuned by chat-memory.compression.chars-per-token.
+     */
+    @Bean(TOKEN_COUNT_ESTIMATOR)
+    public TokenCountEstimator compressionTokenCountEstimator(
+            @Value("${chat-memory.compression.chars-per-token:4}") double charsPerToken) {
+        logger.info("Creating CharacterRatioTokenCountEstimator with {} chars per token", charsPerToken);
+        return new CharacterRatioTokenCountEstimator(charsPerToken);
+    }
+}
@@ -0,0 +1,25 @@
+package io.will.langchain4jpoc.config;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * In-process embedding model, so that embedding a query costs no network round trip.
+ * Used by the semantic response cache and the local-vector memory.
+ */
+@Configuration
+@ConditionalOnExpression("${chat.semantic-cache.enabled:false} or '${chat.memory.provider:mem0}' == 'local-vector'")
+public class EmbeddingConfig {
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingConfig.class);
+
+    @Bean
+    public EmbeddingModel embeddingModel() {
+        logger.info("Using the in-process all-MiniLM-L6-v2 embedding model");
+        return new AllMiniLmL6V2EmbeddingModel();
+    }
+}
@@ -0,0 +1,59 @@
+package io.will.langchain4jpoc.config;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Picks the scheduler that the blocking part of a chat turn runs on: the LLM call, and the Mem0 calls
+ * LangChain4j makes through the chat memory while that call is prepared.
+ */
+@Configuration
+public class ExecutionConfig {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionConfig.class);
+
+    public static final String CHAT_SCHEDULER = "chatScheduler";
+
+    public enum ExecutionMode {
+        /** Reactor's shared bounded elastic pool, capped at 10 threads per core with the rest queued. */
+        BOUNDED_ELASTIC,
+        /** A new virtual thread per turn, so blocked turns no longer use up a fixed pool. */
+        VIRTUAL_THREADS
+    }
+
+    @Value("${chat.execution.mode:bounded-elastic}")
+    private ExecutionMode mode;
+
+    // owned by this configuration and disposed with it, unlike the shared bounded elastic scheduler
+    private Scheduler virtualThreads;
+
+    // the shared bounded elastic scheduler must not be disposed with the context, hence no destroy method
+    @Bean(name = CHAT_SCHEDULER, destroyMethod = "")
+    public Scheduler chatScheduler() {
+        logger.info("Blocking chat work runs on: {}", mode);
+        return switch (mode) {
+            case BOUNDED_ELASTIC -> Schedulers.boundedElastic();
+            case VIRTUAL_THREADS -> virtualThreads = virtualThreadScheduler();
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (virtualThreads != null) {
+            virtualThreads.dispose();
+        }
+    }
+
+    static Scheduler virtualThreadScheduler() {
+        return Schedulers.fromExecutorService(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chat-virtual-", 0).factory()),
+                "chat-virtual");
+    }
+}
@@ -0,0 +1,155 @@
+package io.will.langchain4jpoc.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import reactor.netty.http.HttpProtocol;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HTTP client profiles by upstream name, e.g. {@code http.clients.mem0.max-connections=100}.
+ * An upstream without a profile, and any value a profile leaves out, gets the defaults below.
+ */
+@ConfigurationProperties(prefix = "http")
+public class HttpClientProperties {
+    private Map<String, Profile> clients = new HashMap<>();
+
+    public Map<String, Profile> getClients() {
+        return clients;
+    }
+
+    public void setClients(Map<String, Profile> clients) {
+        this.clients = clients;
+    }
+
+    public Profile profile(String name) {
+        return clients.getOrDefault(name, new Profile());
+    }
+
+    public static class Profile {
+        /** Connections kept open to the upstream at most, further requests wait for one to be released. */
+        private int maxConnections = 50;
+        /** Requests allowed to wait for a connection, further ones fail right away. */
+        private int pendingAcquireMaxCount = 1000;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+        /** Idle connections are closed after this, before the upstream or a load balancer drops them. */
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        /** Connections are replaced after this, so that new upstream instances receive traffic. */
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictionInterval = Duration.ofSeconds(30);
+        /** HTTP11, H2 (over TLS) or H2C. */
+        private HttpProtocol protocol = HttpProtocol.HTTP11;
+        private boolean keepAlive = true;
+        /** Ask for gzip responses and decompress them. */
+        private boolean compress = true;
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private Duration responseTimeout = Duration.ofSeconds(30);
+        private Duration readTimeout = Duration.ofSeconds(10);
+        private Duration writeTimeout = Duration.ofSeconds(3);
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public int getPendingAcquireMaxCount() {
+            return pendingAcquireMaxCount;
+        }
+
+        public void setPendingAcquireMaxCount(int pendingAcquireMaxCount) {
+            this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+        }
+
+        public Duration getPendingAcquireTimeout() {
+            return pendingAcquireTimeout;
+        }
+
+        public void setPendingAcquireTimeout(Duration pendingAcquireTimeout) {
+            this.pendingAcquireTimeout = pendingAcquireTimeout;
+        }
+
+        public Duration getMaxIdleTime() {
+            return maxIdleTime;
+        }
+
+        public void setMaxIdleTime(Duration maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        public Duration getMaxLifeTime() {
+            return maxLifeTime;
+        }
+
+        public void setMaxLifeTime(Duration maxLifeTime) {
+            this.maxLifeTime = maxLifeTime;
+        }
+
+        public Duration getEvictionInterval() {
+            return evictionInterval;
+        }
+
+        public void setEvictionInterval(Duration evictionInterval) {
+            this.evictionInterval = evictionInterval;
+        }
+
+        public HttpProtocol getProtocol() {
+            return protocol;
+        }
+
+        public void setProtocol(HttpProtocol protocol) {
+            this.protocol = protocol;
+        }
+
+        public boolean isKeepAlive() {
+            return keepAlive;
+        }
+
+        public void setKeepAlive(boolean keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+
+        public boolean isCompress() {
+            return compress;
+        }
+
+        public void setCompress(boolean compress) {
+            this.compress = compress;
+        }
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Duration getResponseTimeout() {
+            return responseTimeout;
+        }
+
+        public void setResponseTimeout(Duration responseTimeout) {
+            this.responseTimeout = responseTimeout;
+        }
+
+        public Duration getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        public Duration getWriteTimeout() {
+            return writeTimeout;
+        }
+
+        public void setWriteTimeout(Duration writeTimeout) {
+            this.writeTimeout = writeTimeout;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package io.will.langchain4jpoc.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.will.langchain4jpoc.concurrent.AdaptiveLimiter;
 import io.will.langchain4jpoc.memory.mem0.Mem0Client;
+import io.will.langchain4jpoc.memory.mem0.Mem0Resilience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
@@ -18,6 +22,9 @@ public class Mem0Config {
     @Value("${mem0.api.key:}")
     private String mem0ApiKey;
 
+    @Value("${mem0.api.base-url:https://api.mem0.ai}")
+    private String mem0BaseUrl;
+
     @Value("${mem0.app.id:langchain4j-springboot-poc}")
     private String mem0AppId;
     
@@ -25,17 +32,22 @@ public class Mem0Config {
     private int mem0TopK;
 
     @Bean
-    public Mem0Client mem0Client(WebClient webClient, ObjectMapper objectMapper) {
+    public Mem0Client mem0Client(@Qualifier(WebClientConfig.MEM0_WEB_CLIENT) WebClient webClient, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                                 Mem0Resilience resilience, @Qualifier(AdmissionControlConfig.MEM0_LIMITER) AdaptiveLimiter limiter) {
         if (!isMem0Configured()) {
             logger.warn("Mem0 API key not configured. Please set mem0.api.key property.");
              throw new IllegalStateException("Mem0 API key must be configured");
         }
         
-        logger.info("Creating Mem0Client with appId: {}", mem0AppId);
+        logger.info("Creating Mem0Client with appId: {}, base URL: {}", mem0AppId, mem0BaseUrl);
         return new Mem0Client(
                 mem0ApiKey,
+                mem0BaseUrl,
                 webClient,
-                objectMapper
+                objectMapper,
+                meterRegistry,
+                resilience,
+                limiter
         );
     }
 
@@ -1,26 +1,103 @@
 package io.will.langchain4jpoc.config;
 
+import io.netty.channel.ChannelOption;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
-import java.time.Duration;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
+/**
+ * One WebClient per upstream, each with its own connection pool configured by its {@link HttpClientProperties} profile,
+ * so that a slow upstream can't take the connections of another one.
+ * <p>
+ * Pool gauges (reactor.netty.connection.provider.active.connections, idle, pending) and client request timers
+ * are published to the global Micrometer registry, which Spring Boot exports along with its own meters.
+ * Only the Mem0 client tags its timers with the request URI, the default client may be pointed at any URL.
+ */
 @Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
 public class WebClientConfig {
+    private static final Logger logger = LoggerFactory.getLogger(WebClientConfig.class);
+
+    public static final String DEFAULT_CLIENT = "default";
+    public static final String MEM0_CLIENT = "mem0";
+    public static final String MEM0_WEB_CLIENT = "mem0WebClient";
+    public static final String MEM0_CONNECTION_PROVIDER = "mem0ConnectionProvider";
+
+    // URI tag of the requests of clients whose URIs aren't bounded
+    static final String ANY_URI = "any";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider defaultConnectionProvider(HttpClientProperties properties) {
+        return connectionProvider(DEFAULT_CLIENT, properties.profile(DEFAULT_CLIENT));
+    }
+
     @Bean
-    public WebClient webClient() {
-        HttpClient httpClient = HttpClient.create()
-                .responseTimeout(Duration.ofSeconds(30))
+    @Primary
+    public WebClient webClient(HttpClientProperties properties,
+                               @Qualifier("defaultConnectionProvider") ConnectionProvider connectionProvider) {
+        return webClient(httpClient(connectionProvider, properties.profile(DEFAULT_CLIENT), uri -> ANY_URI));
+    }
+
+    @Bean(name = MEM0_CONNECTION_PROVIDER, destroyMethod = "dispose")
+    @ConditionalOnProperty(name = "chat.memory.provider", havingValue = "mem0")
+    public ConnectionProvider mem0ConnectionProvider(HttpClientProperties properties) {
+        return connectionProvider(MEM0_CLIENT, properties.profile(MEM0_CLIENT));
+    }
+
+    @Bean(MEM0_WEB_CLIENT)
+    @ConditionalOnProperty(name = "chat.memory.provider", havingValue = "mem0")
+    public WebClient mem0WebClient(HttpClientProperties properties,
+                                   @Qualifier(MEM0_CONNECTION_PROVIDER) ConnectionProvider connectionProvider) {
+        // Mem0 is called on a handful of fixed paths, so its URIs are safe to use as tags
+        return webClient(httpClient(connectionProvider, properties.profile(MEM0_CLIENT), Function.identity()));
+    }
+
+    static ConnectionProvider connectionProvider(String name, HttpClientProperties.Profile profile) {
+        logger.info("Creating connection pool '{}', max connections: {}, max pending acquires: {}, max idle time: {}, max life time: {}",
+                name, profile.getMaxConnections(), profile.getPendingAcquireMaxCount(), profile.getMaxIdleTime(), profile.getMaxLifeTime());
+        return ConnectionProvider.builder(name)
+                .maxConnections(profile.getMaxConnections())
+                .pendingAcquireMaxCount(profile.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(profile.getPendingAcquireTimeout())
+                .maxIdleTime(profile.getMaxIdleTime())
+                .maxLifeTime(profile.getMaxLifeTime())
+                .evictInBackground(profile.getEvictionInterval())
+                .metrics(true)
+                .build();
+    }
+
+    /**
+     * @param uriTagValue maps the URI of a request to its uri tag, which must only take a few distinct values
+     */
+    static HttpClient httpClient(ConnectionProvider connectionProvider, HttpClientProperties.Profile profile,
+                                 Function<String, String> uriTagValue) {
+        return HttpClient.create(connectionProvider)
+                .protocol(profile.getProtocol())
+                .keepAlive(profile.isKeepAlive())
+                .compress(profile.isCompress())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) profile.getConnectTimeout().toMillis())
+                .responseTimeout(profile.getResponseTimeout())
+                .metrics(true, uriTagValue)
                 .doOnConnected(conn -> conn
-                        .addHandlerLast(new ReadTimeoutHandler(10, TimeUnit.SECONDS))
-                        .addHandlerLast(new WriteTimeoutHandler(3, TimeUnit.SECONDS)));
+                        .addHandlerLast(new ReadTimeoutHandler(profile.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                        .addHandlerLast(new WriteTimeoutHandler(profile.getWriteTimeout().toMillis(), TimeUnit.MILLISECONDS)));
+    }
 
+    private static WebClient webClient(HttpClient httpClient) {
         return WebClient.builder()
                 .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .build();
@@ -0,0 +1,101 @@
+package io.will.langchain4jpoc.controller;
+
+import io.will.langchain4jpoc.concurrent.AdaptiveLimiter;
+import io.will.langchain4jpoc.concurrent.LimitExceededException;
+import io.will.langchain4jpoc.config.AdmissionControlConfig;
+import io.will.langchain4jpoc.config.AdmissionControlProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.Context;
+
+import java.net.InetSocketAddress;
+import java.util.Set;
+
+/**
+ * Admits chat requests through the inbound {@link AdaptiveLimiter}, queued per tenant.
+ * <p>
+ * The latency the limit follows is the time to the first byte of the response, so a long streamed answer doesn't
+ * read as an overloaded server. Requests the inbound, LLM or Mem0 limiter turns away are answered with
+ * 429 Too Many Requests and a {@code Retry-After}, as long as nothing has been sent yet.
+ * The tenant is passed on in the Reactor Context for the limiters further down.
+ */
+@Component
+public class AdmissionControlFilter implements WebFilter {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+    private static final Set<String> LIMITED_PATHS = Set.of("/chat", "/chat/streaming", "/chat/batch");
+
+    private final AdaptiveLimiter limiter;
+    private final String tenantHeader;
+
+    public AdmissionControlFilter(@Qualifier(AdmissionControlConfig.INBOUND_LIMITER) AdaptiveLimiter limiter,
+                                  AdmissionControlProperties properties) {
+        this.limiter = limiter;
+        this.tenantHeader = properties.getTenantHeader();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!limiter.isEnabled()
+                || exchange.getRequest().getMethod() != HttpMethod.POST
+                || !LIMITED_PATHS.contains(exchange.getRequest().getPath().pathWithinApplication().value())) {
+            return chain.filter(exchange);
+        }
+
+        String tenant = tenant(exchange);
+        return limiter.run(tenant, untilFirstByte(exchange, chain))
+                .then()
+                .onErrorResume(LimitExceededException.class, e -> reject(exchange, tenant, e))
+                .contextWrite(Context.of(AdaptiveLimiter.TENANT_KEY, tenant));
+    }
+
+    /**
+     * The request, with an element signalled as the response is committed.
+     */
+    private static Flux<Boolean> untilFirstByte(ServerWebExchange exchange, WebFilterChain chain) {
+        return Flux.defer(() -> {
+            Sinks.One<Boolean> committed = Sinks.one();
+            exchange.getResponse().beforeCommit(() -> {
+                committed.tryEmitValue(true);
+                return Mono.empty();
+            });
+            return Flux.merge(
+                    committed.asMono(),
+                    chain.filter(exchange)
+                            .doFinally(signalType -> committed.tryEmitEmpty())
+                            .then(Mono.<Boolean>empty()));
+        });
+    }
+
+    private String tenant(ServerWebExchange exchange) {
+        String tenant = exchange.getRequest().getHeaders().getFirst(tenantHeader);
+        if (tenant != null && !tenant.isBlank()) {
+            return tenant;
+        }
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        return remoteAddress != null ? remoteAddress.getHostString() : AdaptiveLimiter.DEFAULT_TENANT;
+    }
+
+    private static Mono<Void> reject(ServerWebExchange exchange, String tenant, LimitExceededException e) {
+        ServerHttpResponse response = exchange.getResponse();
+        if (response.isCommitted()) {
+            return Mono.error(e);
+        }
+        logger.debug("Rejected request of tenant {}: {}", tenant, e.getMessage());
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(e.retryAfter().toSeconds()));
+        return response.setComplete();
+    }
+}
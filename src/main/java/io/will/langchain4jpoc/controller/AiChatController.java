@@ -1,16 +1,42 @@
 package io.will.langchain4jpoc.controller;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import io.micrometer.context.ContextSnapshot;
+import io.will.langchain4jpoc.cache.SemanticResponseCache;
+import io.will.langchain4jpoc.concurrent.AdaptiveLimiter;
+import io.will.langchain4jpoc.concurrent.KeyedSequencer;
+import io.will.langchain4jpoc.config.AdmissionControlConfig;
+import io.will.langchain4jpoc.config.ExecutionConfig;
+import io.will.langchain4jpoc.metrics.ChatMetrics;
+import io.will.langchain4jpoc.memory.mem0.Mem0ChatMemory;
+import io.will.langchain4jpoc.memory.mem0.Mem0ChatMemoryProvider;
 import io.will.langchain4jpoc.memory.mem0.QueryContext;
 import io.will.langchain4jpoc.service.AiAssistantService;
+import io.will.langchain4jpoc.streaming.TokenCoalescer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 public class AiChatController {
@@ -18,64 +44,305 @@ public class AiChatController {
     public final static String DEFAULT_MEMORY_ID = "default";
 
     private final AiAssistantService aiAssistantService;
+    private final ObjectProvider<Mem0ChatMemoryProvider> mem0ChatMemoryProvider;
+    private final KeyedSequencer sessionSequencer;
+    private final Scheduler chatScheduler;
+    private final ChatMetrics chatMetrics;
+    private final ObjectProvider<SemanticResponseCache> semanticResponseCache;
+    private final ObjectProvider<ChatMemoryProvider> chatMemoryProvider;
+    private final AdaptiveLimiter llmLimiter;
+    private final TokenCoalescer tokenCoalescer;
+    private final int batchConcurrency;
+    private final Duration batchGroupWindow;
+    // runs the Mem0 groups of a memory one after another, apart from the session sequencer their turns queue in
+    private final KeyedSequencer batchGroupSequencer = new KeyedSequencer();
 
-    public AiChatController(AiAssistantService aiAssistantService) {
+    public AiChatController(AiAssistantService aiAssistantService,
+                            ObjectProvider<Mem0ChatMemoryProvider> mem0ChatMemoryProvider,
+                            KeyedSequencer sessionSequencer,
+                            @Qualifier(ExecutionConfig.CHAT_SCHEDULER) Scheduler chatScheduler,
+                            ChatMetrics chatMetrics,
+                            ObjectProvider<SemanticResponseCache> semanticResponseCache,
+                            ObjectProvider<ChatMemoryProvider> chatMemoryProvider,
+                            @Qualifier(AdmissionControlConfig.LLM_LIMITER) AdaptiveLimiter llmLimiter,
+                            TokenCoalescer tokenCoalescer,
+                            @Value("${chat.batch.concurrency:8}") int batchConcurrency,
+                            @Value("${chat.batch.group-window:20ms}") Duration batchGroupWindow) {
         this.aiAssistantService = aiAssistantService;
+        this.mem0ChatMemoryProvider = mem0ChatMemoryProvider;
+        this.sessionSequencer = sessionSequencer;
+        this.chatScheduler = chatScheduler;
+        this.chatMetrics = chatMetrics;
+        this.semanticResponseCache = semanticResponseCache;
+        this.chatMemoryProvider = chatMemoryProvider;
+        this.llmLimiter = llmLimiter;
+        this.tokenCoalescer = tokenCoalescer;
+        this.batchConcurrency = batchConcurrency;
+        this.batchGroupWindow = batchGroupWindow;
     }
 
     @PostMapping(value = "/chat", produces = MediaType.APPLICATION_JSON_VALUE)
     public Mono<CustomChatResponse> chat(@RequestBody CustomChatRequest chatRequest) {
         String query = chatRequest.message();
-        logger.info("Processing chat request with query: {}", query);
-        
-        // Set query in Reactor Context first, then propagate to ThreadLocal on execution thread
-        return Mono.deferContextual(ctx -> {
-                    return Mono.fromCallable(() -> {
-                        // Propagate context to ThreadLocal on the execution thread (after subscribeOn)
-                        QueryContext.propagateFromContext(ctx);
-                        // Also set directly as a fallback
-                        QueryContext.setQuery(DEFAULT_MEMORY_ID, query);
-                        
-                        try {
-                            return aiAssistantService.chat(DEFAULT_MEMORY_ID, chatRequest.message());
-                        } finally {
-                            // Clean up ThreadLocal after execution
-                            QueryContext.clearQuery(DEFAULT_MEMORY_ID);
-                        }
-                    });
-                })
+        String memoryId = chatRequest.memoryIdOrDefault();
+        logger.info("Processing chat request for memory ID: {} with query: {}", memoryId, query);
+
+        return turn(memoryId, query)
+                .transform(chatMetrics::timeChat)
                 .map(CustomChatResponse::new)
-                .contextWrite(QueryContext.createContext(DEFAULT_MEMORY_ID, query))
-                .subscribeOn(Schedulers.boundedElastic())
-                .doOnError(e -> logger.error("Error processing chat request: {}", e.getMessage(), e))
-                .doFinally(signalType -> {
-                    logger.info("Clearing query for memory ID after chat request");
-                    QueryContext.clearQuery(DEFAULT_MEMORY_ID);
+                .doOnError(e -> logger.error("Error processing chat request: {}", e.getMessage(), e));
+    }
+
+    /**
+     * Answers an NDJSON stream of chat requests, with up to chat.batch.concurrency of them in flight.
+     * Results are streamed back as NDJSON in completion order, carrying the id of their request or, without one,
+     * its position in the batch. Items are only read from the request as results are taken by the client,
+     * and a failed item is reported in its result without ending the batch.
+     * <p>
+     * Items that arrive within chat.batch.group-window of each other, up to chat.batch.concurrency of them, are
+     * grouped by memory. The items of a group run one after another in the order they were sent, like separate
+     * turns would, and with Mem0 they search their histories all at once and share one add, see
+     * {@link Mem0ChatMemory#group}. A later group of the same memory only starts once that add is done.
+     */
+    @PostMapping(value = "/chat/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchChatResponse> chatBatch(@RequestBody Flux<BatchChatRequest> chatRequests) {
+        return chatRequests
+                .index()
+                .map(item -> BatchItem.of(item.getT1(), item.getT2()))
+                .bufferTimeout(batchConcurrency, batchGroupWindow, true)
+                .flatMapIterable(AiChatController::groupByMemory)
+                // a group runs its items one at a time, so this also bounds the items in flight
+                .flatMap(this::batchGroup, batchConcurrency);
+    }
+
+    private static Collection<List<BatchItem>> groupByMemory(List<BatchItem> items) {
+        Map<String, List<BatchItem>> groups = new LinkedHashMap<>();
+        for (BatchItem item : items) {
+            groups.computeIfAbsent(item.memoryId(), memoryId -> new ArrayList<>()).add(item);
+        }
+        return groups.values();
+    }
+
+    private Flux<BatchChatResponse> batchGroup(List<BatchItem> items) {
+        Flux<BatchChatResponse> results = Flux.fromIterable(items).concatMap(this::batchTurn);
+        Mem0ChatMemoryProvider provider = mem0ChatMemoryProvider.getIfAvailable();
+        List<BatchItem> valid = items.stream().filter(BatchItem::isValid).toList();
+        if (provider == null || valid.isEmpty()) {
+            return results;
+        }
+
+        String memoryId = items.getFirst().memoryId();
+        // the group reads its histories only once the previous one has written what it held back
+        return batchGroupSequencer.sequence(memoryId, Flux.usingWhen(
+                Mono.fromSupplier(() -> provider.group(memoryId,
+                        valid.stream().map(BatchItem::turn).toList(),
+                        valid.stream().map(BatchItem::message).toList())),
+                group -> results,
+                Mem0ChatMemory.TurnGroup::close));
+    }
+
+    private Mono<BatchChatResponse> batchTurn(BatchItem item) {
+        String id = item.id();
+        String memoryId = item.memoryId();
+        if (!item.isValid()) {
+            return Mono.just(BatchChatResponse.failure(id, memoryId, "message is required"));
+        }
+        logger.debug("Processing batch item {} for memory ID: {}", id, memoryId);
+
+        return turn(memoryId, item.message(), item.turn())
+                .transform(chatMetrics::timeBatchItem)
+                .map(answer -> BatchChatResponse.success(id, memoryId, answer))
+                .onErrorResume(e -> {
+                    logger.error("Error processing batch item {}: {}", id, e.getMessage(), e);
+                    return Mono.just(BatchChatResponse.failure(id, memoryId, e.getMessage()));
                 });
     }
 
+    private Mono<String> turn(String memoryId, String query) {
+        return turn(memoryId, query, new Object());
+    }
+
+    /**
+     * A non-streaming chat turn, shared by /chat and /chat/batch.
+     *
+     * @param turn token identifying the turn in the QueryContext
+     */
+    private Mono<String> turn(String memoryId, String query, Object turn) {
+        // Set query in Reactor Context first, then bind it to the execution thread for the duration of the call
+        Mono<String> answer = Mono.deferContextual(ctx -> Mono.fromCallable(() -> {
+                    try (ContextSnapshot.Scope scope = QueryContext.openScope(ctx)) {
+                        return answer(memoryId, query);
+                    }
+                }))
+                .subscribeOn(chatScheduler);
+
+        // the history is requested as soon as the request arrives, so the Mem0 round trip overlaps with
+        // waiting for earlier turns of the session; turns of the same session run one after another,
+        // and only take a place under the LLM limit once it is their turn
+        return Mono.deferContextual(ctx -> {
+                    Object token = QueryContext.getTurnFromContext(ctx, memoryId);
+                    prefetchMemory(memoryId, token, query);
+                    return sessionSequencer.sequence(memoryId, llmLimiter.run(answer))
+                            .doFinally(signalType -> endTurn(memoryId, token));
+                })
+                .contextWrite(QueryContext.createContext(memoryId, query, turn));
+    }
+
     @PostMapping(value = "/chat/streaming", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<CustomChatResponse> chatStreaming(@RequestBody CustomChatRequest chatRequest) {
         String query = chatRequest.message();
-        logger.info("Processing streaming chat request with query: {}", query);
+        String memoryId = chatRequest.memoryIdOrDefault();
+        logger.info("Processing streaming chat request for memory ID: {} with query: {}", memoryId, query);
 
-        return Flux.deferContextual(contextView -> Flux.defer(() -> {
-                    QueryContext.propagateFromContext(contextView);
-                    QueryContext.setQuery(DEFAULT_MEMORY_ID, query);
-                    return aiAssistantService.chatStreaming(DEFAULT_MEMORY_ID, query);
-                }))
-                .contextWrite(QueryContext.createContext(DEFAULT_MEMORY_ID, query))
-                .transform(QueryContext::propagateContext)
-                .subscribeOn(Schedulers.boundedElastic())
+        // the AI service reads the memory when it is invoked, so the query only has to be bound
+        // around that call and not while the tokens are flowing
+        Flux<String> tokens = Flux.deferContextual(ctx -> {
+                    try (ContextSnapshot.Scope scope = QueryContext.openScope(ctx)) {
+                        return streamAnswer(memoryId, query);
+                    }
+                })
+                .subscribeOn(chatScheduler);
+
+        return Flux.deferContextual(ctx -> {
+                    Object token = QueryContext.getTurnFromContext(ctx, memoryId);
+                    prefetchMemory(memoryId, token, query);
+                    return sessionSequencer.sequence(memoryId, llmLimiter.run(tokens))
+                            .doFinally(signalType -> endTurn(memoryId, token));
+                })
+                .transform(chatMetrics::timeStreaming)
+                // metrics above still see single tokens, the client gets them in frames
+                .transform(tokenCoalescer::coalesce)
+                .contextWrite(QueryContext.createContext(memoryId, query))
                 .map(CustomChatResponse::new)
-                .doOnError(e -> logger.error("Error processing streaming chat request: {}", e.getMessage(), e))
-                .doFinally(signalType -> {
-                    logger.info("Clearing query for memory ID after streaming chat request");
-                    QueryContext.clearQuery(DEFAULT_MEMORY_ID);
-                });
+                .doOnError(e -> logger.error("Error processing streaming chat request: {}", e.getMessage(), e));
     }
 
-    public record CustomChatRequest(String message) {}
+    /**
+     * Answers from the semantic cache when a similar question has been answered before, otherwise asks the LLM
+     * and caches its answer.
+     */
+    private String answer(String memoryId, String query) {
+        SemanticResponseCache cache = semanticResponseCache.getIfAvailable();
+        if (cache == null) {
+            return aiAssistantService.chat(memoryId, query);
+        }
+
+        SemanticResponseCache.Lookup lookup = cache.lookup(memoryId, query, memoryContext(memoryId));
+        if (lookup.hit()) {
+            rememberTurn(memoryId, query, lookup.answer());
+            return lookup.answer();
+        }
+        String answer = aiAssistantService.chat(memoryId, query);
+        cache.put(lookup, answer);
+        return answer;
+    }
+
+    private Flux<String> streamAnswer(String memoryId, String query) {
+        SemanticResponseCache cache = semanticResponseCache.getIfAvailable();
+        if (cache == null) {
+            return aiAssistantService.chatStreaming(memoryId, query);
+        }
+
+        SemanticResponseCache.Lookup lookup = cache.lookup(memoryId, query, memoryContext(memoryId));
+        if (lookup.hit()) {
+            rememberTurn(memoryId, query, lookup.answer());
+            return SemanticResponseCache.replay(lookup.answer());
+        }
+        return cache.cacheStream(lookup, aiAssistantService.chatStreaming(memoryId, query));
+    }
+
+    /**
+     * The messages the memory of the session gives the LLM for the query bound to the thread, so that cached
+     * answers are only reused with the context they were derived from.
+     */
+    private List<ChatMessage> memoryContext(String memoryId) {
+        ChatMemoryProvider provider = chatMemoryProvider.getIfAvailable();
+        return provider != null ? provider.get(memoryId).messages() : List.of();
+    }
+
+    /**
+     * A cached answer bypasses the AI service, so the turn is added to the memory here to keep the history complete.
+     */
+    private void rememberTurn(String memoryId, String query, String answer) {
+        ChatMemoryProvider provider = chatMemoryProvider.getIfAvailable();
+        if (provider != null) {
+            ChatMemory memory = provider.get(memoryId);
+            memory.add(UserMessage.from(query));
+            memory.add(AiMessage.from(answer));
+        }
+    }
+
+    /**
+     * Starts retrieving the Mem0 history of the turn without waiting for it, the memory joins it when the
+     * AI service asks for the history. Other memory providers have nothing to prefetch.
+     */
+    private void prefetchMemory(Object memoryId, Object turn, String query) {
+        Mem0ChatMemoryProvider provider = mem0ChatMemoryProvider.getIfAvailable();
+        if (provider != null) {
+            provider.prefetch(memoryId, turn, query);
+        }
+    }
+
+    /**
+     * Lets the Mem0 memory drop the prefetched history of a turn that is over.
+     */
+    private void endTurn(Object memoryId, Object turn) {
+        Mem0ChatMemoryProvider provider = mem0ChatMemoryProvider.getIfAvailable();
+        if (provider != null) {
+            provider.endTurn(memoryId, turn);
+        }
+    }
+
+    /**
+     * @param memoryId the session whose memory the turn uses, requests without one share the "default" memory
+     */
+    public record CustomChatRequest(String message, String memoryId) {
+        public CustomChatRequest(String message) {
+            this(message, null);
+        }
+
+        public String memoryIdOrDefault() {
+            return AiChatController.memoryIdOrDefault(memoryId);
+        }
+    }
 
     public record CustomChatResponse(String content) {}
+
+    /**
+     * @param id correlation ID echoed in the result, defaults to the position of the item in the batch
+     */
+    public record BatchChatRequest(String id, String memoryId, String message) {
+        public String memoryIdOrDefault() {
+            return AiChatController.memoryIdOrDefault(memoryId);
+        }
+    }
+
+    /**
+     * An item of a batch with its id and memory resolved, and the token of its turn.
+     */
+    private record BatchItem(String id, String memoryId, String message, Object turn) {
+        static BatchItem of(long index, BatchChatRequest chatRequest) {
+            String id = chatRequest.id() != null && !chatRequest.id().isBlank() ? chatRequest.id() : String.valueOf(index);
+            return new BatchItem(id, chatRequest.memoryIdOrDefault(), chatRequest.message(), new Object());
+        }
+
+        boolean isValid() {
+            return message != null && !message.isBlank();
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record BatchChatResponse(String id, String memoryId, String content, String error) {
+        static BatchChatResponse success(String id, String memoryId, String content) {
+            return new BatchChatResponse(id, memoryId, content, null);
+        }
+
+        static BatchChatResponse failure(String id, String memoryId, String error) {
+            return new BatchChatResponse(id, memoryId, null, error != null ? error : "failed");
+        }
+    }
+
+    private static String memoryIdOrDefault(String memoryId) {
+        return memoryId != null && !memoryId.isBlank() ? memoryId : DEFAULT_MEMORY_ID;
+    }
 }
@@ -1,7 +1,14 @@
 package io.will.langchain4jpoc.controller;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.will.langchain4jpoc.cache.SemanticResponseCache;
+import io.will.langchain4jpoc.memory.compression.CompressionChatMemoryStore;
+import io.will.langchain4jpoc.memory.mem0.Mem0ChatMemoryProvider;
+import io.will.langchain4jpoc.memory.mem0.Mem0MemoryCache;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
 
@@ -9,8 +16,67 @@ import java.util.Map;
 
 @RestController
 public class HelperController {
+    private final ObjectProvider<Mem0MemoryCache> mem0MemoryCache;
+    private final ObjectProvider<CompressionChatMemoryStore> compressionChatMemoryStore;
+    private final ObjectProvider<Mem0ChatMemoryProvider> mem0ChatMemoryProvider;
+    private final ObjectProvider<SemanticResponseCache> semanticResponseCache;
+
+    public HelperController(ObjectProvider<Mem0MemoryCache> mem0MemoryCache,
+                            ObjectProvider<CompressionChatMemoryStore> compressionChatMemoryStore,
+                            ObjectProvider<Mem0ChatMemoryProvider> mem0ChatMemoryProvider,
+                            ObjectProvider<SemanticResponseCache> semanticResponseCache) {
+        this.mem0MemoryCache = mem0MemoryCache;
+        this.compressionChatMemoryStore = compressionChatMemoryStore;
+        this.mem0ChatMemoryProvider = mem0ChatMemoryProvider;
+        this.semanticResponseCache = semanticResponseCache;
+    }
+
     @GetMapping(value = "/health", produces = MediaType.APPLICATION_JSON_VALUE)
     public Mono<Map<String, String>> health() {
         return Mono.just(Map.of("status", "UP", "service", "LangChain4j PoC"));
     }
+
+    @GetMapping(value = "/memory/cache/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, Object>> memoryCacheStats() {
+        Mem0MemoryCache cache = mem0MemoryCache.getIfAvailable();
+        CacheStats stats = cache != null ? cache.stats() : CacheStats.empty();
+        return Mono.just(Map.of(
+                "hitCount", stats.hitCount(),
+                "missCount", stats.missCount(),
+                "hitRate", stats.hitRate(),
+                "evictionCount", stats.evictionCount()));
+    }
+
+    @GetMapping(value = "/chat/cache/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, Object>> chatCacheStats() {
+        SemanticResponseCache cache = semanticResponseCache.getIfAvailable();
+        return Mono.just(Map.of(
+                "enabled", cache != null,
+                "hitCount", cache != null ? cache.hitCount() : 0L,
+                "missCount", cache != null ? cache.missCount() : 0L,
+                "hitRate", cache != null ? cache.hitRate() : 0.0,
+                "size", cache != null ? cache.size() : 0L));
+    }
+
+    @GetMapping(value = "/memory/sessions/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, Object>> memorySessionStats() {
+        Mem0ChatMemoryProvider provider = mem0ChatMemoryProvider.getIfAvailable();
+        return Mono.just(Map.of(
+                "residentCount", provider != null ? provider.residentCount() : 0L,
+                "evictionCount", provider != null ? provider.evictionCount() : 0L));
+    }
+
+    @GetMapping(value = "/memory/{memoryId}/tokens", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, Object>> memoryTokens(@PathVariable String memoryId) {
+        CompressionChatMemoryStore store = compressionChatMemoryStore.getIfAvailable();
+        int tokens = store != null ? store.tokenFootprint(memoryId) : 0;
+        return Mono.just(Map.of("memoryId", memoryId, "tokens", tokens));
+    }
+
+    @GetMapping(value = "/memory/{memoryId}/bytes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Map<String, Object>> memoryBytes(@PathVariable String memoryId) {
+        CompressionChatMemoryStore store = compressionChatMemoryStore.getIfAvailable();
+        long bytes = store != null ? store.residentBytes(memoryId) : -1;
+        return Mono.just(Map.of("memoryId", memoryId, "residentBytes", bytes));
+    }
 }
@@ -0,0 +1,64 @@
+package io.will.langchain4jpoc.memory.compression;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+
+/**
+ * Model-agnostic token estimate based on the character count, good enough to decide when to compress.
+ * <p>
+ * Latin text averages about four characters per token, while CJK characters are
+ * roughly one token each, so those are counted separately.
+ */
+public class CharacterRatioTokenCountEstimator implements TokenCountEstimator {
+    // role markers and separators the chat template adds around every message
+    private static final int TOKENS_PER_MESSAGE = 4;
+
+    private final double charsPerToken;
+
+    public CharacterRatioTokenCountEstimator(double charsPerToken) {
+        this.charsPerToken = charsPerToken;
+    }
+
+    @Override
+    public int estimateTokenCountInText(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int wide = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isIdeographic(c) || Character.UnicodeBlock.of(c) == Character.UnicodeBlock.HANGUL_SYLLABLES) {
+                wide++;
+            } else {
+                other++;
+            }
+        }
+        return wide + (int) Math.ceil(other / charsPerToken);
+    }
+
+    @Override
+    public int estimateTokenCountInMessage(ChatMessage message) {
+        String text = switch (message) {
+            case SystemMessage systemMessage -> systemMessage.text();
+            case UserMessage userMessage -> userMessage.hasSingleText() ? userMessage.singleText() : userMessage.contents().toString();
+            case AiMessage aiMessage -> aiMessage.text() != null ? aiMessage.text() : String.valueOf(aiMessage.toolExecutionRequests());
+            case ToolExecutionResultMessage toolMessage -> toolMessage.text();
+            default -> message.toString();
+        };
+        return TOKENS_PER_MESSAGE + estimateTokenCountInText(text);
+    }
+
+    @Override
+    public int estimateTokenCountInMessages(Iterable<ChatMessage> messages) {
+        int total = 0;
+        for (ChatMessage message : messages) {
+            total += estimateTokenCountInMessage(message);
+        }
+        return total;
+    }
+}
@@ -2,12 +2,10 @@ package io.will.langchain4jpoc.memory.compression;
 
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.memory.ChatMemory;
-import dev.langchain4j.store.memory.chat.ChatMemoryStore;
 
-import java.util.ArrayList;
 import java.util.List;
 
-public record CompressionChatMemory(Object memoryId, ChatMemoryStore store) implements ChatMemory {
+public record CompressionChatMemory(Object memoryId, CompressionChatMemoryStore store) implements ChatMemory {
 
     @Override
     public Object id() {
@@ -16,9 +14,8 @@ public record CompressionChatMemory(Object memoryId, ChatMemoryStore store) impl
 
     @Override
     public void add(ChatMessage message) {
-        List<ChatMessage> messages = new ArrayList<>(messages());
-        messages.add(message);
-        store.updateMessages(memoryId, messages);
+        // the store serializes the read-modify-write per memory, concurrent adds would otherwise lose messages
+        store.addMessage(memoryId, message);
     }
 
     @Override
@@ -36,13 +33,13 @@ public record CompressionChatMemory(Object memoryId, ChatMemoryStore store) impl
     }
 
     public static class Builder {
-        private ChatMemoryStore store;
+        private CompressionChatMemoryStore store;
         private Object memoryId;
 
         private Builder() {
         }
 
-        public Builder chatMemoryStore(ChatMemoryStore store) {
+        public Builder chatMemoryStore(CompressionChatMemoryStore store) {
             this.store = store;
             return this;
         }
@@ -5,17 +5,35 @@ import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.ChatMessageType;
 import dev.langchain4j.data.message.SystemMessage;
 import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.TokenCountEstimator;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.store.memory.chat.ChatMemoryStore;
-import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.will.langchain4jpoc.concurrent.StripedLocks;
+import io.will.langchain4jpoc.config.CompressionConfig;
+import io.will.langchain4jpoc.memory.store.PackedChatMemoryStore;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 @ConditionalOnProperty(name = "chat.memory.provider", havingValue = "compression")
@@ -27,11 +45,63 @@ public class CompressionChatMemoryStore implements ChatMemoryStore {
     @Value("${chat-memory.compression.threshold:5}")
     private int threshold;
 
+    @Value("${chat-memory.compression.mode:full}")
+    private CompressionMode mode = CompressionMode.FULL;
+
+    @Value("${chat-memory.compression.keep-recent-turns:2}")
+    private int keepRecentTurns;
+
+    @Value("${chat-memory.compression.trigger:messages}")
+    private CompressionTrigger trigger;
+
+    @Value("${chat-memory.compression.max-tokens:2000}")
+    private int maxTokens;
+
+    private final MessageTokenCounter tokenCounter;
+
     private static final String SUMMARY_PREFIX = "Context: The following is a summary of the previous conversation:";
+    private static final int LOCK_STRIPES = 64;
 
-    public CompressionChatMemoryStore(ChatModel chatModel) {
-        this.delegate = new InMemoryChatMemoryStore();
+    // summarization runs off the request path when set, see scheduleCompression()
+    private final ExecutorService summarizer;
+    private final ConcurrentMap<Object, CompletableFuture<Void>> inFlightSummaries = new ConcurrentHashMap<>();
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+    // tagged with the compression mode, the timer also with the outcome (success, error)
+    private final Meter.MeterProvider<Timer> summarizationTimer;
+    // tagged with the mode and whether the count was taken before or after compression
+    private final Meter.MeterProvider<DistributionSummary> compressedMessages;
+
+    public CompressionChatMemoryStore(@Qualifier(CompressionConfig.DELEGATE_STORE) ChatMemoryStore delegate,
+                                      ChatModel chatModel,
+                                      @Qualifier(CompressionConfig.TOKEN_COUNT_ESTIMATOR) TokenCountEstimator tokenCountEstimator,
+                                      @Value("${chat-memory.compression.async:false}") boolean async,
+                                      @Value("${chat-memory.compression.async.threads:2}") int threads,
+                                      @Value("${chat-memory.compression.async.queue-capacity:100}") int queueCapacity,
+                                      MeterRegistry meterRegistry) {
+        this.delegate = delegate;
         this.chatModel = chatModel;
+        this.tokenCounter = new MessageTokenCounter(tokenCountEstimator);
+        this.summarizer = async ? newSummarizer(threads, queueCapacity) : null;
+        this.summarizationTimer = Timer.builder("compression.summarizations")
+                .description("Latency of the LLM call that summarizes a history")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        this.compressedMessages = DistributionSummary.builder("compression.messages")
+                .description("Number of messages in a history before and after it was compressed")
+                .withRegistry(meterRegistry);
+        meterRegistry.gauge("compression.summaries.in-flight", inFlightSummaries, ConcurrentMap::size);
+    }
+
+    private static ExecutorService newSummarizer(int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "compression-summarizer-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
     }
 
     @Override
@@ -42,10 +112,29 @@ public class CompressionChatMemoryStore implements ChatMemoryStore {
             return;
         }
 
+        // the raw messages are stored first, a summary is swapped in for them once it is ready
+        store(memoryId, messages);
+        compressIfNeeded(memoryId, List.copyOf(messages));
+    }
+
+    /**
+     * Appends a message to the history of the given memory. Only reading and writing the history is serialized
+     * per memory, the summarization that may follow runs outside the lock.
+     */
+    public void addMessage(Object memoryId, ChatMessage message) {
+        List<ChatMessage> messages = locks.call(memoryId, () -> {
+            List<ChatMessage> updated = new ArrayList<>(delegate.getMessages(memoryId));
+            updated.add(message);
+            delegate.updateMessages(memoryId, updated);
+            return List.copyOf(updated);
+        });
+        compressIfNeeded(memoryId, messages);
+    }
+
+    private void compressIfNeeded(Object memoryId, List<ChatMessage> messages) {
        ChatMessage lastMsg = messages.getLast();
        if (lastMsg.type() == ChatMessageType.AI && ((AiMessage) lastMsg).hasToolExecutionRequests()) {
            logger.info("Skipping compression for memory ID: {} [function call in the last message]", memoryId);
-           delegate.updateMessages(memoryId, messages);
            return;
        }
 
@@ -53,30 +142,193 @@ public class CompressionChatMemoryStore implements ChatMemoryStore {
            logger.info(
                    "Skipping compression for memory ID: {} [system message or function call response in the last message]",
                    memoryId);
-           delegate.updateMessages(memoryId, messages);
            return;
        }
 
-       if (messages.size() <= threshold) {
-           logger.debug("No compression for memory ID: {} [less than {} messages]", memoryId, threshold);
-           delegate.updateMessages(memoryId, messages);
+       if (!needsCompression(messages)) {
+           logger.debug("No compression for memory ID: {} [below the {} threshold]", memoryId, trigger);
            return;
        }
 
-       String summary = compressMessages(memoryId, messages);
+       if (summarizer != null) {
+           scheduleCompression(memoryId);
+           return;
+       }
+
+       CompletableFuture<Void> job = new CompletableFuture<>();
+       if (inFlightSummaries.putIfAbsent(memoryId, job) != null) {
+           // the summary in flight keeps the messages added meanwhile, a later turn compresses them if needed
+           logger.debug("Compression for memory ID: {} already in flight", memoryId);
+           return;
+       }
+       try {
+           compressAndSwap(memoryId, messages);
+       } finally {
+           inFlightSummaries.remove(memoryId, job);
+           job.complete(null);
+       }
+    }
+
+    private boolean needsCompression(List<ChatMessage> messages) {
+        if (trigger == CompressionTrigger.TOKENS) {
+            if (mode == CompressionMode.INCREMENTAL && !hasMessagesOutsideWindow(messages)) {
+                // nothing to fold into the summary, the verbatim window alone is over budget
+                return false;
+            }
+            return tokenCounter.count(messages) > maxTokens;
+        }
+        if (mode != CompressionMode.INCREMENTAL) {
+            return messages.size() > threshold;
+        }
+        // in incremental mode only the messages outside the verbatim window count
+        return countMessagesOutsideWindow(messages) > threshold;
+    }
+
+    private boolean hasMessagesOutsideWindow(List<ChatMessage> messages) {
+        return countMessagesOutsideWindow(messages) > 0;
+    }
+
+    private long countMessagesOutsideWindow(List<ChatMessage> messages) {
+        int windowStart = verbatimWindowStart(messages);
+        return messages.subList(0, windowStart).stream()
+                .filter(m -> m.type() != ChatMessageType.SYSTEM)
+                .count();
+    }
+
+    /**
+     * Estimated heap taken by the history of the given memory, or -1 if the underlying store can't tell.
+     */
+    public long residentBytes(Object memoryId) {
+        return delegate instanceof PackedChatMemoryStore packed ? packed.residentBytes(memoryId) : -1;
+    }
+
+    /**
+     * Estimated number of tokens the current history of the given memory adds to a prompt.
+     */
+    public int tokenFootprint(Object memoryId) {
+        return tokenCounter.count(delegate.getMessages(memoryId));
+    }
+
+    /**
+     * Replaces the given history with a summary. In incremental mode only the messages older than the
+     * last {@code keepRecentTurns} turns are folded into the previous summary, the recent ones are kept verbatim.
+     */
+    private List<ChatMessage> compress(Object memoryId, List<ChatMessage> messages) {
+       int windowStart = mode == CompressionMode.INCREMENTAL ? verbatimWindowStart(messages) : messages.size();
+       String summary = compressMessages(memoryId, messages.subList(0, windowStart));
 
        SystemMessage systemMsg = (SystemMessage) messages.stream()
                .filter(m -> m.type() == ChatMessageType.SYSTEM)
                .findFirst().orElse(null);
        systemMsg = replaceTheLatestSummary(systemMsg, summary);
        logger.info("Generated system message with summary: {}", systemMsg.text());
-       logger.info("Updating memory messages of memory ID: {}", memoryId);
-       delegate.updateMessages(memoryId, List.of(systemMsg));
-        // delegate.updateMessages(memoryId, messages);
+
+       List<ChatMessage> compressed = new ArrayList<>();
+       compressed.add(systemMsg);
+       for (ChatMessage msg : messages.subList(windowStart, messages.size())) {
+           if (msg.type() != ChatMessageType.SYSTEM) {
+               compressed.add(msg);
+           }
+       }
+       compressedMessages.withTags("mode", mode.name().toLowerCase(), "stage", "before").record(messages.size());
+       compressedMessages.withTags("mode", mode.name().toLowerCase(), "stage", "after").record(compressed.size());
+       return compressed;
+    }
+
+    /**
+     * Index of the first message of the verbatim window, i.e. the user message that starts
+     * the {@code keepRecentTurns}-th most recent turn.
+     */
+    private int verbatimWindowStart(List<ChatMessage> messages) {
+        if (keepRecentTurns <= 0) {
+            return messages.size();
+        }
+        int turns = 0;
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i).type() == ChatMessageType.USER && ++turns == keepRecentTurns) {
+                return i;
+            }
+        }
+        // fewer turns than the window, keep everything
+        return 0;
+    }
+
+    /**
+     * Summarizes the history of the given memory on the summarizer executor.
+     * Triggers for a memory ID that already has a summary in flight are collapsed into that one.
+     */
+    private void scheduleCompression(Object memoryId) {
+        CompletableFuture<Void> job = new CompletableFuture<>();
+        if (inFlightSummaries.putIfAbsent(memoryId, job) != null) {
+            logger.debug("Compression for memory ID: {} already in flight", memoryId);
+            return;
+        }
+
+        try {
+            summarizer.execute(() -> {
+                try {
+                    compressInBackground(memoryId);
+                } catch (Exception e) {
+                    logger.error("Background compression failed for memory ID: {}", memoryId, e);
+                } finally {
+                    inFlightSummaries.remove(memoryId, job);
+                    job.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Summarizer is saturated, compression for memory ID: {} deferred to a later turn", memoryId);
+            inFlightSummaries.remove(memoryId, job);
+            job.complete(null);
+        }
+    }
+
+    private void compressInBackground(Object memoryId) {
+        List<ChatMessage> snapshot = locks.call(memoryId, () -> List.copyOf(delegate.getMessages(memoryId)));
+        if (needsCompression(snapshot)) {
+            compressAndSwap(memoryId, snapshot);
+        }
+    }
+
+    /**
+     * Summarizes the given snapshot of a history without holding its lock, then swaps the summary in
+     * if the stored history still starts with the snapshot.
+     */
+    private void compressAndSwap(Object memoryId, List<ChatMessage> snapshot) {
+        List<ChatMessage> compressed = new ArrayList<>(compress(memoryId, snapshot));
+
+        locks.run(memoryId, () -> {
+            List<ChatMessage> current = delegate.getMessages(memoryId);
+            if (current.size() < snapshot.size() || !current.subList(0, snapshot.size()).equals(snapshot)) {
+                logger.info("History of memory ID: {} was replaced during compression, discarding the summary", memoryId);
+                return;
+            }
+            // messages added while the summary was generated are kept as they are
+            compressed.addAll(current.subList(snapshot.size(), current.size()));
+            logger.info("Swapping in summary for memory ID: {}, {} messages kept", memoryId, compressed.size() - 1);
+            delegate.updateMessages(memoryId, compressed);
+        });
+    }
+
+    private void store(Object memoryId, List<ChatMessage> messages) {
+        // serialized with the summary swap of compressAndSwap()
+        locks.run(memoryId, () -> delegate.updateMessages(memoryId, messages));
     }
 
     private String compressMessages(Object memoryId, List<ChatMessage> messages) {
         logger.info("Triggering semantic compression for memory ID: {} with {} messages", memoryId, messages.size());
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            String summary = chatModel.chat(buildCompressionPrompt(messages));
+            outcome = "success";
+            return summary;
+        } finally {
+            summarizationTimer.withTags("mode", mode.name().toLowerCase(), "outcome", outcome)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    static String buildCompressionPrompt(List<ChatMessage> messages) {
         List<ChatMessage> toBeCompressed = new ArrayList<>();
         for (ChatMessage msg : messages) {
             if (msg.type() == ChatMessageType.SYSTEM) {
@@ -98,10 +350,10 @@ public class CompressionChatMemoryStore implements ChatMemoryStore {
                 default -> logger.debug("Skipping message of type: {}", msg.type());
             }
         }
-        return chatModel.chat(sb.toString());
+        return sb.toString();
     }
 
-    private void extractSummaryFromSystemMessageIfAny(SystemMessage systemMsg, List<ChatMessage> compressed) {
+    private static void extractSummaryFromSystemMessageIfAny(SystemMessage systemMsg, List<ChatMessage> compressed) {
         String content = systemMsg.text();
         if (content.contains(SUMMARY_PREFIX)) {
             int startIndex = content.indexOf(SUMMARY_PREFIX) + SUMMARY_PREFIX.length();
@@ -143,4 +395,25 @@ public class CompressionChatMemoryStore implements ChatMemoryStore {
         Thread.dumpStack();
         delegate.deleteMessages(memoryId);
     }
+
+    public enum CompressionTrigger {
+        /** Compress once the history has more than {@code threshold} messages. */
+        MESSAGES,
+        /** Compress once the estimated history size exceeds {@code max-tokens}. */
+        TOKENS
+    }
+
+    public enum CompressionMode {
+        /** Replace the whole history with a summary. */
+        FULL,
+        /** Fold only the messages older than the verbatim window into the previous summary. */
+        INCREMENTAL
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (summarizer != null) {
+            summarizer.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,46 @@
+package io.will.langchain4jpoc.memory.compression;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+
+import java.util.List;
+
+/**
+ * Counts the tokens of chat messages with a pluggable {@link TokenCountEstimator},
+ * estimating each message only once.
+ * <p>
+ * Messages are immutable values, so counts are cached by message content: the packed and mapped-log
+ * stores decode new instances on every read, which still find the count of an equal message.
+ * The cache is bounded by size, an evicted count is simply estimated again.
+ */
+public class MessageTokenCounter {
+    private static final long DEFAULT_MAX_CACHED_MESSAGES = 10_000;
+
+    private final TokenCountEstimator estimator;
+    private final Cache<ChatMessage, Integer> counts;
+
+    public MessageTokenCounter(TokenCountEstimator estimator) {
+        this(estimator, DEFAULT_MAX_CACHED_MESSAGES);
+    }
+
+    public MessageTokenCounter(TokenCountEstimator estimator, long maxCachedMessages) {
+        this.estimator = estimator;
+        this.counts = Caffeine.newBuilder()
+                .maximumSize(maxCachedMessages)
+                .build();
+    }
+
+    public int count(ChatMessage message) {
+        return counts.get(message, estimator::estimateTokenCountInMessage);
+    }
+
+    public int count(List<ChatMessage> messages) {
+        int total = 0;
+        for (ChatMessage message : messages) {
+            total += count(message);
+        }
+        return total;
+    }
+}
@@ -1,31 +1,68 @@
 package io.will.langchain4jpoc.memory.mem0;
 
+import com.github.benmanes.caffeine.cache.Interner;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.SystemMessage;
 import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.memory.ChatMemory;
+import io.will.langchain4jpoc.concurrent.KeyedSequencer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
 public class Mem0ChatMemory implements ChatMemory {
     private static final Logger logger = LoggerFactory.getLogger(Mem0ChatMemory.class);
 
-    private final ConcurrentMap<Object, ChatMessage> systemMessageStore = new ConcurrentHashMap<>();
+    // every session carries the same few system prompts, so they are shared instead of kept per session
+    private static final Interner<SystemMessage> SYSTEM_MESSAGES = Interner.newWeakInterner();
+
+    private static final int MAX_PENDING_PREFETCHES = 32;
+    // longer than a turn waits behind the earlier turns of its session, in practice
+    private static final Duration PREFETCH_TTL = Duration.ofMinutes(2);
+
+    private volatile SystemMessage systemMessage;
     
     private final Object memoryId;
     private final Mem0ChatMemoryStore store;
     private final Supplier<String> querySupplier;
+    private final Supplier<Object> turnSupplier;
+    private final Duration prefetchDeadline;
+
+    // histories requested at the start of queued turns by prefetch(), keyed by the token of the turn, so that
+    // messages() only has to wait for what is left of its own; queued turns don't take each other's prefetch,
+    // not even when they ask the same question; kept until endTurn(), a turn may ask for its history more than once
+    private final ConcurrentMap<Object, PrefetchedHistory> prefetchedHistories = new ConcurrentHashMap<>();
+    // turns grouped by group(), keyed by their token, they share one history read and hold back what they add
+    private final ConcurrentMap<Object, TurnGroup> groupsByTurn = new ConcurrentHashMap<>();
+
+    // writes are sequenced by memory ID so that Mem0 receives the messages of a session in the order they were
+    // added; the sequencer is shared by the memories of a provider, so the order holds across a recreated memory
+    private final KeyedSequencer writeSequencer;
 
     public Mem0ChatMemory(Object memoryId, Mem0ChatMemoryStore store, Supplier<String> querySupplier) {
+        this(memoryId, store, querySupplier, () -> null, Duration.ofMillis(500), new KeyedSequencer());
+    }
+
+    public Mem0ChatMemory(Object memoryId, Mem0ChatMemoryStore store, Supplier<String> querySupplier,
+                          Supplier<Object> turnSupplier, Duration prefetchDeadline, KeyedSequencer writeSequencer) {
         this.memoryId = memoryId;
         this.store = store;
         this.querySupplier = querySupplier;
+        this.turnSupplier = turnSupplier;
+        this.prefetchDeadline = prefetchDeadline;
+        this.writeSequencer = writeSequencer;
     }
 
     @Override
@@ -39,13 +76,114 @@ public class Mem0ChatMemory implements ChatMemory {
 
         if (message instanceof SystemMessage systemMsg) {
             // only retain the last system message
-            systemMessageStore.put(memoryId, systemMsg);
+            systemMessage = SYSTEM_MESSAGES.intern(systemMsg);
+            return;
+        }
+
+        Object turn = turnSupplier.get();
+        TurnGroup group = groupOf(turn);
+        if (group != null) {
+            group.add(turn, message);
+            return;
+        }
+
+        // the store only forwards the latest message to Mem0, so there is no need to read the history first
+        write(() -> store.updateMessagesAsync(memoryId, List.of(message)));
+    }
+
+    /**
+     * Chains a write after the previous ones of the session. Failures are logged, the turn doesn't wait for the write.
+     */
+    private CompletableFuture<Void> write(Supplier<Mono<Void>> write) {
+        // subscribed right away, so the write takes its place in the sequence now
+        return writeSequencer.sequence(memoryId, Mono.defer(write))
+                .onErrorResume(e -> {
+                    logger.error("Failed to add messages to memory ID: {} | {}", memoryId, e.getMessage(), e);
+                    return Mono.empty();
+                })
+                .toFuture();
+    }
+
+    /**
+     * Starts retrieving the history for the given turn without waiting for it, so that the Mem0 round trip
+     * overlaps with the rest of the turn. The {@link #messages()} call of the same turn joins it.
+     * <p>
+     * A turn queued behind earlier turns of its session starts its prefetch right away, so the history it gets
+     * doesn't include what those turns add. Mem0 extracts memories from added messages asynchronously anyway,
+     * so a search right after a turn often misses that turn as well.
+     */
+    public void prefetch(Object turn, String query) {
+        if (turn == null || groupsByTurn.containsKey(turn)) {
             return;
         }
+        if (prefetchedHistories.size() >= MAX_PENDING_PREFETCHES && !evictSettledPrefetches()) {
+            logger.debug("Too many pending prefetches for memory ID: {}, the turn reads its history itself", memoryId);
+            return;
+        }
+        prefetchedHistories.put(turn, read(query));
+    }
+
+    /**
+     * Starts searching the history with the query, or getting all of it without one.
+     */
+    private PrefetchedHistory read(String query) {
+        Mono<List<ChatMessage>> history = query != null && !query.trim().isEmpty()
+                ? store.searchMessagesAsync(memoryId, query)
+                : store.getMessagesAsync(memoryId);
+        return new PrefetchedHistory(query, history.map(List::copyOf).toFuture(), System.nanoTime());
+    }
+
+    /**
+     * Drops what was kept for the given turn once it is over, answered or not.
+     */
+    public void endTurn(Object turn) {
+        if (turn != null) {
+            prefetchedHistories.remove(turn);
+        }
+    }
+
+    /**
+     * Whether turns have a prefetch or group pending here, the provider keeps such a memory even when it is evicted.
+     */
+    boolean hasPendingTurns() {
+        return !prefetchedHistories.isEmpty() || !groupsByTurn.isEmpty();
+    }
+
+    /**
+     * Groups turns of this memory that arrived together, so that Mem0 is written once for all of them instead of
+     * once per turn. The history of every turn is searched with its own query right away, all of them at once,
+     * and turns asking the same question share the search. As the turns run one after another each of them also
+     * sees the messages added by the turns before it. Those messages are held back and written to Mem0 in a
+     * single add when the group is closed, so a later group of the memory should only be started after that.
+     */
+    public TurnGroup group(List<Object> turns, List<String> queries) {
+        Map<String, PrefetchedHistory> byQuery = new HashMap<>();
+        Map<Object, PrefetchedHistory> histories = new HashMap<>();
+        for (int i = 0; i < turns.size(); i++) {
+            String query = queries.get(i) != null ? queries.get(i).trim() : "";
+            histories.put(turns.get(i), byQuery.computeIfAbsent(query, this::read));
+        }
+        TurnGroup group = new TurnGroup(List.copyOf(turns), histories);
+        turns.forEach(turn -> groupsByTurn.put(turn, group));
+        return group;
+    }
+
+    private TurnGroup groupOf(Object turn) {
+        return turn != null ? groupsByTurn.get(turn) : null;
+    }
 
-        List<ChatMessage> messages = new ArrayList<>(messages());
-        messages.add(message);
-        store.updateMessages(memoryId, messages);
+    /**
+     * Drops the prefetches that are done or too old once too many are pending, turns that ended without
+     * {@link #endTurn} would otherwise pile up. Prefetches still on their way are kept, a turn whose settled
+     * prefetch is dropped reads its history itself.
+     *
+     * @return whether there is room for another prefetch
+     */
+    private boolean evictSettledPrefetches() {
+        long now = System.nanoTime();
+        prefetchedHistories.values().removeIf(prefetched -> prefetched.messages().isDone()
+                || now - prefetched.startedAt() > PREFETCH_TTL.toNanos());
+        return prefetchedHistories.size() < MAX_PENDING_PREFETCHES;
     }
 
     @Override
@@ -57,7 +195,15 @@ public class Mem0ChatMemory implements ChatMemory {
         try {
             currentQuery = querySupplier != null ? querySupplier.get() : null;
 
-            if (currentQuery != null && !currentQuery.trim().isEmpty()) {
+            Object turn = turnSupplier.get();
+            TurnGroup group = groupOf(turn);
+            PrefetchedHistory prefetched = turn != null && group == null ? prefetchedHistories.get(turn) : null;
+            if (group != null) {
+                result.addAll(joinPrefetched(group.histories.get(turn)));
+                result.addAll(group.addedBefore(turn));
+            } else if (prefetched != null) {
+                result.addAll(joinPrefetched(prefetched));
+            } else if (currentQuery != null && !currentQuery.trim().isEmpty()) {
                 logger.debug("Searching with query: {}", currentQuery);
                 result.addAll(store.searchMessages(memoryId, currentQuery));
             } else { // fallback to return all
@@ -66,18 +212,14 @@ public class Mem0ChatMemory implements ChatMemory {
             }
         } catch (Exception e) {
             logger.error("Failed to get messages: {}", e.getMessage(), e);
-            // fallback to return all memories if Exceptions found
-            try {
-                result.addAll(store.getMessages(memoryId));
-            } catch (Exception fallbackException) {
-                logger.error("Fallback to empty messages failed: {}", fallbackException.getMessage(), fallbackException);
-            }
+            // fall back to local history, another call to Mem0 would likely be just as slow
+            result.addAll(store.cachedMessages(memoryId, currentQuery));
         }
 
         // system message and the current user query have to be handled separately under LangChain4j
-        ChatMessage sysMsg = systemMessageStore.get(memoryId);
+        SystemMessage sysMsg = systemMessage;
         if (sysMsg != null) {
-            result.addFirst(systemMessageStore.get(memoryId));
+            result.addFirst(sysMsg);
         }
         if (currentQuery != null && !currentQuery.trim().isEmpty()) {
             result.addLast(new UserMessage(currentQuery));
@@ -89,9 +231,75 @@ public class Mem0ChatMemory implements ChatMemory {
     public void clear() {
         logger.info("Clearing messages for memory ID: {}", memoryId);
         store.deleteMessages(memoryId);
-        systemMessageStore.remove(memoryId);
+        systemMessage = null;
+        prefetchedHistories.clear();
+        groupsByTurn.clear();
+    }
+
+    /**
+     * Waits for the prefetched history until the deadline. A late or failed prefetch falls back to whatever
+     * the cache holds for the memory, the turn then goes ahead with less context instead of waiting for Mem0.
+     */
+    private List<ChatMessage> joinPrefetched(PrefetchedHistory prefetched) {
+        try {
+            List<ChatMessage> messages = prefetched.messages().get(prefetchDeadline.toNanos(), TimeUnit.NANOSECONDS);
+            logger.debug("Using history prefetched at the start of the turn");
+            return messages != null ? messages : List.of();
+        } catch (TimeoutException e) {
+            logger.warn("Prefetched history for memory ID: {} not ready within {}, falling back to cached history", memoryId, prefetchDeadline);
+        } catch (Exception e) {
+            logger.error("Failed to prefetch history for memory ID: {} | {}", memoryId, e.getMessage(), e);
+        }
+        return store.cachedMessages(memoryId, prefetched.query());
+    }
+
+    private record PrefetchedHistory(String query, CompletableFuture<List<ChatMessage>> messages, long startedAt) {}
+
+    /**
+     * Turns sharing one write, see {@link #group(List, List)}.
+     */
+    public final class TurnGroup {
+        private final List<Object> turns;
+        // by turn, turns with the same query share one
+        private final Map<Object, PrefetchedHistory> histories;
+        private final List<AddedMessage> added = new ArrayList<>();
+
+        private TurnGroup(List<Object> turns, Map<Object, PrefetchedHistory> histories) {
+            this.turns = turns;
+            this.histories = histories;
+        }
+
+        private synchronized void add(Object turn, ChatMessage message) {
+            added.add(new AddedMessage(turn, message));
+        }
+
+        /**
+         * The messages added by the other turns of the group, the current query is appended by {@link #messages()}.
+         */
+        private synchronized List<ChatMessage> addedBefore(Object turn) {
+            return added.stream().filter(a -> a.turn() != turn).map(AddedMessage::message).toList();
+        }
+
+        /**
+         * Lets the turns go back to reading and writing on their own, and writes what they added to Mem0
+         * in one add. Completes once the write is done, a failed write is logged and not signalled.
+         */
+        public Mono<Void> close() {
+            turns.forEach(turn -> groupsByTurn.remove(turn, this));
+            List<ChatMessage> messages;
+            synchronized (this) {
+                messages = added.stream().map(AddedMessage::message).toList();
+            }
+            if (messages.isEmpty()) {
+                return Mono.empty();
+            }
+            logger.debug("Writing {} messages of {} grouped turns to memory ID: {}", messages.size(), turns.size(), memoryId);
+            return Mono.fromFuture(write(() -> store.addMessagesAsync(memoryId, messages)), true);
+        }
     }
 
+    private record AddedMessage(Object turn, ChatMessage message) {}
+
     public static Builder builder() {
         return new Builder();
     }
@@ -100,6 +308,9 @@ public class Mem0ChatMemory implements ChatMemory {
         private Mem0ChatMemoryStore store;
         private Object memoryId;
         private Supplier<String> querySupplier = () -> null;
+        private Supplier<Object> turnSupplier = () -> null;
+        private Duration prefetchDeadline = Duration.ofMillis(500);
+        private KeyedSequencer writeSequencer;
 
         private Builder() {
         }
@@ -119,6 +330,25 @@ public class Mem0ChatMemory implements ChatMemory {
             return this;
         }
 
+        public Builder turnSupplier(Supplier<Object> turnSupplier) {
+            this.turnSupplier = turnSupplier;
+            return this;
+        }
+
+        public Builder prefetchDeadline(Duration prefetchDeadline) {
+            this.prefetchDeadline = prefetchDeadline;
+            return this;
+        }
+
+        /**
+         * Sequencer shared by the memories whose writes have to stay in order across instances, by default
+         * one of its own.
+         */
+        public Builder writeSequencer(KeyedSequencer writeSequencer) {
+            this.writeSequencer = writeSequencer;
+            return this;
+        }
+
         public Mem0ChatMemory build() {
             if (store == null) {
                 throw new IllegalStateException("ChatMemoryStore must be set");
@@ -126,7 +356,8 @@ public class Mem0ChatMemory implements ChatMemory {
             if (memoryId == null) {
                 throw new IllegalStateException("MemoryId must be set");
             }
-            return new Mem0ChatMemory(memoryId, store, querySupplier);
+            return new Mem0ChatMemory(memoryId, store, querySupplier, turnSupplier, prefetchDeadline,
+                    writeSequencer != null ? writeSequencer : new KeyedSequencer());
         }
     }
 }
\ No newline at end of file
@@ -1,14 +1,25 @@
 package io.will.langchain4jpoc.memory.mem0;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
 import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import io.will.langchain4jpoc.concurrent.KeyedSequencer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
 
 @Component("mem0ChatMemoryProvider")
@@ -17,18 +28,86 @@ public class Mem0ChatMemoryProvider implements ChatMemoryProvider {
     private static final Logger logger = LoggerFactory.getLogger(Mem0ChatMemoryProvider.class);
     
     private final Mem0ChatMemoryStore mem0ChatMemoryStore;
+    private final Duration prefetchDeadline;
 
-    private final ConcurrentMap<Object, ChatMemory> memoryCache = new ConcurrentHashMap<>();
+    // bounded by size and idle time, an evicted session is simply recreated on its next turn
+    private final Cache<Object, Mem0ChatMemory> memoryCache;
+    // evicted sessions with turns still pending, taken back into the cache by their next access
+    private final ConcurrentMap<Object, Mem0ChatMemory> evictedWithPendingTurns = new ConcurrentHashMap<>();
+    // orders the writes of a session across the instances it goes through
+    private final KeyedSequencer writeSequencer = new KeyedSequencer();
+    private final LongAdder evictionCount = new LongAdder();
     
-    public Mem0ChatMemoryProvider(Mem0ChatMemoryStore mem0ChatMemoryStore) {
+    public Mem0ChatMemoryProvider(Mem0ChatMemoryStore mem0ChatMemoryStore,
+                                  @Value("${mem0.sessions.max-size:100000}") long maxSize,
+                                  @Value("${mem0.sessions.idle-timeout:30m}") Duration idleTimeout,
+                                  @Value("${mem0.prefetch.deadline:500ms}") Duration prefetchDeadline) {
+        this(mem0ChatMemoryStore, maxSize, idleTimeout, prefetchDeadline, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param ticker   time source of the idle timeout
+     * @param executor runs cache maintenance and the removal listener
+     */
+    Mem0ChatMemoryProvider(Mem0ChatMemoryStore mem0ChatMemoryStore, long maxSize, Duration idleTimeout,
+                           Duration prefetchDeadline, Ticker ticker, Executor executor) {
         this.mem0ChatMemoryStore = mem0ChatMemoryStore;
+        this.prefetchDeadline = prefetchDeadline;
+        this.memoryCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(idleTimeout)
+                .ticker(ticker)
+                .executor(executor)
+                // runs as part of the eviction, so the session is parked before it can be recreated
+                .evictionListener((Object id, Mem0ChatMemory memory, RemovalCause cause) -> {
+                    if (memory != null && memory.hasPendingTurns()) {
+                        evictedWithPendingTurns.put(id, memory);
+                    }
+                })
+                .removalListener((Object id, Mem0ChatMemory memory, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        evictionCount.increment();
+                        logger.debug("Evicted Mem0ChatMemory for ID: {} ({})", id, cause);
+                    }
+                })
+                .build();
     }
     
     @Override
     public ChatMemory get(Object memoryId) {
         logger.info("Getting chat memory for ID: {}", memoryId);
         
-        return memoryCache.computeIfAbsent(memoryId, id -> {
+        return getMem0ChatMemory(memoryId);
+    }
+
+    /**
+     * Starts retrieving the history of the given memory ahead of the turn, see {@link Mem0ChatMemory#prefetch(Object, String)}.
+     */
+    public void prefetch(Object memoryId, Object turn, String query) {
+        getMem0ChatMemory(memoryId).prefetch(turn, query);
+    }
+
+    /**
+     * Drops what was kept for the turn, see {@link Mem0ChatMemory#endTurn(Object)}.
+     */
+    public void endTurn(Object memoryId, Object turn) {
+        getMem0ChatMemory(memoryId).endTurn(turn);
+    }
+
+    /**
+     * Groups turns of the given memory so that they read and write Mem0 once, see {@link Mem0ChatMemory#group(List, List)}.
+     */
+    public Mem0ChatMemory.TurnGroup group(Object memoryId, List<Object> turns, List<String> queries) {
+        return getMem0ChatMemory(memoryId).group(turns, queries);
+    }
+
+    private Mem0ChatMemory getMem0ChatMemory(Object memoryId) {
+        return memoryCache.get(memoryId, id -> {
+            Mem0ChatMemory evicted = evictedWithPendingTurns.remove(id);
+            if (evicted != null) {
+                logger.debug("Taking back evicted Mem0ChatMemory with pending turns for ID: {}", id);
+                return evicted;
+            }
             logger.info("Creating new Mem0ChatMemory for ID: {}", id);
             Supplier<String> querySupplier = () -> QueryContext.getQuery(id);
             
@@ -36,7 +115,20 @@ public class Mem0ChatMemoryProvider implements ChatMemoryProvider {
                     .chatMemoryStore(mem0ChatMemoryStore)
                     .memoryId(id)
                     .querySupplier(querySupplier)
+                    .turnSupplier(() -> QueryContext.getTurn(id))
+                    .prefetchDeadline(prefetchDeadline)
+                    .writeSequencer(writeSequencer)
                     .build();
         });
     }
-}
\ No newline at end of file
+
+    public long residentCount() {
+        // expired sessions are otherwise only dropped as the cache is used
+        memoryCache.cleanUp();
+        return memoryCache.estimatedSize();
+    }
+
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+}
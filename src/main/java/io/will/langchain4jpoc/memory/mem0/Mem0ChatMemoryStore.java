@@ -1,35 +1,79 @@
 package io.will.langchain4jpoc.memory.mem0;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.ChatMessageType;
 import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @ConditionalOnProperty(name = "chat.memory.provider", havingValue = "mem0")
 public class Mem0ChatMemoryStore implements ChatMemoryStore {
     private static final Logger logger = LoggerFactory.getLogger(Mem0ChatMemoryStore.class);
+    private static final int LAST_KNOWN_HISTORY_MAX_USERS = 10_000;
     
     private final Mem0Client mem0Client;
     private final String appId;
     private final int topK;
+    private final Mem0MemoryCache cache;
+    private final Mem0WriteBehindQueue writeBehindQueue;
+
+    // the latest history read from Mem0 per user, kept regardless of writes to answer reads while Mem0 is unavailable
+    private final Cache<String, List<ChatMessage>> lastKnownHistory = Caffeine.newBuilder()
+            .maximumSize(LAST_KNOWN_HISTORY_MAX_USERS)
+            .build();
+
+    // reads are tagged with the operation (get, search) and where they were answered from (cache, mem0, fallback)
+    private final Meter.MeterProvider<Timer> readTimer;
+    private final Meter.MeterProvider<DistributionSummary> readMessages;
+    // writes are tagged with how they were handed over (direct, write-behind)
+    private final Meter.MeterProvider<Timer> writeTimer;
     
+    public Mem0ChatMemoryStore(Mem0Client mem0Client, String appId, int topK) {
+        this(mem0Client, appId, topK, Mem0MemoryCache.disabled(), Mem0WriteBehindQueue.disabled(), new SimpleMeterRegistry());
+    }
+
+    @Autowired
     public Mem0ChatMemoryStore(Mem0Client mem0Client,
                              @Value("${mem0.app.id:langchain4j-springboot-poc}") String appId,
-                             @Value("${mem0.top.k:3}") int topK) {
+                             @Value("${mem0.top.k:3}") int topK,
+                             Mem0MemoryCache cache,
+                             Mem0WriteBehindQueue writeBehindQueue,
+                             MeterRegistry meterRegistry) {
         this.mem0Client = mem0Client;
         this.appId = appId;
         this.topK = topK;
+        this.cache = cache;
+        this.writeBehindQueue = writeBehindQueue;
+        this.readTimer = Timer.builder("mem0.store.reads")
+                .description("Latency of memory reads including the cache")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        this.readMessages = DistributionSummary.builder("mem0.store.read.messages")
+                .description("Number of messages returned by memory reads")
+                .withRegistry(meterRegistry);
+        this.writeTimer = Timer.builder("mem0.store.writes")
+                .description("Time spent on the caller side of memory writes")
+                .withRegistry(meterRegistry);
     }
     
     @Override
@@ -41,31 +85,18 @@ public class Mem0ChatMemoryStore implements ChatMemoryStore {
             return;
         }
         
+        long start = System.nanoTime();
         try {
             String userId = memoryId.toString();
+            List<Mem0Client.Message> lastMessages = lastMem0Message(messages);
             
-            List<Mem0Client.Message> mem0Messages = messages.stream()
-                    .filter(msg -> msg.type() == ChatMessageType.USER || msg.type() == ChatMessageType.AI)
-                    .map(msg -> {
-                        String role = msg.type() == ChatMessageType.USER ? "user" : "assistant";
-                        String content;
-                        
-                        if (msg.type() == ChatMessageType.USER) {
-                            content = ((UserMessage) msg).singleText();
-                        } else {
-                            content = ((AiMessage) msg).text();
-                        }
-                        
-                        return new Mem0Client.Message(role, content);
-                    })
-                    .toList();
-            
-            if (!mem0Messages.isEmpty()) {
-                // only add the last message
-                List<Mem0Client.Message> lastMessages = new ArrayList<>();
-                lastMessages.add(mem0Messages.getLast());
-                
+            if (!lastMessages.isEmpty() && writeBehindQueue.isEnabled()) {
+                writeBehindQueue.enqueue(userId, lastMessages.getFirst()).block();
+                recordWrite("write-behind", start);
+            } else if (!lastMessages.isEmpty()) {
                 mem0Client.addMemory(userId, appId, lastMessages);
+                cache.invalidateUser(userId);
+                recordWrite("direct", start);
                 logger.info("Added messages to mem0 for user: {}", userId);
             }
         } catch (Exception e) {
@@ -78,24 +109,28 @@ public class Mem0ChatMemoryStore implements ChatMemoryStore {
     public List<ChatMessage> getMessages(Object memoryId) {
         logger.info("Getting messages for memory ID: {}", memoryId);
         
+        long start = System.nanoTime();
         try {
             String userId = memoryId.toString();
-            JsonNode response = mem0Client.getMemories(userId, appId);
-            
-            List<ChatMessage> messages = new ArrayList<>();
-            
-            // Mem0 API returns an array directly
-            if (response != null && response.isArray()) {
-                for (JsonNode memory : response) {
-                    extractMessagesFromMemory(memory, messages);
-                }
+            List<ChatMessage> cached = cache.get(userId, appId, null, 0);
+            if (cached != null) {
+                logger.debug("Returning cached messages for memory ID: {}", memoryId);
+                recordRead("get", "cache", start, cached.size());
+                return new ArrayList<>(cached);
             }
+
+            List<Mem0Memory> response = mem0Client.getMemories(userId, appId);
+            List<ChatMessage> messages = toMessages(response);
+            remember(userId, null, 0, messages, start);
+            recordRead("get", "mem0", start, messages.size());
             
             logger.info("Retrieved {} messages from mem0 for memory ID: {}", messages.size(), memoryId);
-            return new ArrayList<>(messages);
+            return messages;
         } catch (Exception e) {
-            logger.error("Failed to get messages: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to get messages", e);
+            logger.error("Failed to get messages, falling back to local history: {}", e.getMessage());
+            List<ChatMessage> fallback = cachedMessages(memoryId, null);
+            recordRead("get", "fallback", start, fallback.size());
+            return fallback;
         }
     }
     
@@ -112,34 +147,208 @@ public class Mem0ChatMemoryStore implements ChatMemoryStore {
     public List<ChatMessage> searchMessages(Object memoryId, String query) {
         logger.info("Searching messages for memory ID: {} with query: {}", memoryId, query);
         
+        long start = System.nanoTime();
         try {
             String userId = memoryId.toString();
-            JsonNode response = mem0Client.searchMemories(query, userId, appId, topK);
-            
-            List<ChatMessage> messages = new ArrayList<>();
-            // Mem0 API returns an array directly
-            if (response != null && response.isArray()) {
-                for (JsonNode memory : response) {
-                    extractMessagesFromMemory(memory, messages);
-                }
+            List<ChatMessage> cached = cache.get(userId, appId, query, topK);
+            if (cached != null) {
+                logger.debug("Returning cached messages for memory ID: {} with query: {}", memoryId, query);
+                recordRead("search", "cache", start, cached.size());
+                return new ArrayList<>(cached);
             }
+
+            List<Mem0Memory> response = mem0Client.searchMemories(query, userId, appId, topK);
+            List<ChatMessage> messages = toMessages(response);
+            remember(userId, query, topK, messages, start);
+            recordRead("search", "mem0", start, messages.size());
             
             logger.info("Found {} relevant messages for query: {}", messages.size(), query);
             return messages;
         } catch (Exception e) {
-            logger.error("Failed to search messages: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to search messages", e);
+            logger.error("Failed to search messages, falling back to local history: {}", e.getMessage());
+            List<ChatMessage> fallback = cachedMessages(memoryId, query);
+            recordRead("search", "fallback", start, fallback.size());
+            return fallback;
         }
     }
-    
-    private void extractMessagesFromMemory(JsonNode memory, List<ChatMessage> messages) {
-        if (memory.has("memory") && memory.get("memory").isTextual()) {
-            String memoryContent = memory.get("memory").asText();
-            if (memoryContent != null && !memoryContent.trim().isEmpty()) {
-                // Since Mem0 API doesn't provide role information in the response,
-                // we treat the memory content as a UserMessage
-                messages.add(UserMessage.from(memoryContent));
+
+    /**
+     * Local history of the memory, without going to Mem0: the cached results of the same search,
+     * else the cached full history, else the last history read from Mem0 for the user, else nothing.
+     */
+    public List<ChatMessage> cachedMessages(Object memoryId, String query) {
+        String userId = memoryId.toString();
+        List<ChatMessage> cached = query != null ? cache.get(userId, appId, query, topK) : null;
+        if (cached == null) {
+            cached = cache.get(userId, appId, null, 0);
+        }
+        if (cached == null) {
+            cached = lastKnownHistory.getIfPresent(userId);
+        }
+        return cached != null ? new ArrayList<>(cached) : new ArrayList<>();
+    }
+
+    /**
+     * Non-blocking variant of {@link #updateMessages}. Completes once Mem0 has accepted the write.
+     */
+    public Mono<Void> updateMessagesAsync(Object memoryId, List<ChatMessage> messages) {
+        List<Mem0Client.Message> lastMessages = lastMem0Message(messages);
+        if (lastMessages.isEmpty()) {
+            logger.warn("No messages to update for memory ID: {}", memoryId);
+            return Mono.empty();
+        }
+
+        String userId = memoryId.toString();
+        if (writeBehindQueue.isEnabled()) {
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return writeBehindQueue.enqueue(userId, lastMessages.getFirst())
+                        .doOnSuccess(done -> recordWrite("write-behind", start));
+            });
+        }
+        return addMemoryAsync(userId, lastMessages);
+    }
+
+    /**
+     * Writes the user and AI messages among the given ones to Mem0 in a single add, in their order.
+     * Completes once Mem0 has accepted the write.
+     */
+    public Mono<Void> addMessagesAsync(Object memoryId, List<ChatMessage> messages) {
+        List<Mem0Client.Message> mem0Messages = new ArrayList<>();
+        for (ChatMessage message : messages) {
+            Mem0Client.Message mem0Message = toMem0Message(message);
+            if (mem0Message != null) {
+                mem0Messages.add(mem0Message);
+            }
+        }
+        if (mem0Messages.isEmpty()) {
+            logger.warn("No messages to add for memory ID: {}", memoryId);
+            return Mono.empty();
+        }
+
+        String userId = memoryId.toString();
+        if (writeBehindQueue.isEnabled()) {
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return Flux.fromIterable(mem0Messages)
+                        .concatMap(message -> writeBehindQueue.enqueue(userId, message))
+                        .then()
+                        .doOnSuccess(done -> recordWrite("write-behind", start));
+            });
+        }
+        return addMemoryAsync(userId, mem0Messages);
+    }
+
+    private Mono<Void> addMemoryAsync(String userId, List<Mem0Client.Message> messages) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mem0Client.addMemoryAsync(userId, appId, messages)
+                    .doOnSuccess(response -> {
+                        cache.invalidateUser(userId);
+                        recordWrite("direct", start);
+                        logger.info("Added messages to mem0 for user: {}", userId);
+                    })
+                    .then();
+        });
+    }
+
+    /**
+     * Non-blocking variant of {@link #getMessages}.
+     */
+    public Mono<List<ChatMessage>> getMessagesAsync(Object memoryId) {
+        String userId = memoryId.toString();
+        return readThrough("get", userId, null, 0, Mono.defer(() -> mem0Client.getMemoriesAsync(userId, appId)))
+                .doOnNext(messages -> logger.info("Retrieved {} messages for memory ID: {}", messages.size(), memoryId));
+    }
+
+    /**
+     * Non-blocking variant of {@link #searchMessages}.
+     */
+    public Mono<List<ChatMessage>> searchMessagesAsync(Object memoryId, String query) {
+        String userId = memoryId.toString();
+        return readThrough("search", userId, query, topK, Mono.defer(() -> mem0Client.searchMemoriesAsync(query, userId, appId, topK)))
+                .doOnNext(messages -> logger.info("Found {} relevant messages for query: {}", messages.size(), query));
+    }
+
+    private Mono<List<ChatMessage>> readThrough(String operation, String userId, String query, int k, Mono<List<Mem0Memory>> upstream) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            List<ChatMessage> cached = cache.get(userId, appId, query, k);
+            if (cached != null) {
+                recordRead(operation, "cache", start, cached.size());
+                return Mono.just(new ArrayList<>(cached));
+            }
+            return upstream
+                    .map(this::toMessages)
+                    .doOnNext(messages -> {
+                        remember(userId, query, k, messages, start);
+                        recordRead(operation, "mem0", start, messages.size());
+                    })
+                    .onErrorResume(e -> {
+                        logger.error("Failed to {} messages, falling back to local history: {}", operation, e.getMessage());
+                        List<ChatMessage> fallback = cachedMessages(userId, query);
+                        recordRead(operation, "fallback", start, fallback.size());
+                        return Mono.just(fallback);
+                    });
+        });
+    }
+
+    private void remember(String userId, String query, int k, List<ChatMessage> messages, long readStartedAt) {
+        cache.put(userId, appId, query, k, messages, readStartedAt);
+        if (!messages.isEmpty()) {
+            lastKnownHistory.put(userId, List.copyOf(messages));
+        }
+    }
+
+    private void recordRead(String operation, String source, long start, int messages) {
+        readTimer.withTags("operation", operation, "source", source).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        readMessages.withTags("operation", operation).record(messages);
+    }
+
+    private void recordWrite(String mode, long start) {
+        writeTimer.withTags("mode", mode).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private List<Mem0Client.Message> lastMem0Message(List<ChatMessage> messages) {
+        // only add the last user or AI message, earlier ones have already been sent
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            Mem0Client.Message message = toMem0Message(messages.get(i));
+            if (message != null) {
+                return List.of(message);
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * The message as Mem0 takes it, or null for messages other than user and AI ones.
+     */
+    private static Mem0Client.Message toMem0Message(ChatMessage msg) {
+        if (msg.type() == ChatMessageType.USER) {
+            return new Mem0Client.Message("user", ((UserMessage) msg).singleText());
+        }
+        if (msg.type() == ChatMessageType.AI) {
+            return new Mem0Client.Message("assistant", ((AiMessage) msg).text());
+        }
+        return null;
+    }
+
+    private List<ChatMessage> toMessages(List<Mem0Memory> response) {
+        List<ChatMessage> messages = new ArrayList<>();
+        if (response != null) {
+            for (Mem0Memory memory : response) {
+                extractMessagesFromMemory(memory, messages);
             }
         }
+        return messages;
+    }
+    
+    private void extractMessagesFromMemory(Mem0Memory memory, List<ChatMessage> messages) {
+        String memoryContent = memory.memory();
+        if (memoryContent != null && !memoryContent.trim().isEmpty()) {
+            // Since Mem0 API doesn't provide role information in the response,
+            // we treat the memory content as a UserMessage
+            messages.add(UserMessage.from(memoryContent));
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,126 +1,253 @@
 package io.will.langchain4jpoc.memory.mem0;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.will.langchain4jpoc.concurrent.AdaptiveLimiter;
+import io.will.langchain4jpoc.config.AdmissionControlConfig;
+import io.will.langchain4jpoc.config.WebClientConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Component
 @ConditionalOnProperty(name = "chat.memory.provider", havingValue = "mem0")
 public class Mem0Client {
     private static final Logger logger = LoggerFactory.getLogger(Mem0Client.class);
-    private static final String ADD_MEMORIES_URL = "https://api.mem0.ai/v1/memories/";
-    private static final String GET_MEMORIES_URL = "https://api.mem0.ai/v2/memories/";
-    private static final String SEARCH_MEMORIES_URL = "https://api.mem0.ai/v2/memories/search/";
+    private static final String ADD_MEMORIES_PATH = "/v1/memories/";
+    private static final String GET_MEMORIES_PATH = "/v2/memories/";
+    private static final String SEARCH_MEMORIES_PATH = "/v2/memories/search/";
     
     private final String apiKey;
+    private final String baseUrl;
     private final WebClient webClient;
     private final ObjectMapper objectMapper;
+    private final Mem0Resilience resilience;
+    private final AdaptiveLimiter limiter;
+
+    // tagged with the operation (add, get, search), the timer also with the outcome (success, error)
+    private final Meter.MeterProvider<Timer> requestTimer;
+    private final Meter.MeterProvider<DistributionSummary> requestSize;
+    private final Meter.MeterProvider<DistributionSummary> responseSize;
+    // tagged with the operation (get, search)
+    private final Meter.MeterProvider<Counter> deduplicatedReads;
+
+    // reads currently on the wire, keyed by URL and request body, see coalescedRead()
+    private final ConcurrentMap<String, Mono<List<Mem0Memory>>> inFlightReads = new ConcurrentHashMap<>();
     
+    public Mem0Client(String apiKey, String baseUrl, WebClient webClient, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this(apiKey, baseUrl, webClient, objectMapper, meterRegistry, Mem0Resilience.disabled(),
+                AdaptiveLimiter.unlimited("mem0"));
+    }
+
     @Autowired
     public Mem0Client(@Value("${mem0.api.key}") String apiKey,
-                      WebClient webClient,
-                     ObjectMapper objectMapper) {
+                      @Value("${mem0.api.base-url:https://api.mem0.ai}") String baseUrl,
+                      @Qualifier(WebClientConfig.MEM0_WEB_CLIENT) WebClient webClient,
+                      ObjectMapper objectMapper,
+                      MeterRegistry meterRegistry,
+                      Mem0Resilience resilience,
+                      @Qualifier(AdmissionControlConfig.MEM0_LIMITER) AdaptiveLimiter limiter) {
         this.apiKey = apiKey;
+        this.baseUrl = baseUrl;
         this.webClient = webClient;
         this.objectMapper = objectMapper;
+        this.resilience = resilience;
+        this.limiter = limiter;
+        this.requestTimer = Timer.builder("mem0.client.requests")
+                .description("Latency of Mem0 API calls")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        this.requestSize = DistributionSummary.builder("mem0.client.request.size")
+                .baseUnit("bytes")
+                .withRegistry(meterRegistry);
+        // taken from Content-Length, responses are decoded as they stream in and never held as a whole
+        this.responseSize = DistributionSummary.builder("mem0.client.response.size")
+                .baseUnit("bytes")
+                .withRegistry(meterRegistry);
+        this.deduplicatedReads = Counter.builder("mem0.client.deduplicated")
+                .description("Reads that joined an identical read already in flight instead of calling Mem0")
+                .withRegistry(meterRegistry);
     }
     
-    public JsonNode addMemory(String userId, String appId, List<Message> messages) {
+    public void addMemory(String userId, String appId, List<Message> messages) {
         try {
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("messages", messages);
-            requestBody.put("user_id", userId);
-            requestBody.put("app_id", appId);
-            requestBody.put("version", "v2");
-            
-            String response = postRequest(ADD_MEMORIES_URL, requestBody);
-            return objectMapper.readTree(response);
+            addMemoryAsync(userId, appId, messages).block();
         } catch (Exception e) {
             logger.error("Failed to add memory: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to add memory", e);
         }
     }
     
-    public JsonNode getMemories(String userId, String appId) {
+    public List<Mem0Memory> getMemories(String userId, String appId) {
         try {
-            Map<String, Object> filters = new HashMap<>();
-            List<Map<String, String>> andConditions = new ArrayList<>();
-            
-            Map<String, String> userIdCondition = new HashMap<>();
-            userIdCondition.put("user_id", userId);
-            
-            Map<String, String> appIdCondition = new HashMap<>();
-            appIdCondition.put("app_id", appId);
-            
-            andConditions.add(userIdCondition);
-            andConditions.add(appIdCondition);
-            filters.put("AND", andConditions);
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("filters", filters);
-            
-            String response = postRequest(GET_MEMORIES_URL, requestBody);
-            return objectMapper.readTree(response);
+            return getMemoriesAsync(userId, appId).block();
         } catch (Exception e) {
             logger.error("Failed to get memories: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to get memories", e);
         }
     }
     
-    public JsonNode searchMemories(String query, String userId, String appId, int topK) {
+    public List<Mem0Memory> searchMemories(String query, String userId, String appId, int topK) {
         try {
-            Map<String, Object> filters = new HashMap<>();
-            List<Map<String, String>> andConditions = new ArrayList<>();
-            
-            Map<String, String> userIdCondition = new HashMap<>();
-            userIdCondition.put("user_id", userId);
-            
-            Map<String, String> appIdCondition = new HashMap<>();
-            appIdCondition.put("app_id", appId);
-            
-            andConditions.add(userIdCondition);
-            andConditions.add(appIdCondition);
-            filters.put("AND", andConditions);
-            
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("query", query);
-            requestBody.put("filters", filters);
-            requestBody.put("top_k", String.valueOf(topK));
-            
-            String response = postRequest(SEARCH_MEMORIES_URL, requestBody);
-            return objectMapper.readTree(response);
+            return searchMemoriesAsync(query, userId, appId, topK).block();
         } catch (Exception e) {
             logger.error("Failed to search memories: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to search memories", e);
         }
     }
+
+    /**
+     * Non-blocking variant of {@link #addMemory}; nothing is sent until the Mono is subscribed.
+     */
+    public Mono<Void> addMemoryAsync(String userId, String appId, List<Message> messages) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("messages", messages);
+        requestBody.put("user_id", userId);
+        requestBody.put("app_id", appId);
+        requestBody.put("version", "v2");
+
+        // the response only echoes the extracted facts, it is discarded unread; only reads are shed under load,
+        // a rejected write would lose the memory
+        return limiter.runWithoutShedding(userId, resilience.write("add", () -> postRequest("add", baseUrl + ADD_MEMORIES_PATH, toJson(requestBody), Void.class).then()))
+                .doOnError(e -> logger.error("Failed to add memory: {}", e.getMessage()));
+    }
+
+    /**
+     * Non-blocking variant of {@link #getMemories}.
+     */
+    public Mono<List<Mem0Memory>> getMemoriesAsync(String userId, String appId) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("filters", userFilters(userId, appId));
+
+        return coalescedRead("get", userId, baseUrl + GET_MEMORIES_PATH, requestBody)
+                .doOnError(e -> logger.error("Failed to get memories: {}", e.getMessage()));
+    }
+
+    /**
+     * Non-blocking variant of {@link #searchMemories}.
+     */
+    public Mono<List<Mem0Memory>> searchMemoriesAsync(String query, String userId, String appId, int topK) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("query", query);
+        requestBody.put("filters", userFilters(userId, appId));
+        requestBody.put("top_k", String.valueOf(topK));
+
+        return coalescedRead("search", userId, baseUrl + SEARCH_MEMORIES_PATH, requestBody)
+                .doOnError(e -> logger.error("Failed to search memories: {}", e.getMessage()));
+    }
+
+    /**
+     * Identical reads issued while one is still in flight (retries, several tabs, parallel agents of one user)
+     * share that call and its result instead of each going to Mem0. Once the call has completed the next read
+     * goes to Mem0 again, so nothing is served that is older than the read it joined.
+     * Only the call that goes to Mem0 takes a place under the Mem0 limit, queued with the other calls of the user.
+     */
+    private Mono<List<Mem0Memory>> coalescedRead(String operation, String userId, String url, Object requestBody) {
+        return Mono.defer(() -> {
+            byte[] body = toJson(requestBody);
+            String key = url + ' ' + new String(body, StandardCharsets.UTF_8);
+            AtomicReference<Mono<List<Mem0Memory>>> created = new AtomicReference<>();
+            Mono<List<Mem0Memory>> call = inFlightReads.computeIfAbsent(key, k -> {
+                // hedged attempts are made below the coalescing, so that they don't just join the call they hedge
+                Mono<List<Mem0Memory>> shared = limiter.run(userId, resilience.read(operation, () -> postRequest(operation, url, body, Mem0Memory.class).collectList()))
+                        // only this call's own entry, a later call for the same key may already have replaced it
+                        .doFinally(signalType -> inFlightReads.remove(k, created.get()))
+                        // one upstream subscription for all callers, a caller cancelling doesn't cancel it for the others
+                        .share();
+                created.set(shared);
+                return shared;
+            });
+            if (created.get() == null) {
+                deduplicatedReads.withTags("operation", operation).increment();
+            }
+            return call;
+        });
+    }
+
+    private byte[] toJson(Object requestBody) {
+        try {
+            // serialized here rather than by the codec so that the payload size can be recorded
+            return objectMapper.writeValueAsBytes(requestBody);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, Object> userFilters(String userId, String appId) {
+        Map<String, Object> filters = new HashMap<>();
+        List<Map<String, String>> andConditions = new ArrayList<>();
+
+        Map<String, String> userIdCondition = new HashMap<>();
+        userIdCondition.put("user_id", userId);
+
+        Map<String, String> appIdCondition = new HashMap<>();
+        appIdCondition.put("app_id", appId);
+
+        andConditions.add(userIdCondition);
+        andConditions.add(appIdCondition);
+        filters.put("AND", andConditions);
+        return filters;
+    }
     
-    private String postRequest(String url, Object requestBody) {
+    /**
+     * Posts the request and decodes the response body as a JSON array of {@code elementType}, element by element
+     * straight from the network buffers.
+     */
+    private <T> Flux<T> postRequest(String operation, String url, byte[] body, Class<T> elementType) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         headers.set("Authorization", "Token " + apiKey);
         
-        return webClient.post()
-                .uri(url)
-                .headers(httpHeaders -> httpHeaders.addAll(headers))
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToMono(String.class)
-                .block();
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            requestSize.withTags("operation", operation).record(body.length);
+
+            return webClient.post()
+                    .uri(url)
+                    .headers(httpHeaders -> httpHeaders.addAll(headers))
+                    .bodyValue(body)
+                    .exchangeToFlux(response -> {
+                        if (response.statusCode().isError()) {
+                            return response.<T>createError().flux();
+                        }
+                        response.headers().contentLength()
+                                .ifPresent(length -> responseSize.withTags("operation", operation).record(length));
+                        return response.bodyToFlux(elementType);
+                    })
+                    .doOnComplete(() -> recordRequest(operation, "success", start))
+                    .doOnError(e -> recordRequest(operation, "error", start));
+        });
+    }
+
+    private void recordRequest(String operation, String outcome, long start) {
+        requestTimer.withTags("operation", operation, "outcome", outcome)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
     
     public record Message(String role, String content) {}
-}
\ No newline at end of file
+}
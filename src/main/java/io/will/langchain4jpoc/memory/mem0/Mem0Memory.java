@@ -0,0 +1,15 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A memory as returned by the Mem0 get and search endpoints, reduced to the fields this application uses.
+ * Everything else in the response (metadata, categories, ...) is skipped while parsing.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record Mem0Memory(String id,
+                         String memory,
+                         Double score,
+                         @JsonProperty("updated_at") String updatedAt) {
+}
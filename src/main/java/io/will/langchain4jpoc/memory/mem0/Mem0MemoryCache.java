@@ -0,0 +1,141 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import dev.langchain4j.data.message.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Read-through cache of Mem0 retrieval results, keyed by user, app, normalized query and top-k.
+ * Entries of a user are invalidated whenever a new memory is written for that user.
+ * <p>
+ * Entries are indexed by user, so an invalidation only touches that user's entries. A read that was already
+ * on its way to Mem0 when the user was invalidated may have missed the write, its result is not cached.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.memory.provider", havingValue = "mem0")
+public class Mem0MemoryCache {
+    private static final Logger logger = LoggerFactory.getLogger(Mem0MemoryCache.class);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Cache<Key, List<ChatMessage>> cache;
+    private final ConcurrentMap<String, Set<Key>> keysByUser = new ConcurrentHashMap<>();
+    // when each user was last invalidated, kept as long as an entry lives, older reads are not cached at all
+    private final Cache<String, Long> invalidations;
+    private final long retentionNanos;
+
+    public Mem0MemoryCache(@Value("${mem0.cache.enabled:true}") boolean enabled,
+                           @Value("${mem0.cache.max-size:10000}") long maxSize,
+                           @Value("${mem0.cache.ttl:60s}") Duration ttl) {
+        this.cache = enabled
+                ? Caffeine.newBuilder()
+                        .maximumSize(maxSize)
+                        .expireAfterWrite(ttl)
+                        .recordStats()
+                        .removalListener((Key key, List<ChatMessage> messages, RemovalCause cause) -> {
+                            // a replaced entry is still there under the same key
+                            if (key != null && cause != RemovalCause.REPLACED) {
+                                unindex(key);
+                            }
+                        })
+                        .build()
+                : null;
+        this.invalidations = enabled ? Caffeine.newBuilder().expireAfterWrite(ttl).build() : null;
+        this.retentionNanos = ttl.toNanos();
+        logger.info("Mem0 memory cache enabled: {}, max size: {}, ttl: {}", enabled, maxSize, ttl);
+    }
+
+    public static Mem0MemoryCache disabled() {
+        return new Mem0MemoryCache(false, 0, Duration.ZERO);
+    }
+
+    public List<ChatMessage> get(String userId, String appId, String query, int topK) {
+        return cache != null ? cache.getIfPresent(new Key(userId, appId, normalize(query), topK)) : null;
+    }
+
+    /**
+     * Caches the result of a read, unless the user has been invalidated since the read started.
+     *
+     * @param readStartedAt {@link System#nanoTime()} before the read was sent to Mem0
+     */
+    public void put(String userId, String appId, String query, int topK, List<ChatMessage> messages, long readStartedAt) {
+        if (cache == null) {
+            return;
+        }
+        Key key = new Key(userId, appId, normalize(query), topK);
+        List<ChatMessage> value = List.copyOf(messages);
+        // indexed and cached together, so that an invalidation of the user sees either both or neither
+        keysByUser.compute(userId, (user, keys) -> {
+            if (isStale(user, readStartedAt)) {
+                logger.debug("Not caching memories of user {} read before the last write", user);
+                return keys;
+            }
+            Set<Key> userKeys = keys != null ? keys : ConcurrentHashMap.newKeySet();
+            userKeys.add(key);
+            cache.put(key, value);
+            return userKeys;
+        });
+    }
+
+    public void invalidateUser(String userId) {
+        if (cache != null) {
+            keysByUser.compute(userId, (user, keys) -> {
+                invalidations.put(user, System.nanoTime());
+                if (keys != null) {
+                    cache.invalidateAll(keys);
+                }
+                return null;
+            });
+            logger.debug("Invalidated cached memories for user: {}", userId);
+        }
+    }
+
+    private boolean isStale(String userId, long readStartedAt) {
+        // the invalidations of reads this old may already be forgotten
+        if (System.nanoTime() - readStartedAt >= retentionNanos) {
+            return true;
+        }
+        Long invalidatedAt = invalidations.getIfPresent(userId);
+        return invalidatedAt != null && invalidatedAt - readStartedAt >= 0;
+    }
+
+    private void unindex(Key key) {
+        keysByUser.computeIfPresent(key.userId(), (user, keys) -> {
+            // the key may have been cached again since it was removed
+            if (!cache.asMap().containsKey(key)) {
+                keys.remove(key);
+            }
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    public CacheStats stats() {
+        return cache != null ? cache.stats() : CacheStats.empty();
+    }
+
+    static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(query.strip().toLowerCase(Locale.ROOT)).replaceAll(" ");
+    }
+
+    /**
+     * An empty query stands for "all memories" (getMessages) and uses top-k 0.
+     */
+    private record Key(String userId, String appId, String query, int topK) {}
+}
@@ -0,0 +1,415 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Keeps Mem0 calls from holding up chat turns when Mem0 is slow or down.
+ * <ul>
+ *     <li>Every call times out after a multiple of the recent p99 latency of its operation,
+ *     within {@code mem0.resilience.timeout.min} and {@code max}. Timed-out calls count with the timeout as
+ *     their latency, so the timeout widens again when Mem0 gets slower.</li>
+ *     <li>A read still running after the recent p95 is sent a second time and the first answer wins.</li>
+ *     <li>A 429 is retried after its {@code Retry-After} if that is short enough. Until then reads fail fast
+ *     and writes wait.</li>
+ *     <li>A circuit breaker opens once too many recent calls failed, calls then fail fast with
+ *     {@link Mem0UnavailableException} until a single probe call succeeds.</li>
+ * </ul>
+ * Failed reads are answered from local history by {@link Mem0ChatMemoryStore}.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.memory.provider", havingValue = "mem0")
+public class Mem0Resilience {
+    private static final Logger logger = LoggerFactory.getLogger(Mem0Resilience.class);
+
+    public enum CircuitState { CLOSED, HALF_OPEN, OPEN }
+
+    private final boolean enabled;
+    private final Duration minTimeout;
+    private final Duration maxTimeout;
+    private final double timeoutMultiplier;
+    private final boolean hedgingEnabled;
+    private final Duration minHedgeDelay;
+    private final int maxThrottleRetries;
+    private final Duration maxRetryAfter;
+    private final CircuitBreaker circuitBreaker;
+
+    private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    // nanoTime until which Mem0 asked not to be called
+    private final AtomicLong throttledUntil = new AtomicLong(System.nanoTime());
+
+    // tagged with the operation
+    private final Meter.MeterProvider<Counter> hedges;
+    private final Meter.MeterProvider<Counter> throttled;
+    // tagged with the operation and the reason (open, throttled)
+    private final Meter.MeterProvider<Counter> shortCircuited;
+
+    @Autowired
+    public Mem0Resilience(@Value("${mem0.resilience.enabled:true}") boolean enabled,
+                          @Value("${mem0.resilience.timeout.min:300ms}") Duration minTimeout,
+                          @Value("${mem0.resilience.timeout.max:5s}") Duration maxTimeout,
+                          @Value("${mem0.resilience.timeout.p99-multiplier:2.0}") double timeoutMultiplier,
+                          @Value("${mem0.resilience.hedging.enabled:true}") boolean hedgingEnabled,
+                          @Value("${mem0.resilience.hedging.min-delay:50ms}") Duration minHedgeDelay,
+                          @Value("${mem0.resilience.throttling.max-retries:2}") int maxThrottleRetries,
+                          @Value("${mem0.resilience.throttling.max-retry-after:2s}") Duration maxRetryAfter,
+                          @Value("${mem0.resilience.circuit-breaker.window-size:50}") int windowSize,
+                          @Value("${mem0.resilience.circuit-breaker.minimum-calls:20}") int minimumCalls,
+                          @Value("${mem0.resilience.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+                          @Value("${mem0.resilience.circuit-breaker.open-duration:30s}") Duration openDuration,
+                          MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+        this.timeoutMultiplier = timeoutMultiplier;
+        this.hedgingEnabled = hedgingEnabled;
+        this.minHedgeDelay = minHedgeDelay;
+        this.maxThrottleRetries = maxThrottleRetries;
+        this.maxRetryAfter = maxRetryAfter;
+        this.circuitBreaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold, openDuration);
+        this.hedges = Counter.builder("mem0.resilience.hedges")
+                .description("Reads sent a second time because the first one was slower than the p95")
+                .withRegistry(meterRegistry);
+        this.throttled = Counter.builder("mem0.resilience.throttled")
+                .description("Calls rejected by Mem0 with 429 Too Many Requests")
+                .withRegistry(meterRegistry);
+        this.shortCircuited = Counter.builder("mem0.resilience.short-circuited")
+                .description("Calls failed fast without going to Mem0")
+                .withRegistry(meterRegistry);
+        meterRegistry.gauge("mem0.resilience.circuit.state", circuitBreaker, breaker -> breaker.state().ordinal());
+
+        if (enabled) {
+            logger.info("Mem0 resilience enabled, timeout: {}-{} ({}x p99), hedging: {}, circuit breaker: {} of the last {} calls, open for {}",
+                    minTimeout, maxTimeout, timeoutMultiplier, hedgingEnabled, failureRateThreshold, windowSize, openDuration);
+        }
+    }
+
+    public static Mem0Resilience disabled() {
+        return new Mem0Resilience(false, Duration.ZERO, Duration.ZERO, 0, false, Duration.ZERO, 0, Duration.ZERO,
+                1, 1, 1, Duration.ZERO, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Guards an idempotent call, which may be hedged.
+     */
+    public <T> Mono<T> read(String operation, Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.defer(() -> {
+            if (isThrottled()) {
+                shortCircuited.withTags("operation", operation, "reason", "throttled").increment();
+                return Mono.error(new Mem0UnavailableException("Mem0 asked to back off"));
+            }
+            return guarded(operation, () -> {
+                Mono<T> primary = attempt(operation, call);
+                Duration hedgeDelay = hedgeDelay(operation);
+                if (!hedgingEnabled || hedgeDelay == null) {
+                    return primary;
+                }
+                Mono<T> hedge = Mono.delay(hedgeDelay)
+                        .doOnNext(tick -> hedges.withTags("operation", operation).increment())
+                        .then(attempt(operation, call));
+                // the slower of the two is cancelled as soon as the other one has answered
+                return Mono.firstWithValue(primary, hedge)
+                        .onErrorMap(NoSuchElementException.class, Mem0Resilience::firstCause);
+            });
+        });
+    }
+
+    /**
+     * Guards a call that must not be duplicated. While Mem0 asks to back off it is delayed instead of failed.
+     */
+    public <T> Mono<T> write(String operation, Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.defer(() -> {
+            long wait = throttledUntil.get() - System.nanoTime();
+            Mono<T> guarded = Mono.defer(() -> guarded(operation, () -> attempt(operation, call)));
+            return wait > 0 ? Mono.delay(Duration.ofNanos(wait)).then(guarded) : guarded;
+        });
+    }
+
+    public CircuitState circuitState() {
+        return circuitBreaker.state();
+    }
+
+    /**
+     * Timeout of the next call of the operation, the maximum until enough calls have been seen.
+     */
+    public Duration timeout(String operation) {
+        long p99 = latency(operation).p99();
+        if (p99 < 0) {
+            return maxTimeout;
+        }
+        long nanos = (long) (p99 * timeoutMultiplier);
+        return Duration.ofNanos(Math.clamp(nanos, minTimeout.toNanos(), maxTimeout.toNanos()));
+    }
+
+    private Duration hedgeDelay(String operation) {
+        long p95 = latency(operation).p95();
+        return p95 < 0 ? null : Duration.ofNanos(Math.max(p95, minHedgeDelay.toNanos()));
+    }
+
+    private <T> Mono<T> guarded(String operation, Supplier<Mono<T>> call) {
+        if (!circuitBreaker.tryAcquire()) {
+            shortCircuited.withTags("operation", operation, "reason", "open").increment();
+            return Mono.error(new Mem0UnavailableException("Mem0 circuit breaker is open"));
+        }
+        return call.get()
+                .doOnSuccess(value -> circuitBreaker.onSuccess())
+                .doOnError(e -> {
+                    if (countsAsFailure(e)) {
+                        circuitBreaker.onFailure();
+                    } else {
+                        circuitBreaker.onSuccess();
+                    }
+                })
+                .doFinally(signalType -> {
+                    if (signalType == SignalType.CANCEL) {
+                        circuitBreaker.onCancel();
+                    }
+                });
+    }
+
+    private <T> Mono<T> attempt(String operation, Supplier<Mono<T>> call) {
+        Duration timeout = timeout(operation);
+        return Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return Mono.defer(call)
+                            .timeout(timeout)
+                            .doOnSuccess(value -> latency(operation).record(System.nanoTime() - start))
+                            // took at least the timeout; with only the calls that made it in time the window
+                            // would never see Mem0 getting slower and the timeout would never widen again
+                            .doOnError(TimeoutException.class, e -> latency(operation).record(timeout.toNanos()));
+                })
+                .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                    if (signal.failure() instanceof WebClientResponseException.TooManyRequests tooManyRequests) {
+                        throttled.withTags("operation", operation).increment();
+                        Duration retryAfter = retryAfter(tooManyRequests.getHeaders());
+                        throttledUntil.accumulateAndGet(System.nanoTime() + retryAfter.toNanos(), Math::max);
+                        if (signal.totalRetriesInARow() < maxThrottleRetries && retryAfter.compareTo(maxRetryAfter) <= 0) {
+                            logger.warn("Mem0 throttled the {} call, retrying in {}", operation, retryAfter);
+                            return Mono.delay(retryAfter);
+                        }
+                    }
+                    return Mono.error(signal.failure());
+                })));
+    }
+
+    private boolean isThrottled() {
+        return throttledUntil.get() - System.nanoTime() > 0;
+    }
+
+    private LatencyWindow latency(String operation) {
+        return latencies.computeIfAbsent(operation, op -> new LatencyWindow(256, 20));
+    }
+
+    /**
+     * Mem0 being slow, unreachable or failing counts against the breaker, being called wrongly or throttling doesn't.
+     */
+    private static boolean countsAsFailure(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError();
+        }
+        return true;
+    }
+
+    private static Throwable firstCause(NoSuchElementException e) {
+        // firstWithValue() reports the errors of all sources as suppressed exceptions
+        Throwable[] causes = e.getSuppressed();
+        if (causes.length == 1 && causes[0].getSuppressed().length > 0) {
+            causes = causes[0].getSuppressed();
+        }
+        return Arrays.stream(causes)
+                .filter(cause -> !(cause instanceof TimeoutException))
+                .findFirst()
+                .orElse(causes.length > 0 ? causes[0] : e);
+    }
+
+    static Duration retryAfter(HttpHeaders headers) {
+        String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return Duration.ofSeconds(1);
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                Duration wait = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return wait.isNegative() ? Duration.ZERO : wait;
+            } catch (DateTimeParseException ignored) {
+                return Duration.ofSeconds(1);
+            }
+        }
+    }
+
+    /**
+     * Latencies of the last calls that succeeded or timed out, the percentiles are refreshed every few samples.
+     */
+    static final class LatencyWindow {
+        private final long[] samples;
+        private final int minSamples;
+        private int count;
+        private int next;
+        private volatile long p95 = -1;
+        private volatile long p99 = -1;
+
+        LatencyWindow(int size, int minSamples) {
+            this.samples = new long[size];
+            this.minSamples = minSamples;
+        }
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            if (count >= minSamples && (count < samples.length || next % 8 == 0)) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                p95 = sorted[(int) Math.ceil(0.95 * count) - 1];
+                p99 = sorted[(int) Math.ceil(0.99 * count) - 1];
+            }
+        }
+
+        long p95() {
+            return p95;
+        }
+
+        long p99() {
+            return p99;
+        }
+    }
+
+    /**
+     * Count-based breaker: opens when the failure rate of the last calls reaches the threshold,
+     * lets a single probe through once the open duration has passed, and closes when that probe succeeds.
+     */
+    static final class CircuitBreaker {
+        private final boolean[] outcomes;
+        private final int minimumCalls;
+        private final double failureRateThreshold;
+        private final long openNanos;
+
+        private CircuitState state = CircuitState.CLOSED;
+        private int count;
+        private int next;
+        private int failures;
+        private long openedAt;
+        private boolean probing;
+
+        CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, Duration openDuration) {
+            this.outcomes = new boolean[windowSize];
+            this.minimumCalls = minimumCalls;
+            this.failureRateThreshold = failureRateThreshold;
+            this.openNanos = openDuration.toNanos();
+        }
+
+        synchronized CircuitState state() {
+            return state;
+        }
+
+        synchronized boolean tryAcquire() {
+            switch (state) {
+                case CLOSED -> {
+                    return true;
+                }
+                case OPEN -> {
+                    if (System.nanoTime() - openedAt < openNanos) {
+                        return false;
+                    }
+                    state = CircuitState.HALF_OPEN;
+                    probing = true;
+                    return true;
+                }
+                default -> {
+                    if (probing) {
+                        return false;
+                    }
+                    probing = true;
+                    return true;
+                }
+            }
+        }
+
+        synchronized void onSuccess() {
+            if (state == CircuitState.HALF_OPEN) {
+                logger.info("Mem0 circuit breaker closed");
+                state = CircuitState.CLOSED;
+                probing = false;
+                reset();
+                return;
+            }
+            record(false);
+        }
+
+        synchronized void onFailure() {
+            if (state == CircuitState.HALF_OPEN) {
+                open();
+                return;
+            }
+            record(true);
+            if (state == CircuitState.CLOSED && count >= minimumCalls && (double) failures / count >= failureRateThreshold) {
+                open();
+            }
+        }
+
+        synchronized void onCancel() {
+            // an abandoned probe must not keep the breaker half-open forever
+            probing = false;
+        }
+
+        private void open() {
+            logger.warn("Mem0 circuit breaker opened");
+            state = CircuitState.OPEN;
+            openedAt = System.nanoTime();
+            probing = false;
+            reset();
+        }
+
+        private void record(boolean failure) {
+            if (count == outcomes.length && outcomes[next]) {
+                failures--;
+            }
+            outcomes[next] = failure;
+            if (failure) {
+                failures++;
+            }
+            next = (next + 1) % outcomes.length;
+            count = Math.min(count + 1, outcomes.length);
+        }
+
+        private void reset() {
+            Arrays.fill(outcomes, false);
+            count = 0;
+            next = 0;
+            failures = 0;
+        }
+    }
+}
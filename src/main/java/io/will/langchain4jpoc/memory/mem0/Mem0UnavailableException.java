@@ -0,0 +1,15 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import java.io.Serial;
+
+/**
+ * Raised instead of calling Mem0 while the circuit breaker is open or Mem0 has asked to back off.
+ */
+public class Mem0UnavailableException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public Mem0UnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,274 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer for Mem0 writes.
+ * <p>
+ * Messages are queued per user and a background flusher coalesces them into multi-message
+ * {@code addMemory} calls, so memory writes no longer add a Mem0 round trip to the chat turn.
+ * The batches of a user are chained one after another, which keeps the order of a user's messages intact.
+ * A failed batch is retried with backoff, messages that still can't be written are counted as dropped.
+ * Whatever is still queued is flushed on shutdown.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.memory.provider", havingValue = "mem0")
+public class Mem0WriteBehindQueue {
+    private static final Logger logger = LoggerFactory.getLogger(Mem0WriteBehindQueue.class);
+
+    public enum OverflowPolicy {
+        /** Discard the oldest queued message of the user to make room. */
+        DROP_OLDEST,
+        /** Discard the incoming message. */
+        DROP_NEWEST,
+        /** Send the queued messages plus the incoming one right away, the caller waits for that batch. */
+        CALLER_RUNS
+    }
+
+    private final Mem0Client mem0Client;
+    private final Mem0MemoryCache cache;
+    private final String appId;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final int maxRetries;
+    private final Duration retryBackoff;
+    private final Duration shutdownTimeout;
+
+    private final ConcurrentMap<String, UserQueue> queues = new ConcurrentHashMap<>();
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final ScheduledExecutorService flusher;
+
+    public Mem0WriteBehindQueue(Mem0Client mem0Client,
+                                Mem0MemoryCache cache,
+                                @Value("${mem0.app.id:langchain4j-springboot-poc}") String appId,
+                                @Value("${mem0.write-behind.enabled:false}") boolean enabled,
+                                @Value("${mem0.write-behind.flush-interval:200ms}") Duration flushInterval,
+                                @Value("${mem0.write-behind.batch-size:20}") int batchSize,
+                                @Value("${mem0.write-behind.queue-capacity:1000}") int queueCapacity,
+                                @Value("${mem0.write-behind.overflow-policy:drop-oldest}") OverflowPolicy overflowPolicy,
+                                @Value("${mem0.write-behind.max-retries:3}") int maxRetries,
+                                @Value("${mem0.write-behind.retry-backoff:500ms}") Duration retryBackoff,
+                                @Value("${mem0.write-behind.shutdown-timeout:10s}") Duration shutdownTimeout,
+                                MeterRegistry meterRegistry) {
+        this.mem0Client = mem0Client;
+        this.cache = cache;
+        this.appId = appId;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        this.shutdownTimeout = shutdownTimeout;
+
+        if (enabled) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "mem0-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = flushInterval.toMillis();
+            flusher.scheduleWithFixedDelay(this::flushAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+            FunctionCounter.builder("mem0.write-behind.dropped", droppedCount, AtomicLong::get)
+                    .description("Messages dropped by the write-behind queue, on overflow or after failed retries")
+                    .register(meterRegistry);
+            Gauge.builder("mem0.write-behind.pending", this, Mem0WriteBehindQueue::pendingCount)
+                    .description("Messages waiting in the write-behind queue")
+                    .register(meterRegistry);
+            logger.info("Mem0 write-behind enabled, flush interval: {}, batch size: {}, queue capacity: {}, overflow policy: {}",
+                    flushInterval, batchSize, queueCapacity, overflowPolicy);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    public static Mem0WriteBehindQueue disabled() {
+        return new Mem0WriteBehindQueue(null, Mem0MemoryCache.disabled(), null, false,
+                Duration.ZERO, 0, 0, OverflowPolicy.DROP_NEWEST, 0, Duration.ZERO, Duration.ZERO, new SimpleMeterRegistry());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a message of the user. The returned Mono completes right away, except with {@link OverflowPolicy#CALLER_RUNS}
+     * on a full queue, where it completes once the batch of the caller has been handed to Mem0. Nothing blocks.
+     */
+    public Mono<Void> enqueue(String userId, Mem0Client.Message message) {
+        Batch[] callerBatch = new Batch[1];
+        // offer and handle a full queue inside compute() so that the queue can't be dropped in between
+        queues.compute(userId, (id, existing) -> {
+            UserQueue queue = existing != null ? existing : new UserQueue(queueCapacity);
+            if (queue.messages.offer(message)) {
+                return queue;
+            }
+            switch (overflowPolicy) {
+                case DROP_OLDEST -> {
+                    queue.messages.poll();
+                    droppedCount.incrementAndGet();
+                    queue.messages.offer(message);
+                    logger.warn("Write-behind queue of user {} is full, dropped the oldest message", userId);
+                }
+                case DROP_NEWEST -> {
+                    droppedCount.incrementAndGet();
+                    logger.warn("Write-behind queue of user {} is full, dropped the incoming message", userId);
+                }
+                case CALLER_RUNS -> {
+                    synchronized (queue) {
+                        List<Mem0Client.Message> batch = new ArrayList<>();
+                        queue.messages.drainTo(batch);
+                        batch.add(message);
+                        logger.warn("Write-behind queue of user {} is full, sending {} messages for the caller", userId, batch.size());
+                        callerBatch[0] = queue.chain(batch);
+                    }
+                }
+            }
+            return queue;
+        });
+
+        if (callerBatch[0] == null) {
+            return Mono.empty();
+        }
+        // sent outside of compute(), the caller waits for its batch without holding a thread
+        send(userId, callerBatch[0]);
+        return Mono.fromFuture(callerBatch[0].done(), true);
+    }
+
+    public long droppedCount() {
+        return droppedCount.get();
+    }
+
+    public int pendingCount() {
+        return queues.values().stream().mapToInt(q -> q.messages.size()).sum();
+    }
+
+    void flushAll() {
+        queues.forEach(this::flush);
+    }
+
+    private void flush(String userId, UserQueue userQueue) {
+        Batch batch;
+        synchronized (userQueue) {
+            // one batch per user at a time, the next flush picks up what has been queued meanwhile
+            if (userQueue.messages.isEmpty() || !userQueue.lastBatch.isDone()) {
+                return;
+            }
+            List<Mem0Client.Message> messages = new ArrayList<>(batchSize);
+            userQueue.messages.drainTo(messages, batchSize);
+            if (messages.isEmpty()) {
+                return;
+            }
+            batch = userQueue.chain(messages);
+        }
+        send(userId, batch);
+    }
+
+    /**
+     * Sends the batch once the one before it is done. A failed batch is retried, what still fails is dropped and counted.
+     */
+    private void send(String userId, Batch batch) {
+        List<Mem0Client.Message> messages = batch.messages();
+        inFlight.add(batch.done());
+        Mono.fromFuture(batch.previous(), true)
+                .then(Mono.defer(() -> mem0Client.addMemoryAsync(userId, appId, messages)))
+                .retryWhen(Retry.backoff(maxRetries, retryBackoff)
+                        .doBeforeRetry(retry -> logger.warn("Retrying to flush {} messages for user {}: {}",
+                                messages.size(), userId, retry.failure().getMessage()))
+                        .onRetryExhaustedThrow((spec, retry) -> retry.failure()))
+                .doOnSuccess(response -> {
+                    cache.invalidateUser(userId);
+                    logger.debug("Flushed {} messages to mem0 for user: {}", messages.size(), userId);
+                })
+                .onErrorResume(e -> {
+                    droppedCount.addAndGet(messages.size());
+                    logger.error("Dropped {} messages of user {} after {} retries: {}", messages.size(), userId, maxRetries, e.getMessage());
+                    return Mono.empty();
+                })
+                .doFinally(signalType -> {
+                    batch.done().complete(null);
+                    inFlight.remove(batch.done());
+                    removeIfIdle(userId);
+                })
+                .subscribe();
+    }
+
+    private void removeIfIdle(String userId) {
+        // a new queue is created on the next write, only once its batches are done so that they can't be overtaken
+        queues.computeIfPresent(userId, (id, queue) -> queue.messages.isEmpty() && queue.lastBatch.isDone() ? null : queue);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdownNow();
+
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        try {
+            while (pendingCount() > 0 || !inFlight.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    int pending = pendingCount();
+                    droppedCount.addAndGet(pending);
+                    logger.warn("Gave up draining write-behind queue, {} messages not written", pending);
+                    return;
+                }
+                flushAll();
+                CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new))
+                        .get(remaining, TimeUnit.NANOSECONDS);
+            }
+            logger.info("Write-behind queue drained");
+        } catch (Exception e) {
+            logger.warn("Failed to drain write-behind queue: {}", e.getMessage());
+        }
+    }
+
+    private static final class UserQueue {
+        private final BlockingQueue<Mem0Client.Message> messages;
+        // the last batch handed over for the user, the next one is only sent after it; written under the lock of the
+        // queue, together with draining the messages of the batch
+        private volatile CompletableFuture<Void> lastBatch = CompletableFuture.completedFuture(null);
+
+        private UserQueue(int capacity) {
+            this.messages = new ArrayBlockingQueue<>(capacity);
+        }
+
+        private synchronized Batch chain(List<Mem0Client.Message> messages) {
+            Batch batch = new Batch(messages, lastBatch, new CompletableFuture<>());
+            lastBatch = batch.done();
+            return batch;
+        }
+    }
+
+    private record Batch(List<Mem0Client.Message> messages, CompletableFuture<Void> previous, CompletableFuture<Void> done) {}
+}
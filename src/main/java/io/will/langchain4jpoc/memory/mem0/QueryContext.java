@@ -1,54 +1,93 @@
 package io.will.langchain4jpoc.memory.mem0;
 
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.context.ContextSnapshotFactory;
+import io.micrometer.context.ThreadLocalAccessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.util.context.Context;
 import reactor.util.context.ContextView;
 
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utility class to manage query context across reactive and non-reactive execution paths.
  * 
  * This class provides a mechanism to store and retrieve queries that need to be passed
  * to memory search operations. It supports:
- * 1. ThreadLocal storage (primary mechanism for cross-thread access)
- * 2. Reactor Context integration for reactive chains
+ * 1. Reactor Context (the source of truth in reactive chains)
+ * 2. ThreadLocal storage, bound from the Reactor Context only around the blocking call that needs it
  * 
  * The query is typically set at the controller level and retrieved when LangChain4j
  * calls the memory's messages() method, which may execute on a different thread.
  * 
  * Usage:
- * - In reactive chains: Use propagateContext() operator to copy Reactor Context to ThreadLocal
+ * - In reactive chains: Wrap the blocking call in openScope(), the queries are bound to the
+ *   current thread by reference and the previous state of the thread is restored on close
  * - In non-reactive code: Use setQuery() and getQuery() directly
  */
 public class QueryContext {
     private static final Logger logger = LoggerFactory.getLogger(QueryContext.class);
     
     public static final String QUERY_CONTEXT_KEY = "query";
-    
-    private static final ThreadLocal<Map<Object, String>> threadLocalQueries = ThreadLocal.withInitial(ConcurrentHashMap::new);
+    public static final String TURN_CONTEXT_KEY = "turn";
+
+    // holds the immutable map of the Reactor Context itself, nothing is copied when it is bound
+    private static final ThreadLocal<Map<Object, String>> threadLocalQueries = new ThreadLocal<>();
+    // token of the turn each query belongs to, so that two turns asking the same question can be told apart
+    private static final ThreadLocal<Map<Object, Object>> threadLocalTurns = new ThreadLocal<>();
+
+    private static final ContextSnapshotFactory snapshotFactory = ContextSnapshotFactory.builder().build();
     
     public static void setQuery(Object memoryId, String query) {
-        threadLocalQueries.get().put(memoryId, query);
+        Map<Object, String> queries = new HashMap<>(currentQueries());
+        queries.put(memoryId, query);
+        threadLocalQueries.set(Map.copyOf(queries));
         logger.debug("Set query for memory ID {} in ThreadLocal: {}", memoryId, query);
     }
     
     public static String getQuery(Object memoryId) {
-        Map<Object, String> threadQueries = threadLocalQueries.get();
-        String query = threadQueries.get(memoryId);
+        String query = currentQueries().get(memoryId);
         logger.debug("Retrieved query from ThreadLocal for memory ID {}: {}", memoryId, query);
         return query;
     }
     
     public static void clearQuery(Object memoryId) {
-        threadLocalQueries.get().remove(memoryId);
+        Map<Object, String> queries = new HashMap<>(currentQueries());
+        queries.remove(memoryId);
+        if (queries.isEmpty()) {
+            // don't leave an empty map behind on pooled threads
+            threadLocalQueries.remove();
+        } else {
+            threadLocalQueries.set(Map.copyOf(queries));
+        }
         logger.debug("Cleared query for memory ID: {}", memoryId);
     }
 
     /**
-     * Creates a Reactor Context with the query stored for the given memory ID.
+     * Token of the turn whose query is bound to the current thread for the given memory ID, or null.
+     */
+    public static Object getTurn(Object memoryId) {
+        Map<Object, Object> turns = threadLocalTurns.get();
+        return turns != null ? turns.get(memoryId) : null;
+    }
+
+    /**
+     * Whether any query is bound to the current thread.
+     */
+    public static boolean isBound() {
+        return threadLocalQueries.get() != null || threadLocalTurns.get() != null;
+    }
+
+    private static Map<Object, String> currentQueries() {
+        Map<Object, String> queries = threadLocalQueries.get();
+        return queries != null ? queries : Map.of();
+    }
+
+    /**
+     * Creates a Reactor Context with the query stored for the given memory ID, along with a new token
+     * that identifies the turn the query belongs to.
      * This should be used with contextWrite() in reactive chains.
      * 
      * @param memoryId The memory ID
@@ -56,9 +95,15 @@ public class QueryContext {
      * @return A Context object that can be used with contextWrite()
      */
     public static Context createContext(Object memoryId, String query) {
-        Map<Object, String> queries = new ConcurrentHashMap<>();
-        queries.put(memoryId, query);
-        return Context.of(QUERY_CONTEXT_KEY, queries);
+        return createContext(memoryId, query, new Object());
+    }
+
+    /**
+     * Creates a Reactor Context with the query stored for the given memory ID, for a turn whose token is
+     * already known, such as one of a group of turns.
+     */
+    public static Context createContext(Object memoryId, String query, Object turn) {
+        return Context.of(QUERY_CONTEXT_KEY, Map.of(memoryId, query), TURN_CONTEXT_KEY, Map.of(memoryId, turn));
     }
     
     /**
@@ -70,90 +115,88 @@ public class QueryContext {
      */
     public static String getQueryFromContext(ContextView contextView, Object memoryId) {
         if (contextView.hasKey(QUERY_CONTEXT_KEY)) {
-            @SuppressWarnings("unchecked")
             Map<Object, String> queries = contextView.get(QUERY_CONTEXT_KEY);
             return queries.get(memoryId);
         }
         return null;
     }
-    
+
     /**
-     * Propagates queries from a Reactor ContextView to ThreadLocal.
-     * This is useful when you need to propagate context before executing code
-     * that might run on a different thread.
+     * Binds the queries of a Reactor ContextView to the current thread until the returned scope is closed.
+     * This replaces copying the queries into the ThreadLocal on every signal: it is done once per
+     * blocking call, and closing the scope restores whatever the thread held before, so pooled
+     * threads don't keep the queries of finished requests.
+     * 
+     * Usage: try (ContextSnapshot.Scope scope = QueryContext.openScope(ctx)) { ... }
      * 
      * @param contextView The Reactor ContextView
+     * @return The scope to close once the blocking call has returned
      */
-    public static void propagateFromContext(ContextView contextView) {
-        if (contextView != null && contextView.hasKey(QUERY_CONTEXT_KEY)) {
-            @SuppressWarnings("unchecked")
-            Map<Object, String> queries = contextView.get(QUERY_CONTEXT_KEY);
-            Map<Object, String> threadQueries = threadLocalQueries.get();
-            threadQueries.putAll(queries);
-            logger.debug("Propagated {} queries from Reactor Context to ThreadLocal", queries.size());
+    public static ContextSnapshot.Scope openScope(ContextView contextView) {
+        return snapshotFactory.setThreadLocalsFrom(contextView, QUERY_CONTEXT_KEY, TURN_CONTEXT_KEY);
+    }
+
+    /**
+     * Retrieves the token of the turn from a Reactor ContextView, or null if there is none.
+     */
+    public static Object getTurnFromContext(ContextView contextView, Object memoryId) {
+        if (contextView.hasKey(TURN_CONTEXT_KEY)) {
+            Map<Object, Object> turns = contextView.get(TURN_CONTEXT_KEY);
+            return turns.get(memoryId);
         }
+        return null;
     }
-    
+
     /**
-     * Propagates queries from Reactor Context to ThreadLocal.
-     * This should be used as an operator in reactive chains to ensure queries
-     * are available when LangChain4j memory methods are called on different threads.
-     * 
-     * Usage: .transform(QueryContext::propagateContext)
-     * 
-     * This operator propagates context on each signal, ensuring queries are available
-     * when LangChain4j memory methods are called, even when execution happens on
-     * different threads.
-     * 
-     * @param <T> The type of the reactive stream
-     * @return A transformer function that propagates context to ThreadLocal
+     * Lets context-propagation move the queries between the Reactor Context and the ThreadLocal.
+     * Registered through {@code META-INF/services}.
      */
-    public static <T> reactor.core.publisher.Flux<T> propagateContext(reactor.core.publisher.Flux<T> flux) {
-        return flux.doOnEach(signal -> {
-            try {
-                ContextView ctx = signal.getContextView();
-                if (ctx != null && ctx.hasKey(QUERY_CONTEXT_KEY)) {
-                    @SuppressWarnings("unchecked")
-                    Map<Object, String> queries = ctx.get(QUERY_CONTEXT_KEY);
-                    // Copy all queries from context to ThreadLocal
-                    Map<Object, String> threadQueries = threadLocalQueries.get();
-                    threadQueries.putAll(queries);
-                    logger.debug("Propagated {} queries from Reactor Context to ThreadLocal on signal", queries.size());
-                }
-            } catch (Exception e) {
-                // Context not available on this signal, ignore
-                logger.trace("Could not get context from signal: {}", e.getMessage());
-            }
-        });
+    public static class Accessor implements ThreadLocalAccessor<Map<Object, String>> {
+
+        @Override
+        public Object key() {
+            return QUERY_CONTEXT_KEY;
+        }
+
+        @Override
+        public Map<Object, String> getValue() {
+            return threadLocalQueries.get();
+        }
+
+        @Override
+        public void setValue(Map<Object, String> value) {
+            threadLocalQueries.set(value);
+        }
+
+        @Override
+        public void setValue() {
+            threadLocalQueries.remove();
+        }
     }
-    
+
     /**
-     * Propagates queries from Reactor Context to ThreadLocal for Mono.
-     * 
-     * This operator propagates context on each signal, ensuring queries are available
-     * when LangChain4j memory methods are called, even when execution happens on
-     * different threads.
-     * 
-     * @param <T> The type of the reactive stream
-     * @return A transformer function that propagates context to ThreadLocal
+     * Moves the turn tokens along with the queries. Registered through {@code META-INF/services}.
      */
-    public static <T> reactor.core.publisher.Mono<T> propagateContext(reactor.core.publisher.Mono<T> mono) {
-        return mono.doOnEach(signal -> {
-            try {
-                ContextView ctx = signal.getContextView();
-                if (ctx != null && ctx.hasKey(QUERY_CONTEXT_KEY)) {
-                    @SuppressWarnings("unchecked")
-                    Map<Object, String> queries = ctx.get(QUERY_CONTEXT_KEY);
-                    // Copy all queries from context to ThreadLocal
-                    Map<Object, String> threadQueries = threadLocalQueries.get();
-                    threadQueries.putAll(queries);
-                    logger.debug("Propagated {} queries from Reactor Context to ThreadLocal on signal", queries.size());
-                }
-            } catch (Exception e) {
-                // Context not available on this signal, ignore
-                logger.trace("Could not get context from signal: {}", e.getMessage());
-            }
-        });
+    public static class TurnAccessor implements ThreadLocalAccessor<Map<Object, Object>> {
+
+        @Override
+        public Object key() {
+            return TURN_CONTEXT_KEY;
+        }
+
+        @Override
+        public Map<Object, Object> getValue() {
+            return threadLocalTurns.get();
+        }
+
+        @Override
+        public void setValue(Map<Object, Object> value) {
+            threadLocalTurns.set(value);
+        }
+
+        @Override
+        public void setValue() {
+            threadLocalTurns.remove();
+        }
     }
 }
-
@@ -0,0 +1,59 @@
+package io.will.langchain4jpoc.memory.store;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Durable {@link ChatMemoryStore} on top of a {@link MappedSegmentLog}.
+ * Every update appends the whole history of the memory, superseded histories are compacted away by the log.
+ * <p>
+ * Histories are stored as a format byte, a varint message count and the messages encoded as in
+ * {@link PackedMessages}. {@link #getMessages} returns a read-only view over the mapped segment that decodes each
+ * message only when it is read, so a history is never copied onto the heap as a whole.
+ */
+public class MappedLogChatMemoryStore implements ChatMemoryStore, AutoCloseable {
+    private static final byte PACKED_FORMAT = 1;
+
+    private final MappedSegmentLog log;
+
+    public MappedLogChatMemoryStore(MappedSegmentLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        ByteBuffer value = log.get(memoryId.toString());
+        if (value == null || !value.hasRemaining()) {
+            return List.of();
+        }
+        if (value.get(0) != PACKED_FORMAT) {
+            throw new IllegalStateException("Unknown format " + value.get(0) + " of the history of memory " + memoryId);
+        }
+        int[] cursor = {1};
+        int count = PackedMessages.readVarint(value, cursor);
+        return new PackedMessages.MessageList(count, cursor[0], () -> value);
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        byte[] value = new PackedMessages.Encoder(64 * messages.size() + 16)
+                .writeByte(PACKED_FORMAT)
+                .varint(messages.size())
+                .messages(messages)
+                .bytes();
+        log.put(memoryId.toString(), value);
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        log.delete(memoryId.toString());
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+}
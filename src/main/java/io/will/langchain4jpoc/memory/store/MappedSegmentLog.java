@@ -0,0 +1,475 @@
+package io.will.langchain4jpoc.memory.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only key/value log on memory-mapped segment files.
+ * <p>
+ * Keys are spread over a fixed number of shards, each shard being a directory of segment files.
+ * Every write appends a record to the active segment of its shard and moves the key's entry in
+ * the in-memory offset index; the previous value becomes garbage. Reads return a read-only view
+ * of the mapped segment, values are never copied onto the heap by the log itself.
+ * <p>
+ * Record layout: {@code [int bodyLength][int crc32c][byte type][int keyLength][key][value]},
+ * where the CRC covers the body. A zero length marks the end of the written part of a segment,
+ * a CRC mismatch a torn write; recovery stops at either.
+ * <p>
+ * Sealed segments whose live ratio drops below the compaction threshold are rewritten in the
+ * background. Their live records are copied into a new file of the same segment id, which is forced to disk and
+ * then renamed over the old file, so the segment is replaced atomically and keeps its place in the recovery order.
+ * The records that made the rest garbage are forced first. A tombstone is only kept while an older segment still
+ * holds a record of its key, for that every segment remembers the keys it holds values of.
+ */
+public class MappedSegmentLog implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MappedSegmentLog.class);
+
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+
+    public enum FsyncPolicy {
+        /** Force every record to disk before the write returns. */
+        ALWAYS,
+        /** Force the active segments periodically. */
+        INTERVAL,
+        /** Leave write-back to the operating system. */
+        NEVER
+    }
+
+    private final Shard[] shards;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final double compactionThreshold;
+    private final ScheduledExecutorService maintenance;
+
+    public MappedSegmentLog(Path directory,
+                            int shardCount,
+                            int segmentSize,
+                            FsyncPolicy fsyncPolicy,
+                            Duration fsyncInterval,
+                            Duration compactionInterval,
+                            double compactionThreshold) {
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.compactionThreshold = compactionThreshold;
+        this.shards = new Shard[shardCount];
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = new Shard(directory.resolve(String.format("shard-%03d", i)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open log in " + directory, e);
+        }
+
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mapped-log-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            long millis = fsyncInterval.toMillis();
+            maintenance.scheduleWithFixedDelay(this::force, millis, millis, TimeUnit.MILLISECONDS);
+        }
+        if (!compactionInterval.isZero()) {
+            long millis = compactionInterval.toMillis();
+            maintenance.scheduleWithFixedDelay(this::compact, millis, millis, TimeUnit.MILLISECONDS);
+        }
+        logger.info("Opened mapped log in {} with {} shards, {} keys", directory, shardCount, size());
+    }
+
+    /**
+     * Read-only view of the latest value of the key, or {@code null} if there is none.
+     */
+    public ByteBuffer get(String key) {
+        Location location = shardFor(key).index.get(key);
+        return location != null ? location.value() : null;
+    }
+
+    public void put(String key, byte[] value) {
+        Shard shard = shardFor(key);
+        synchronized (shard) {
+            Location location = shard.append(TYPE_PUT, key, value);
+            Location previous = shard.index.put(key, location);
+            if (previous != null) {
+                previous.segment.release(previous.recordSize());
+            }
+        }
+    }
+
+    public void delete(String key) {
+        Shard shard = shardFor(key);
+        synchronized (shard) {
+            Location previous = shard.index.remove(key);
+            if (previous == null) {
+                return;
+            }
+            previous.segment.release(previous.recordSize());
+            Location tombstone = shard.append(TYPE_DELETE, key, new byte[0]);
+            tombstone.segment.release(tombstone.recordSize());
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.index.size();
+        }
+        return size;
+    }
+
+    /**
+     * Bytes held by the segment files, live and garbage.
+     */
+    public long diskBytes() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            for (Segment segment : shard.segments.values()) {
+                bytes += segment.written;
+            }
+        }
+        return bytes;
+    }
+
+    public void force() {
+        for (Shard shard : shards) {
+            Segment active = shard.active;
+            if (active != null) {
+                active.buffer.force();
+            }
+        }
+    }
+
+    public void compact() {
+        for (Shard shard : shards) {
+            try {
+                shard.compact();
+            } catch (Exception e) {
+                logger.error("Compaction of {} failed: {}", shard.directory, e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        maintenance.shutdownNow();
+        force();
+    }
+
+    private Shard shardFor(String key) {
+        return shards[Math.floorMod(key.hashCode(), shards.length)];
+    }
+
+    private final class Shard {
+        private final Path directory;
+        private final Map<String, Location> index = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+        private volatile Segment active;
+
+        private Shard(Path directory) throws IOException {
+            this.directory = directory;
+            Files.createDirectories(directory);
+            recover();
+        }
+
+        private void recover() throws IOException {
+            List<Path> files;
+            try (Stream<Path> stream = Files.list(directory)) {
+                files = stream.sorted().toList();
+            }
+            for (Path file : files) {
+                // a compaction that didn't get to replace its segment, the segment itself is still there
+                if (file.getFileName().toString().endsWith(COMPACTING_SUFFIX)) {
+                    Files.delete(file);
+                }
+            }
+            files = files.stream().filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList();
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                Segment segment = Segment.open(file, id, (int) Files.size(file));
+                segments.put(id, segment);
+                segment.scan((offset, type, key, recordSize) -> {
+                    segment.live.addAndGet(recordSize);
+                    if (type == TYPE_PUT) {
+                        segment.keys.add(key);
+                    }
+                    Location previous = type == TYPE_PUT
+                            ? index.put(key, new Location(segment, offset, recordSize))
+                            : index.remove(key);
+                    if (previous != null) {
+                        previous.segment.release(previous.recordSize());
+                    }
+                    if (type == TYPE_DELETE) {
+                        segment.release(recordSize);
+                    }
+                });
+                active = segment;
+            }
+        }
+
+        private Location append(byte type, String key, byte[] value) {
+            int recordSize = recordSize(key, value);
+            Segment segment = active;
+            if (segment == null || segment.remaining() < recordSize + HEADER_SIZE) {
+                segment = roll(recordSize + HEADER_SIZE);
+            }
+
+            int offset = segment.written;
+            segment.write(type, key, value);
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                segment.buffer.force(offset, recordSize);
+            }
+            return new Location(segment, offset, recordSize);
+        }
+
+        private Segment roll(int minimumSize) {
+            try {
+                Segment previous = active;
+                if (previous != null) {
+                    previous.buffer.force();
+                }
+                long id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+                Path file = directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+                Segment segment = Segment.open(file, id, Math.max(segmentSize, minimumSize));
+                segments.put(id, segment);
+                active = segment;
+                return segment;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create segment in " + directory, e);
+            }
+        }
+
+        private void compact() throws IOException {
+            // oldest first, so that tombstones can go as soon as the values they hide are gone
+            for (Segment segment : segments.values()) {
+                if (segment == active || segment.liveRatio() >= compactionThreshold) {
+                    continue;
+                }
+                synchronized (this) {
+                    rewrite(segment);
+                }
+            }
+        }
+
+        private void rewrite(Segment segment) throws IOException {
+            // the records that replaced or deleted the garbage of the segment have to be durable before it is dropped
+            active.buffer.force();
+
+            List<Location> live = new ArrayList<>();
+            List<String> tombstones = new ArrayList<>();
+            int[] size = new int[1];
+            segment.scan((offset, type, key, recordSize) -> {
+                Location current = index.get(key);
+                if (type == TYPE_PUT && current != null && current.segment == segment && current.offset == offset) {
+                    live.add(current);
+                    size[0] += recordSize;
+                } else if (type == TYPE_DELETE && current == null && isHeldBefore(segment.id, key)) {
+                    // an older segment still holds a value this tombstone hides
+                    tombstones.add(key);
+                    size[0] += recordSize;
+                }
+            });
+
+            if (size[0] == 0) {
+                segments.remove(segment.id);
+                Files.deleteIfExists(segment.file);
+                logger.debug("Deleted segment {} without live records", segment.file);
+                return;
+            }
+
+            Path compacting = segment.file.resolveSibling(segment.file.getFileName() + COMPACTING_SUFFIX);
+            Segment compacted = Segment.open(compacting, segment.file, segment.id, size[0]);
+            List<Location> moved = new ArrayList<>(live.size());
+            for (Location location : live) {
+                String key = location.key();
+                moved.add(new Location(compacted, compacted.written, location.recordSize()));
+                compacted.write(TYPE_PUT, key, location.valueBytes());
+                compacted.keys.add(key);
+            }
+            for (String key : tombstones) {
+                int recordSize = recordSize(key, new byte[0]);
+                compacted.write(TYPE_DELETE, key, new byte[0]);
+                compacted.release(recordSize);
+            }
+            compacted.buffer.force();
+            Files.move(compacting, segment.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory();
+
+            segments.put(segment.id, compacted);
+            for (Location location : moved) {
+                index.put(location.key(), location);
+            }
+            logger.debug("Compacted segment {}, kept {} live records and {} tombstones", segment.file, live.size(), tombstones.size());
+        }
+
+        private boolean isHeldBefore(long segmentId, String key) {
+            for (Segment older : segments.headMap(segmentId).values()) {
+                if (older.keys.contains(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void forceDirectory() throws IOException {
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            }
+        }
+    }
+
+    private static int recordSize(String key, byte[] value) {
+        return HEADER_SIZE + 1 + Integer.BYTES + key.getBytes(StandardCharsets.UTF_8).length + value.length;
+    }
+
+    private record Location(Segment segment, int offset, int recordSize) {
+        ByteBuffer value() {
+            ByteBuffer buffer = segment.buffer;
+            int keyLength = buffer.getInt(offset + HEADER_SIZE + 1);
+            int valueOffset = offset + HEADER_SIZE + 1 + Integer.BYTES + keyLength;
+            return buffer.slice(valueOffset, offset + recordSize - valueOffset).asReadOnlyBuffer();
+        }
+
+        byte[] valueBytes() {
+            ByteBuffer value = value();
+            byte[] bytes = new byte[value.remaining()];
+            value.get(bytes);
+            return bytes;
+        }
+
+        String key() {
+            int keyLength = segment.buffer.getInt(offset + HEADER_SIZE + 1);
+            byte[] key = new byte[keyLength];
+            segment.buffer.get(offset + HEADER_SIZE + 1 + Integer.BYTES, key);
+            return new String(key, StandardCharsets.UTF_8);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(int offset, byte type, String key, int recordSize);
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final long id;
+        private final MappedByteBuffer buffer;
+        private final AtomicLong live = new AtomicLong();
+        // keys this segment holds values of, superseded or not, they decide which tombstones are still needed
+        private final Set<String> keys = ConcurrentHashMap.newKeySet();
+        private volatile int written;
+
+        private Segment(Path file, long id, MappedByteBuffer buffer) {
+            this.file = file;
+            this.id = id;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path file, long id, int size) throws IOException {
+            return open(file, file, id, size);
+        }
+
+        /**
+         * Maps {@code mappedFile} for a segment that will be known as {@code file}, once it has been renamed to it.
+         */
+        static Segment open(Path mappedFile, Path file, long id, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(mappedFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // the mapping stays valid after the channel is closed, and after the file is renamed
+                return new Segment(file, id, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        /**
+         * Writes a record at the end of the written part, the caller makes sure it fits.
+         */
+        void write(byte type, String key, byte[] value) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            int bodyLength = 1 + Integer.BYTES + keyBytes.length + value.length;
+            ByteBuffer body = ByteBuffer.allocate(bodyLength);
+            body.put(type).putInt(keyBytes.length).put(keyBytes).put(value);
+            CRC32C crc = new CRC32C();
+            crc.update(body.array());
+
+            int offset = written;
+            // the body goes first and the length last, so a crash never leaves a valid header before a partial body
+            buffer.put(offset + HEADER_SIZE, body.array());
+            buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+            buffer.putInt(offset, bodyLength);
+            written = offset + HEADER_SIZE + bodyLength;
+            live.addAndGet(HEADER_SIZE + bodyLength);
+            if (type == TYPE_PUT) {
+                keys.add(key);
+            }
+        }
+
+        int remaining() {
+            return buffer.capacity() - written;
+        }
+
+        void release(int recordSize) {
+            live.addAndGet(-recordSize);
+        }
+
+        double liveRatio() {
+            return written == 0 ? 1.0 : (double) live.get() / written;
+        }
+
+        /**
+         * Visits the valid records and leaves {@link #written} at the end of them.
+         */
+        void scan(RecordVisitor visitor) {
+            int offset = 0;
+            int limit = buffer.capacity();
+            while (offset + HEADER_SIZE <= limit) {
+                int bodyLength = buffer.getInt(offset);
+                if (bodyLength <= 0 || offset + HEADER_SIZE + bodyLength > limit) {
+                    break;
+                }
+                ByteBuffer body = buffer.slice(offset + HEADER_SIZE, bodyLength);
+                CRC32C crc = new CRC32C();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+                    logger.warn("Torn record at offset {} of {}, ignoring the rest of the segment", offset, file);
+                    break;
+                }
+                byte type = body.get(0);
+                int keyLength = body.getInt(1);
+                byte[] key = new byte[keyLength];
+                body.get(1 + Integer.BYTES, key);
+                visitor.visit(offset, type, new String(key, StandardCharsets.UTF_8), HEADER_SIZE + bodyLength);
+                offset += HEADER_SIZE + bodyLength;
+            }
+            if (offset > written) {
+                written = offset;
+            }
+        }
+    }
+}
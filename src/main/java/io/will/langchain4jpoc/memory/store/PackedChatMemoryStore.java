@@ -0,0 +1,141 @@
+package io.will.langchain4jpoc.memory.store;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link ChatMemoryStore} that keeps each history as one byte array instead of a graph of message objects.
+ * <p>
+ * Messages are encoded as in {@link PackedMessages}. Histories of at least {@code compressionThreshold} bytes are deflated as a whole when that makes them smaller.
+ * {@link #getMessages} returns a read-only view that inflates the history on first access and decodes each
+ * message only when it is read.
+ */
+public class PackedChatMemoryStore implements ChatMemoryStore {
+    // object headers, fields and array header of a PackedHistory, roughly, on a 64-bit JVM with compressed oops
+    private static final int HISTORY_OVERHEAD_BYTES = 48;
+
+    private final int compressionThreshold;
+    private final ConcurrentMap<Object, PackedHistory> histories = new ConcurrentHashMap<>();
+    private final AtomicLong residentBytes = new AtomicLong();
+
+    /**
+     * @param compressionThreshold size in bytes from which histories are deflated, negative to never deflate
+     */
+    public PackedChatMemoryStore(int compressionThreshold, MeterRegistry meterRegistry) {
+        this.compressionThreshold = compressionThreshold;
+        meterRegistry.gauge("chat-memory.packed.sessions", histories, ConcurrentMap::size);
+        meterRegistry.gauge("chat-memory.packed.resident.bytes", residentBytes);
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        PackedHistory history = histories.get(memoryId);
+        return history != null
+                ? new PackedMessages.MessageList(history.count(), 0, () -> ByteBuffer.wrap(history.raw()))
+                : List.of();
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        PackedHistory packed = PackedHistory.pack(messages, compressionThreshold);
+        PackedHistory previous = histories.put(memoryId, packed);
+        residentBytes.addAndGet(packed.residentBytes() - (previous != null ? previous.residentBytes() : 0));
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        PackedHistory previous = histories.remove(memoryId);
+        if (previous != null) {
+            residentBytes.addAndGet(-previous.residentBytes());
+        }
+    }
+
+    /**
+     * Estimated heap taken by the history of the given memory, 0 if there is none.
+     */
+    public long residentBytes(Object memoryId) {
+        PackedHistory history = histories.get(memoryId);
+        return history != null ? history.residentBytes() : 0;
+    }
+
+    public long totalResidentBytes() {
+        return residentBytes.get();
+    }
+
+    /**
+     * @param data       the encoded messages, deflated if {@code compressed}
+     * @param rawLength  length of the encoded messages before deflating
+     */
+    record PackedHistory(byte[] data, int rawLength, int count, boolean compressed) {
+
+        static PackedHistory pack(List<ChatMessage> messages, int compressionThreshold) {
+            byte[] raw = new PackedMessages.Encoder(64 * messages.size() + 16).messages(messages).bytes();
+            if (compressionThreshold >= 0 && raw.length >= compressionThreshold) {
+                byte[] deflated = deflate(raw);
+                if (deflated != null) {
+                    return new PackedHistory(deflated, raw.length, messages.size(), true);
+                }
+            }
+            return new PackedHistory(raw, raw.length, messages.size(), false);
+        }
+
+        long residentBytes() {
+            return HISTORY_OVERHEAD_BYTES + data.length;
+        }
+
+        byte[] raw() {
+            if (!compressed) {
+                return data;
+            }
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                byte[] raw = new byte[rawLength];
+                int length = 0;
+                while (length < rawLength && !inflater.finished()) {
+                    int inflated = inflater.inflate(raw, length, rawLength - length);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        // cut short or not our data, waiting for more input would spin forever
+                        break;
+                    }
+                    length += inflated;
+                }
+                if (length < rawLength) {
+                    throw new IllegalStateException("Corrupted packed history, inflated " + length + " of " + rawLength + " bytes");
+                }
+                return raw;
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupted packed history", e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        /**
+         * Deflated bytes, or null if deflating doesn't make them smaller.
+         */
+        private static byte[] deflate(byte[] raw) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(raw);
+                deflater.finish();
+                byte[] buffer = new byte[raw.length];
+                int length = deflater.deflate(buffer);
+                return deflater.finished() && length < raw.length ? Arrays.copyOf(buffer, length) : null;
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
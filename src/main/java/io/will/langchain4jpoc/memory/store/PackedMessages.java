@@ -0,0 +1,179 @@
+package io.will.langchain4jpoc.memory.store;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Supplier;
+
+/**
+ * Binary encoding of chat messages shared by {@link PackedChatMemoryStore} and {@link MappedLogChatMemoryStore}.
+ * <p>
+ * Every message is a type tag, a varint length and its UTF-8 text. Messages that text alone can't restore
+ * exactly (tool calls, multimodal content, names) are stored as their LangChain4j JSON.
+ */
+final class PackedMessages {
+    private static final byte SYSTEM = 1;
+    private static final byte USER = 2;
+    private static final byte AI = 3;
+    private static final byte JSON = 4;
+
+    private PackedMessages() {
+    }
+
+    static final class Encoder {
+        private byte[] buffer;
+        private int length;
+
+        Encoder(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        Encoder messages(List<ChatMessage> messages) {
+            for (ChatMessage message : messages) {
+                message(message);
+            }
+            return this;
+        }
+
+        Encoder message(ChatMessage message) {
+            switch (message) {
+                // plain text messages are stored as text only if that restores them exactly
+                case SystemMessage system when SystemMessage.from(system.text()).equals(system) ->
+                        record(SYSTEM, system.text());
+                case UserMessage user when user.hasSingleText() && UserMessage.from(user.singleText()).equals(user) ->
+                        record(USER, user.singleText());
+                case AiMessage ai when ai.text() != null && AiMessage.from(ai.text()).equals(ai) ->
+                        record(AI, ai.text());
+                default -> record(JSON, ChatMessageSerializer.messageToJson(message));
+            }
+            return this;
+        }
+
+        Encoder writeByte(byte value) {
+            ensureCapacity(1);
+            buffer[length++] = value;
+            return this;
+        }
+
+        Encoder varint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+            return this;
+        }
+
+        byte[] bytes() {
+            return Arrays.copyOf(buffer, length);
+        }
+
+        private void record(byte tag, String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            writeByte(tag);
+            varint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+    }
+
+    /**
+     * Reads a varint at {@code cursor[0]} without moving the buffer's position, and advances the cursor past it.
+     */
+    static int readVarint(ByteBuffer buffer, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(cursor[0]++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Read-only view of {@code count} encoded messages starting at {@code start} of a buffer. The buffer is only
+     * asked for on first access, and each message is decoded only when it is read, straight from the buffer.
+     * Like the lists of other stores it is not meant to be shared between threads.
+     */
+    static final class MessageList extends AbstractList<ChatMessage> implements RandomAccess {
+        private final int count;
+        private final int start;
+        private final Supplier<ByteBuffer> source;
+        private ByteBuffer buffer;
+        private int[] offsets;
+        private ChatMessage[] decoded;
+
+        MessageList(int count, int start, Supplier<ByteBuffer> source) {
+            this.count = count;
+            this.start = start;
+            this.source = source;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public ChatMessage get(int index) {
+            Objects.checkIndex(index, count);
+            if (decoded == null) {
+                index();
+            }
+            ChatMessage message = decoded[index];
+            if (message == null) {
+                message = decode(offsets[index]);
+                decoded[index] = message;
+            }
+            return message;
+        }
+
+        private void index() {
+            buffer = source.get();
+            offsets = new int[count];
+            decoded = new ChatMessage[count];
+            int position = start;
+            for (int i = 0; i < count; i++) {
+                offsets[i] = position;
+                int[] cursor = {position + 1};
+                int length = readVarint(buffer, cursor);
+                position = cursor[0] + length;
+            }
+        }
+
+        private ChatMessage decode(int offset) {
+            byte tag = buffer.get(offset);
+            int[] cursor = {offset + 1};
+            int length = readVarint(buffer, cursor);
+            String text = StandardCharsets.UTF_8.decode(buffer.slice(cursor[0], length)).toString();
+            return switch (tag) {
+                case SYSTEM -> SystemMessage.from(text);
+                case USER -> UserMessage.from(text);
+                case AI -> AiMessage.from(text);
+                case JSON -> ChatMessageDeserializer.messageFromJson(text);
+                default -> throw new IllegalStateException("Unknown message tag " + tag);
+            };
+        }
+    }
+}
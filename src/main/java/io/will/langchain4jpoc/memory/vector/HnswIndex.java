@@ -0,0 +1,246 @@
+package io.will.langchain4jpoc.memory.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical navigable small world graph over normalized vectors, scored by dot product (cosine similarity).
+ * <p>
+ * Nodes are identified by their insertion order. Inserts are serialized, searches run concurrently with each other.
+ * With fewer nodes than the search beam the graph is searched exhaustively, so small indexes return exact results.
+ */
+public class HnswIndex {
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+
+    private final List<float[]> vectors = new ArrayList<>();
+    // links[node][level] holds the neighbour ids, linkCounts[node][level] how many of them are used
+    private final List<int[][]> links = new ArrayList<>();
+    private final List<int[]> linkCounts = new ArrayList<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public HnswIndex(int m, int efConstruction, int efSearch) {
+        this(m, efConstruction, efSearch, 42);
+    }
+
+    HnswIndex(int m, int efConstruction, int efSearch, long seed) {
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return vectors.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a normalized vector and returns its id.
+     */
+    public int add(float[] vector) {
+        lock.writeLock().lock();
+        try {
+            int id = vectors.size();
+            int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+            int[][] nodeLinks = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                nodeLinks[l] = new int[l == 0 ? maxM0 : m];
+            }
+            vectors.add(vector);
+            links.add(nodeLinks);
+            linkCounts.add(new int[level + 1]);
+
+            if (entryPoint < 0) {
+                entryPoint = id;
+                maxLevel = level;
+                return id;
+            }
+
+            int current = entryPoint;
+            for (int l = maxLevel; l > level; l--) {
+                current = greedyClosest(vector, current, l);
+            }
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                List<Scored> candidates = searchLayer(vector, current, efConstruction, l);
+                int maxLinks = l == 0 ? maxM0 : m;
+                for (int i = 0; i < Math.min(m, candidates.size()); i++) {
+                    int neighbour = candidates.get(i).id();
+                    link(id, neighbour, l, maxLinks);
+                    link(neighbour, id, l, maxLinks);
+                }
+                current = candidates.getFirst().id();
+            }
+
+            if (level > maxLevel) {
+                entryPoint = id;
+                maxLevel = level;
+            }
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns up to k ids of the vectors most similar to the given normalized query, most similar first.
+     */
+    public List<Scored> search(float[] query, int k) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return List.of();
+            }
+            int current = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                current = greedyClosest(query, current, l);
+            }
+            List<Scored> results = searchLayer(query, current, Math.max(efSearch, k), 0);
+            return List.copyOf(results.subList(0, Math.min(k, results.size())));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        double currentScore = dot(query, vectors.get(current));
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links.get(current)[level];
+            int count = linkCounts.get(current)[level];
+            for (int i = 0; i < count; i++) {
+                double score = dot(query, vectors.get(neighbours[i]));
+                if (score > currentScore) {
+                    current = neighbours[i];
+                    currentScore = score;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on one level, returns the best ef nodes found, most similar first.
+     */
+    private List<Scored> searchLayer(float[] query, int start, int ef, int level) {
+        BitSet visited = new BitSet(vectors.size());
+        PriorityQueue<Scored> candidates = new PriorityQueue<>(Comparator.comparingDouble(Scored::score).reversed());
+        PriorityQueue<Scored> results = new PriorityQueue<>(Comparator.comparingDouble(Scored::score));
+
+        Scored first = new Scored(start, dot(query, vectors.get(start)));
+        visited.set(start);
+        candidates.add(first);
+        results.add(first);
+
+        while (!candidates.isEmpty()) {
+            Scored candidate = candidates.poll();
+            if (results.size() >= ef && candidate.score() < results.peek().score()) {
+                break;
+            }
+            int[][] nodeLinks = links.get(candidate.id());
+            if (level >= nodeLinks.length) {
+                continue;
+            }
+            int[] neighbours = nodeLinks[level];
+            int count = linkCounts.get(candidate.id())[level];
+            for (int i = 0; i < count; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                double score = dot(query, vectors.get(neighbour));
+                if (results.size() < ef || score > results.peek().score()) {
+                    Scored scored = new Scored(neighbour, score);
+                    candidates.add(scored);
+                    results.add(scored);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Scored> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(Scored::score).reversed());
+        return sorted;
+    }
+
+    /**
+     * Adds a directed link, replacing the least similar neighbour once the node has the maximum number of links.
+     */
+    private void link(int from, int to, int level, int maxLinks) {
+        int[] neighbours = links.get(from)[level];
+        int[] counts = linkCounts.get(from);
+        if (counts[level] < maxLinks) {
+            neighbours[counts[level]++] = to;
+            return;
+        }
+
+        float[] origin = vectors.get(from);
+        int worst = -1;
+        double worstScore = dot(origin, vectors.get(to));
+        for (int i = 0; i < maxLinks; i++) {
+            double score = dot(origin, vectors.get(neighbours[i]));
+            if (score < worstScore) {
+                worst = i;
+                worstScore = score;
+            }
+        }
+        if (worst >= 0) {
+            neighbours[worst] = to;
+        }
+    }
+
+    /**
+     * Copy of the vector scaled to unit length, so that its dot product with another normalized vector is
+     * their cosine similarity.
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = Arrays.copyOf(vector, vector.length);
+        if (norm > 0) {
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] /= (float) norm;
+            }
+        }
+        return normalized;
+    }
+
+    public static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    public record Scored(int id, double score) {}
+}
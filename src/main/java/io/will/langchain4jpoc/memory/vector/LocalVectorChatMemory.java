@@ -0,0 +1,124 @@
+package io.will.langchain4jpoc.memory.vector;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Chat memory that answers with the messages most relevant to the current query instead of the whole history.
+ */
+public class LocalVectorChatMemory implements ChatMemory {
+    private static final Logger logger = LoggerFactory.getLogger(LocalVectorChatMemory.class);
+
+    private volatile SystemMessage systemMessage;
+
+    private final Object memoryId;
+    private final LocalVectorChatMemoryStore store;
+    private final Supplier<String> querySupplier;
+
+    public LocalVectorChatMemory(Object memoryId, LocalVectorChatMemoryStore store, Supplier<String> querySupplier) {
+        this.memoryId = memoryId;
+        this.store = store;
+        this.querySupplier = querySupplier;
+    }
+
+    @Override
+    public Object id() {
+        return memoryId;
+    }
+
+    @Override
+    public void add(ChatMessage message) {
+        logger.debug("Adding message to memory ID: {} | {}", memoryId, message);
+
+        if (message instanceof SystemMessage systemMsg) {
+            // only retain the last system message
+            systemMessage = systemMsg;
+            return;
+        }
+        store.updateMessages(memoryId, List.of(message));
+    }
+
+    @Override
+    public List<ChatMessage> messages() {
+        List<ChatMessage> result = new ArrayList<>();
+        String currentQuery = querySupplier != null ? querySupplier.get() : null;
+        boolean hasQuery = currentQuery != null && !currentQuery.trim().isEmpty();
+        try {
+            List<ChatMessage> history = hasQuery
+                    ? store.searchMessages(memoryId, currentQuery)
+                    : store.getMessages(memoryId);
+            for (ChatMessage message : history) {
+                // the query has already been added to the index and is the best match for itself
+                if (hasQuery && message instanceof UserMessage userMessage && currentQuery.equals(userMessage.singleText())) {
+                    continue;
+                }
+                result.add(message);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to get messages for memory ID: {} | {}", memoryId, e.getMessage(), e);
+        }
+
+        // system message and the current user query have to be handled separately under LangChain4j
+        SystemMessage sysMsg = systemMessage;
+        if (sysMsg != null) {
+            result.addFirst(sysMsg);
+        }
+        if (hasQuery) {
+            result.addLast(new UserMessage(currentQuery));
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        logger.info("Clearing messages for memory ID: {}", memoryId);
+        store.deleteMessages(memoryId);
+        systemMessage = null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private LocalVectorChatMemoryStore store;
+        private Object memoryId;
+        private Supplier<String> querySupplier = () -> null;
+
+        private Builder() {
+        }
+
+        public Builder chatMemoryStore(LocalVectorChatMemoryStore store) {
+            this.store = store;
+            return this;
+        }
+
+        public Builder memoryId(Object memoryId) {
+            this.memoryId = memoryId;
+            return this;
+        }
+
+        public Builder querySupplier(Supplier<String> querySupplier) {
+            this.querySupplier = querySupplier;
+            return this;
+        }
+
+        public LocalVectorChatMemory build() {
+            if (store == null) {
+                throw new IllegalStateException("ChatMemoryStore must be set");
+            }
+            if (memoryId == null) {
+                throw new IllegalStateException("MemoryId must be set");
+            }
+            return new LocalVectorChatMemory(memoryId, store, querySupplier);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.will.langchain4jpoc.memory.vector;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import io.will.langchain4jpoc.memory.mem0.QueryContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConditionalOnProperty(name = "chat.memory.provider", havingValue = "local-vector")
+public class LocalVectorChatMemoryProvider implements ChatMemoryProvider {
+    private final LocalVectorChatMemoryStore store;
+
+    // sessions only hold the system message, the history lives in the store
+    private final Cache<Object, LocalVectorChatMemory> memoryCache;
+
+    public LocalVectorChatMemoryProvider(LocalVectorChatMemoryStore store,
+                                         @Value("${chat-memory.local-vector.sessions.max-size:100000}") long maxSize,
+                                         @Value("${chat-memory.local-vector.sessions.idle-timeout:30m}") Duration idleTimeout) {
+        this.store = store;
+        this.memoryCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(idleTimeout)
+                .build();
+    }
+
+    @Override
+    public ChatMemory get(Object memoryId) {
+        return memoryCache.get(memoryId, id -> LocalVectorChatMemory.builder()
+                .chatMemoryStore(store)
+                .memoryId(id)
+                .querySupplier(() -> QueryContext.getQuery(id))
+                .build());
+    }
+}
@@ -0,0 +1,317 @@
+package io.will.langchain4jpoc.memory.vector;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageType;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.will.langchain4jpoc.concurrent.StripedLocks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * In-process alternative to the Mem0 store with the same {@link #searchMessages} contract.
+ * <p>
+ * Messages are embedded when they are added and kept in an {@link HnswIndex} per user, so retrieval needs no
+ * network round trip. With a directory configured, every message is also appended to a file per user together
+ * with its embedding, and the index is rebuilt from that file without re-embedding on the first access after
+ * a restart. Appends are not fsynced, the files survive restarts of the process but not of the machine.
+ * Records carry their length and a CRC32C like those of the segment log, a torn or corrupt record ends the file.
+ * <p>
+ * With a directory the indexes of at most chat-memory.local-vector.max-cached-users users are kept, the others are
+ * reloaded from their file when they are used again. Without one the indexes are the only copy and are all kept.
+ * Appends, loads and deletes of a user run under the same lock, so a load never reads a record being appended.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.memory.provider", havingValue = "local-vector")
+public class LocalVectorChatMemoryStore implements ChatMemoryStore {
+    private static final Logger logger = LoggerFactory.getLogger(LocalVectorChatMemoryStore.class);
+
+    private static final byte USER = 0;
+    private static final byte AI = 1;
+    // body length and CRC32C of the body
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int LOCK_STRIPES = 64;
+
+    private final EmbeddingModel embeddingModel;
+    private final int topK;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final Path dir;
+
+    private final LoadingCache<String, UserIndex> users;
+    private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+    // tagged with the operation (get, search)
+    private final Meter.MeterProvider<Timer> readTimer;
+    private final Timer writeTimer;
+
+    public LocalVectorChatMemoryStore(EmbeddingModel embeddingModel,
+                                      @Value("${chat-memory.local-vector.top-k:3}") int topK,
+                                      @Value("${chat-memory.local-vector.hnsw.m:16}") int m,
+                                      @Value("${chat-memory.local-vector.hnsw.ef-construction:100}") int efConstruction,
+                                      @Value("${chat-memory.local-vector.hnsw.ef-search:50}") int efSearch,
+                                      @Value("${chat-memory.local-vector.dir:}") String dir,
+                                      @Value("${chat-memory.local-vector.max-cached-users:1000}") long maxCachedUsers,
+                                      MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.topK = topK;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.dir = dir == null || dir.isBlank() ? null : Path.of(dir);
+        Caffeine<Object, Object> users = Caffeine.newBuilder();
+        if (this.dir != null) {
+            users.maximumSize(maxCachedUsers);
+        }
+        this.users = users.build(this::load);
+        this.readTimer = Timer.builder("local-vector.store.reads")
+                .description("Latency of local vector memory reads, including embedding the query")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        this.writeTimer = Timer.builder("local-vector.store.writes")
+                .description("Latency of local vector memory writes, including embedding the message")
+                .register(meterRegistry);
+
+        if (this.dir != null) {
+            try {
+                Files.createDirectories(this.dir);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create " + this.dir, e);
+            }
+        }
+        logger.info("Local vector memory, top k: {}, m: {}, ef construction: {}, ef search: {}, persisted in: {}, max cached users: {}",
+                topK, m, efConstruction, efSearch, this.dir != null ? this.dir : "none", this.dir != null ? maxCachedUsers : "unbounded");
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        StoredMessage last = lastMessage(messages);
+        if (last == null) {
+            logger.warn("No messages to update for memory ID: {}", memoryId);
+            return;
+        }
+
+        long start = System.nanoTime();
+        float[] vector = HnswIndex.normalize(embeddingModel.embed(last.text()).content().vector());
+        String userId = memoryId.toString();
+        locks.run(userId, () -> {
+            UserIndex user = users.get(userId);
+            if (dir != null) {
+                append(userId, last, vector);
+            }
+            user.add(last, vector);
+        });
+        writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        long start = System.nanoTime();
+        String userId = memoryId.toString();
+        List<ChatMessage> messages = locks.call(userId, () -> {
+            List<ChatMessage> all = new ArrayList<>();
+            for (StoredMessage message : users.get(userId).messages) {
+                all.add(message.toChatMessage());
+            }
+            return all;
+        });
+        readTimer.withTags("operation", "get").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return messages;
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        String userId = memoryId.toString();
+        locks.run(userId, () -> {
+            users.invalidate(userId);
+            if (dir != null) {
+                try {
+                    Files.deleteIfExists(file(userId));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to delete messages of " + userId, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the top k messages most similar to the query, in the order they were added.
+     */
+    public List<ChatMessage> searchMessages(Object memoryId, String query) {
+        long start = System.nanoTime();
+        String userId = memoryId.toString();
+        float[] vector = HnswIndex.normalize(embeddingModel.embed(query).content().vector());
+        UserIndex user = locks.call(userId, () -> users.get(userId));
+        // the index can be searched while messages are added, only the message list needs the lock
+        List<HnswIndex.Scored> hits = new ArrayList<>(user.index.search(vector, topK));
+        hits.sort(Comparator.comparingInt(HnswIndex.Scored::id));
+
+        List<ChatMessage> messages = locks.call(userId, () -> {
+            List<ChatMessage> found = new ArrayList<>(hits.size());
+            for (HnswIndex.Scored hit : hits) {
+                found.add(user.messages.get(hit.id()).toChatMessage());
+            }
+            return found;
+        });
+        readTimer.withTags("operation", "search").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        logger.debug("Found {} relevant messages for memory ID: {}", messages.size(), memoryId);
+        return messages;
+    }
+
+    public int size(Object memoryId) {
+        String userId = memoryId.toString();
+        return locks.call(userId, () -> users.get(userId).index.size());
+    }
+
+    /**
+     * Rebuilds the index of a user from its file. Only called by the cache from under the lock of the user.
+     */
+    private UserIndex load(String userId) {
+        UserIndex user = new UserIndex(new HnswIndex(m, efConstruction, efSearch));
+        if (dir == null || !Files.exists(file(userId))) {
+            return user;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file(userId)));
+            while (buffer.hasRemaining()) {
+                int recordStart = buffer.position();
+                ByteBuffer body = readBody(buffer);
+                if (body == null) {
+                    // a write cut short by a crash or a corrupt record, everything before it is intact; the rest
+                    // is cut off so that the next append doesn't land behind it and get lost along with it
+                    logger.warn("Dropping torn or corrupt record at offset {} of {}", recordStart, file(userId));
+                    try (FileChannel channel = FileChannel.open(file(userId), StandardOpenOption.WRITE)) {
+                        channel.truncate(recordStart);
+                    }
+                    break;
+                }
+                byte type = body.get();
+                byte[] text = new byte[body.getInt()];
+                body.get(text);
+                float[] vector = new float[body.getInt()];
+                body.asFloatBuffer().get(vector);
+                user.add(new StoredMessage(type, new String(text, StandardCharsets.UTF_8)), vector);
+            }
+            logger.info("Loaded {} messages for memory ID: {}", user.messages.size(), userId);
+            return user;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load messages of " + userId, e);
+        }
+    }
+
+    /**
+     * The body of the record at the position of the buffer, which is moved past it, or {@code null} if the record
+     * is cut short or its checksum doesn't match.
+     */
+    private static ByteBuffer readBody(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        int bodyLength = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (bodyLength < 0 || bodyLength > buffer.remaining()) {
+            return null;
+        }
+        ByteBuffer body = buffer.slice(buffer.position(), bodyLength);
+        buffer.position(buffer.position() + bodyLength);
+        CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+        return (int) crc.getValue() == checksum ? body : null;
+    }
+
+    private void append(String userId, StoredMessage message, float[] vector) {
+        byte[] text = message.text().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(1 + Integer.BYTES + text.length + Integer.BYTES + vector.length * Float.BYTES);
+        body.put(message.type()).putInt(text.length).put(text).putInt(vector.length);
+        for (float v : vector) {
+            body.putFloat(v);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(body.array());
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + body.capacity());
+        record.putInt(body.capacity()).putInt((int) crc.getValue()).put(body.array()).flip();
+
+        try (FileChannel channel = FileChannel.open(file(userId), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            try {
+                while (record.hasRemaining()) {
+                    channel.write(record, end + record.position());
+                }
+            } catch (IOException e) {
+                // don't leave part of the record behind for later appends to follow
+                channel.truncate(end);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to persist message of " + userId, e);
+        }
+    }
+
+    private Path file(String userId) {
+        // user IDs are arbitrary strings, encode them into a safe file name
+        String name = Base64.getUrlEncoder().withoutPadding().encodeToString(userId.getBytes(StandardCharsets.UTF_8));
+        return dir.resolve(name + ".vec");
+    }
+
+    private static StoredMessage lastMessage(List<ChatMessage> messages) {
+        // only the last user or AI message is new, like in the Mem0 store
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            ChatMessage msg = messages.get(i);
+            if (msg.type() == ChatMessageType.USER) {
+                return new StoredMessage(USER, ((UserMessage) msg).singleText());
+            }
+            if (msg.type() == ChatMessageType.AI && ((AiMessage) msg).text() != null) {
+                return new StoredMessage(AI, ((AiMessage) msg).text());
+            }
+        }
+        return null;
+    }
+
+    private record StoredMessage(byte type, String text) {
+        ChatMessage toChatMessage() {
+            return type == AI ? AiMessage.from(text) : UserMessage.from(text);
+        }
+    }
+
+    private static final class UserIndex {
+        private final HnswIndex index;
+        // position in the list is the id in the index
+        private final List<StoredMessage> messages = new ArrayList<>();
+
+        private UserIndex(HnswIndex index) {
+            this.index = index;
+        }
+
+        private void add(StoredMessage message, float[] vector) {
+            index.add(vector);
+            messages.add(message);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package io.will.langchain4jpoc.metrics;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times chat turns as seen by the client, i.e. including waiting for the session and loading the memory.
+ */
+@Component
+public class ChatMetrics {
+    // tagged with the endpoint (chat, streaming, batch) and the outcome (success, error, cancelled)
+    private final Meter.MeterProvider<Timer> requestTimer;
+    private final Timer timeToFirstToken;
+    private final Timer interTokenLatency;
+
+    public ChatMetrics(MeterRegistry meterRegistry) {
+        this.requestTimer = Timer.builder("chat.requests")
+                .description("Duration of chat turns")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+        this.timeToFirstToken = Timer.builder("chat.streaming.time-to-first-token")
+                .description("Time from the start of a streaming turn to its first token")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.interTokenLatency = Timer.builder("chat.streaming.inter-token")
+                .description("Time between consecutive tokens of a streaming turn")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> timeChat(Mono<T> turn) {
+        return time("chat", turn);
+    }
+
+    /**
+     * Times a single item of a batch, from the moment it is admitted into the batch.
+     */
+    public <T> Mono<T> timeBatchItem(Mono<T> turn) {
+        return time("batch", turn);
+    }
+
+    private <T> Mono<T> time(String endpoint, Mono<T> turn) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return turn.doFinally(signalType -> record(endpoint, signalType, start));
+        });
+    }
+
+    public <T> Flux<T> timeStreaming(Flux<T> tokens) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            // signals of one subscription are serialized, so plain state is enough
+            long[] lastToken = {0L};
+            return tokens
+                    .doOnNext(token -> {
+                        long now = System.nanoTime();
+                        if (lastToken[0] == 0L) {
+                            timeToFirstToken.record(now - start, TimeUnit.NANOSECONDS);
+                        } else {
+                            interTokenLatency.record(now - lastToken[0], TimeUnit.NANOSECONDS);
+                        }
+                        lastToken[0] = now;
+                    })
+                    .doFinally(signalType -> record("streaming", signalType, start));
+        });
+    }
+
+    private void record(String endpoint, SignalType signalType, long start) {
+        String outcome = switch (signalType) {
+            case ON_COMPLETE -> "success";
+            case ON_ERROR -> "error";
+            default -> "cancelled";
+        };
+        requestTimer.withTags("endpoint", endpoint, "outcome", outcome)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
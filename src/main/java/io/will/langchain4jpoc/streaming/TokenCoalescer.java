@@ -0,0 +1,170 @@
+package io.will.langchain4jpoc.streaming;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups streamed tokens into frames, so that a streaming answer is sent as a few SSE events instead of one
+ * JSON encode, buffer and network write per token of a few bytes.
+ * <p>
+ * The first token is sent on its own right away, so the time to first token is unchanged. Later tokens are
+ * collected until {@code window} has passed since the first of them or they add up to {@code maxFrameBytes}
+ * of UTF-8, whichever comes first. What is collected when the stream ends or fails is sent before that.
+ */
+@Component
+public class TokenCoalescer {
+    private static final Logger logger = LoggerFactory.getLogger(TokenCoalescer.class);
+
+    private final boolean enabled;
+    private final Duration window;
+    private final int maxFrameBytes;
+    private final Scheduler timer;
+
+    private final DistributionSummary tokensPerFrame;
+    private final DistributionSummary frameSize;
+
+    @Autowired
+    public TokenCoalescer(@Value("${chat.streaming.coalescing.enabled:true}") boolean enabled,
+                          @Value("${chat.streaming.coalescing.window:30ms}") Duration window,
+                          @Value("${chat.streaming.coalescing.max-frame-bytes:512}") int maxFrameBytes,
+                          MeterRegistry meterRegistry) {
+        this(enabled, window, maxFrameBytes, Schedulers.parallel(), meterRegistry);
+    }
+
+    TokenCoalescer(boolean enabled, Duration window, int maxFrameBytes, Scheduler timer, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.window = window;
+        this.maxFrameBytes = maxFrameBytes;
+        this.timer = timer;
+        this.tokensPerFrame = DistributionSummary.builder("chat.streaming.frame.tokens")
+                .description("Tokens sent together in one streamed frame")
+                .register(meterRegistry);
+        this.frameSize = DistributionSummary.builder("chat.streaming.frame.size")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        if (enabled) {
+            logger.info("Streaming token coalescing enabled, window: {}, max frame size: {} bytes", window, maxFrameBytes);
+        }
+    }
+
+    public Flux<String> coalesce(Flux<String> tokens) {
+        if (!enabled) {
+            return tokens;
+        }
+        return Flux.create(sink -> {
+            Frame frame = new Frame(sink);
+            // the context of the stream, e.g. the query of the turn, must still reach the tokens' source
+            Disposable upstream = tokens
+                    .contextWrite(sink.contextView())
+                    .subscribe(frame::onToken, frame::onError, frame::onComplete);
+            sink.onDispose(() -> {
+                upstream.dispose();
+                frame.cancelTimer();
+            });
+        });
+    }
+
+    /**
+     * The tokens of one stream collected so far. Tokens arrive on the stream's thread and the window closes
+     * on the timer's, hence the locking.
+     */
+    private final class Frame {
+        private final FluxSink<String> sink;
+        private final StringBuilder text = new StringBuilder();
+        private int tokens;
+        private int bytes;
+        private boolean firstSent;
+        private Disposable flushTimer;
+
+        private Frame(FluxSink<String> sink) {
+            this.sink = sink;
+        }
+
+        synchronized void onToken(String token) {
+            if (!firstSent) {
+                firstSent = true;
+                send(token, 1, utf8Length(token));
+                return;
+            }
+            text.append(token);
+            tokens++;
+            bytes += utf8Length(token);
+            if (bytes >= maxFrameBytes) {
+                flush();
+            } else if (flushTimer == null) {
+                flushTimer = timer.schedule(this::onWindowClosed, window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        synchronized void onComplete() {
+            flush();
+            sink.complete();
+        }
+
+        synchronized void onError(Throwable e) {
+            flush();
+            sink.error(e);
+        }
+
+        synchronized void cancelTimer() {
+            if (flushTimer != null) {
+                flushTimer.dispose();
+                flushTimer = null;
+            }
+        }
+
+        private synchronized void onWindowClosed() {
+            flushTimer = null;
+            flush();
+        }
+
+        private void flush() {
+            cancelTimer();
+            if (tokens == 0) {
+                return;
+            }
+            send(text.toString(), tokens, bytes);
+            text.setLength(0);
+            tokens = 0;
+            bytes = 0;
+        }
+
+        private void send(String frame, int tokenCount, int byteCount) {
+            tokensPerFrame.record(tokenCount);
+            frameSize.record(byteCount);
+            sink.next(frame);
+        }
+    }
+
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
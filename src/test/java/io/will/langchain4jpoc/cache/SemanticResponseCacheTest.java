@@ -0,0 +1,135 @@
+package io.will.langchain4jpoc.cache;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SemanticResponseCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void givenAnsweredQuestion_whenSimilarQuestionAsked_thenReturnsCachedAnswer() {
+        SemanticResponseCache cache = cache(SemanticResponseCache.Scope.SESSION);
+        cache.put(cache.lookup("alice", "What is the capital of France?", List.of()), "Paris");
+
+        SemanticResponseCache.Lookup lookup = cache.lookup("alice", "what is the capital of france", List.of());
+
+        assertTrue(lookup.hit());
+        assertEquals("Paris", lookup.answer());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1.0, meterRegistry.get("chat.semantic-cache.lookups").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void givenAnsweredQuestion_whenUnrelatedQuestionAsked_thenMisses() {
+        SemanticResponseCache cache = cache(SemanticResponseCache.Scope.SESSION);
+        cache.put(cache.lookup("alice", "What is the capital of France?", List.of()), "Paris");
+
+        assertFalse(cache.lookup("alice", "How do I bake bread?", List.of()).hit());
+        assertEquals(2, cache.missCount());
+    }
+
+    @Test
+    void givenSessionScope_whenOtherSessionAsks_thenMisses() {
+        SemanticResponseCache cache = cache(SemanticResponseCache.Scope.SESSION);
+        cache.put(cache.lookup("alice", "What is my name?", List.of()), "Alice");
+
+        assertFalse(cache.lookup("bob", "What is my name?", List.of()).hit());
+    }
+
+    @Test
+    void givenGlobalScope_whenOtherSessionAsks_thenHits() {
+        SemanticResponseCache cache = cache(SemanticResponseCache.Scope.GLOBAL);
+        cache.put(cache.lookup("alice", "What is the capital of France?", List.of()), "Paris");
+
+        assertTrue(cache.lookup("bob", "What is the capital of France?", List.of()).hit());
+    }
+
+    @Test
+    void givenGlobalScope_whenOtherSessionAsksWithOtherMemory_thenMisses() {
+        SemanticResponseCache cache = cache(SemanticResponseCache.Scope.GLOBAL);
+        cache.put(cache.lookup("alice", "What is my name?", List.of(UserMessage.from("My name is Alice"))), "Alice");
+
+        assertFalse(cache.lookup("bob", "What is my name?", List.of(UserMessage.from("My name is Bob"))).hit());
+        assertFalse(cache.lookup("bob", "What is my name?", List.of()).hit());
+        assertTrue(cache.lookup("alice", "What is my name?", List.of(UserMessage.from("My name is Alice"))).hit());
+    }
+
+    @Test
+    void givenHistoryMovedOn_whenAskedAgain_thenMisses() {
+        SemanticResponseCache cache = cache(SemanticResponseCache.Scope.SESSION);
+        List<ChatMessage> history = List.of(UserMessage.from("I live in Paris"), AiMessage.from("Nice!"));
+        cache.put(cache.lookup("alice", "Where do I live?", history), "Paris");
+
+        List<ChatMessage> corrected = List.of(UserMessage.from("I live in Paris"), AiMessage.from("Nice!"),
+                UserMessage.from("Actually I moved to Lyon"), AiMessage.from("Noted."));
+        assertFalse(cache.lookup("alice", "Where do I live?", corrected).hit());
+    }
+
+    @Test
+    void givenStreamedAnswer_whenCompleted_thenCachedAndReplayedInChunks() {
+        SemanticResponseCache cache = cache(SemanticResponseCache.Scope.SESSION);
+        SemanticResponseCache.Lookup miss = cache.lookup("alice", "Tell me a joke", List.of());
+
+        StepVerifier.create(cache.cacheStream(miss, Flux.just("Why did ", "the chicken", " cross?")))
+                .expectNextCount(3)
+                .verifyComplete();
+
+        SemanticResponseCache.Lookup hit = cache.lookup("alice", "tell me a joke", List.of());
+        assertTrue(hit.hit());
+        StepVerifier.create(SemanticResponseCache.replay(hit.answer()))
+                .expectNext("Why ", "did ", "the ", "chicken ", "cross?")
+                .verifyComplete();
+    }
+
+    @Test
+    void givenStreamCancelled_whenAskedAgain_thenNotCached() {
+        SemanticResponseCache cache = cache(SemanticResponseCache.Scope.SESSION);
+        SemanticResponseCache.Lookup miss = cache.lookup("alice", "Tell me a joke", List.of());
+
+        StepVerifier.create(cache.cacheStream(miss, Flux.just("Why did ", "the chicken", " cross?")), 1)
+                .expectNext("Why did ")
+                .thenCancel()
+                .verify();
+
+        assertFalse(cache.lookup("alice", "Tell me a joke", List.of()).hit());
+    }
+
+    private SemanticResponseCache cache(SemanticResponseCache.Scope scope) {
+        return new SemanticResponseCache(new BagOfWordsEmbeddingModel(), 0.9, scope, 100, Duration.ofMinutes(1), meterRegistry);
+    }
+
+    /**
+     * Hashes lower-cased words into a small vector, enough to tell rephrasings from unrelated questions offline.
+     */
+    private static class BagOfWordsEmbeddingModel implements EmbeddingModel {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            return Response.from(textSegments.stream().map(segment -> vectorOf(segment.text())).toList());
+        }
+
+        private Embedding vectorOf(String text) {
+            float[] vector = new float[64];
+            for (String word : text.toLowerCase().split("\\W+")) {
+                if (!word.isEmpty()) {
+                    vector[Math.floorMod(word.hashCode(), vector.length)] += 1;
+                }
+            }
+            return Embedding.from(vector);
+        }
+    }
+}
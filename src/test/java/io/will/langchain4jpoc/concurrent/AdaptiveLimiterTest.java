@@ -0,0 +1,198 @@
+package io.will.langchain4jpoc.concurrent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveLimiterTest {
+
+    // a limit that doesn't move, so that what is let through doesn't depend on timing
+    private AdaptiveLimiter limiter(int limit, int maxQueueSize, int maxQueuePerTenant, Duration maxQueueWait) {
+        return AdaptiveLimiter.create("test", true, limit, limit, limit, maxQueueSize, maxQueuePerTenant, maxQueueWait,
+                1.5, 1.0, 10, new SimpleMeterRegistry());
+    }
+
+    private AdaptiveLimiter adaptiveLimiter(int initialLimit) {
+        return AdaptiveLimiter.create("test", true, initialLimit, 1, 100, 10, 10, Duration.ofSeconds(5),
+                1.5, 1.0, 10, new SimpleMeterRegistry());
+    }
+
+    private Mono<String> recorded(List<String> started, String name) {
+        return Mono.fromCallable(() -> {
+            started.add(name);
+            return name;
+        });
+    }
+
+    @Test
+    void givenLimitReached_whenMoreWorkArrives_thenWaitsForAPlace() {
+        AdaptiveLimiter limiter = limiter(1, 10, 10, Duration.ofSeconds(5));
+        Sinks.One<String> first = Sinks.one();
+        List<String> started = new CopyOnWriteArrayList<>();
+
+        limiter.run("tenant-a", first.asMono()).subscribe();
+        StepVerifier.create(limiter.run("tenant-a", recorded(started, "second")))
+                .then(() -> {
+                    assertEquals(List.of(), started);
+                    assertEquals(1, limiter.queued());
+                })
+                .then(() -> first.tryEmitValue("first"))
+                .expectNext("second")
+                .verifyComplete();
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test
+    void givenQueueFull_whenMoreWorkArrives_thenRejectedWithRetryAfter() {
+        AdaptiveLimiter limiter = limiter(1, 1, 1, Duration.ofSeconds(5));
+        limiter.run("tenant-a", Mono.never()).subscribe();
+        limiter.run("tenant-a", Mono.never()).subscribe();
+
+        StepVerifier.create(limiter.run("tenant-b", Mono.just("rejected")))
+                .expectErrorSatisfies(e -> {
+                    assertInstanceOf(LimitExceededException.class, e);
+                    assertTrue(((LimitExceededException) e).retryAfter().toSeconds() >= 1);
+                })
+                .verify();
+    }
+
+    @Test
+    void givenTenantQueueFull_whenOtherTenantArrives_thenStillQueued() {
+        AdaptiveLimiter limiter = limiter(1, 10, 1, Duration.ofSeconds(5));
+        limiter.run("tenant-a", Mono.never()).subscribe();
+        limiter.run("tenant-a", Mono.never()).subscribe();
+
+        StepVerifier.create(limiter.run("tenant-a", Mono.just("rejected")))
+                .expectError(LimitExceededException.class)
+                .verify();
+        limiter.run("tenant-b", Mono.never()).subscribe();
+        assertEquals(2, limiter.queued());
+    }
+
+    @Test
+    void givenSeveralTenantsQueued_whenPlacesFreeUp_thenServedRoundRobin() {
+        AdaptiveLimiter limiter = limiter(1, 10, 10, Duration.ofSeconds(5));
+        Sinks.One<String> first = Sinks.one();
+        List<String> started = new CopyOnWriteArrayList<>();
+
+        limiter.run("tenant-a", first.asMono()).subscribe();
+        limiter.run("tenant-a", recorded(started, "a1")).subscribe();
+        limiter.run("tenant-a", recorded(started, "a2")).subscribe();
+        limiter.run("tenant-a", recorded(started, "a3")).subscribe();
+        limiter.run("tenant-b", recorded(started, "b1")).subscribe();
+        first.tryEmitValue("first");
+
+        assertEquals(List.of("a1", "b1", "a2", "a3"), started);
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test
+    void givenWorkQueuedTooLong_whenWaitExpires_thenRejectedAndDequeued() {
+        AdaptiveLimiter limiter = limiter(1, 10, 10, Duration.ofMillis(50));
+        limiter.run("tenant-a", Mono.never()).subscribe();
+
+        StepVerifier.create(limiter.run("tenant-a", Mono.just("late")))
+                .expectError(LimitExceededException.class)
+                .verify(Duration.ofSeconds(5));
+        assertEquals(0, limiter.queued());
+        assertEquals(1, limiter.inFlight());
+    }
+
+    @Test
+    void givenQueueFullAndWaitExpired_whenRunWithoutShedding_thenRunsOnceAPlaceFrees() {
+        AdaptiveLimiter limiter = limiter(1, 1, 1, Duration.ofMillis(50));
+        Sinks.One<String> first = Sinks.one();
+        limiter.run("tenant-a", first.asMono()).subscribe();
+        limiter.run("tenant-a", Mono.just("shed")).onErrorResume(e -> Mono.empty()).subscribe();
+
+        StepVerifier.create(limiter.runWithoutShedding("tenant-a", Mono.just("kept")))
+                .then(() -> assertEquals(2, limiter.queued()))
+                // well past the wait that shed the other one
+                .expectNoEvent(Duration.ofMillis(200))
+                .then(() -> {
+                    assertEquals(1, limiter.queued());
+                    first.tryEmitValue("first");
+                })
+                .expectNext("kept")
+                .verifyComplete();
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test
+    void givenPlaceFreedAsWaitExpires_whenRaced_thenNoPermitLeaks() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            AdaptiveLimiter limiter = limiter(1, 10, 10, Duration.ofMillis(2));
+            Sinks.One<String> first = Sinks.one();
+            limiter.run("tenant-a", first.asMono()).subscribe();
+            CountDownLatch done = new CountDownLatch(1);
+            limiter.run("tenant-a", Mono.just("second"))
+                    .doFinally(signalType -> done.countDown())
+                    .subscribe(value -> {}, e -> {});
+
+            // free the place right around the moment the second one gives up waiting
+            LockSupport.parkNanos(Duration.ofMillis(2).toNanos() + ThreadLocalRandom.current().nextLong(-300_000, 300_000));
+            first.tryEmitValue("first");
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            long deadline = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+            while (limiter.inFlight() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(0, limiter.inFlight(), "permit leaked in round " + i);
+            assertEquals(0, limiter.queued());
+        }
+    }
+
+    @Test
+    void givenLimiter_whenCreated_thenGaugesReportIt() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AdaptiveLimiter limiter = AdaptiveLimiter.create("test", true, 3, 1, 10, 10, 10, Duration.ofSeconds(5),
+                1.5, 1.0, 10, meterRegistry);
+        limiter.run("tenant-a", Mono.never()).subscribe();
+
+        assertEquals(3.0, meterRegistry.get("chat.limiter.limit").tag("limiter", "test").gauge().value());
+        assertEquals(1.0, meterRegistry.get("chat.limiter.in-flight").tag("limiter", "test").gauge().value());
+    }
+
+    @Test
+    void givenTimeouts_whenReleased_thenLimitShrinks() {
+        AdaptiveLimiter limiter = adaptiveLimiter(10);
+
+        for (int i = 0; i < 5; i++) {
+            limiter.run("tenant-a", Mono.error(new TimeoutException())).onErrorResume(e -> Mono.empty()).block();
+        }
+
+        assertTrue(limiter.limit() < 10, "limit: " + limiter.limit());
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void givenSteadyLatencyAtFullUse_whenReleased_thenLimitGrows() {
+        AdaptiveLimiter limiter = adaptiveLimiter(2);
+        Sinks.One<String> first = Sinks.one();
+        limiter.run("tenant-a", first.asMono()).subscribe();
+
+        // two calls in flight, the limit is in use and the latency stays the same
+        for (int i = 0; i < 5; i++) {
+            limiter.run("tenant-a", Mono.just("fast")).block();
+        }
+
+        assertTrue(limiter.limit() > 2, "limit: " + limiter.limit());
+        first.tryEmitValue("first");
+    }
+}
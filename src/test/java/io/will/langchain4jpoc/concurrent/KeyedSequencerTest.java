@@ -0,0 +1,75 @@
+package io.will.langchain4jpoc.concurrent;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyedSequencerTest {
+
+    private final KeyedSequencer sequencer = new KeyedSequencer();
+
+    @Test
+    void givenTurnInFlight_whenSameKeySubscribes_thenWaitsForIt() {
+        Sinks.One<String> first = Sinks.one();
+        List<String> started = new CopyOnWriteArrayList<>();
+
+        Mono<String> firstTurn = sequencer.sequence("session-1", Mono.defer(() -> {
+            started.add("first");
+            return first.asMono();
+        }));
+        Mono<String> secondTurn = sequencer.sequence("session-1", Mono.fromCallable(() -> {
+            started.add("second");
+            return "second";
+        }));
+
+        firstTurn.subscribe();
+        StepVerifier.create(secondTurn)
+                .then(() -> assertEquals(List.of("first"), started))
+                .then(() -> first.tryEmitValue("first"))
+                .expectNext("second")
+                .verifyComplete();
+        assertEquals(List.of("first", "second"), started);
+        assertEquals(0, sequencer.activeKeys());
+    }
+
+    @Test
+    void givenTurnInFlight_whenOtherKeySubscribes_thenRunsImmediately() {
+        Sinks.One<String> blocked = Sinks.one();
+        sequencer.sequence("session-1", blocked.asMono()).subscribe();
+
+        StepVerifier.create(sequencer.sequence("session-2", Mono.just("other")))
+                .expectNext("other")
+                .verifyComplete();
+    }
+
+    @Test
+    void givenWaitingTurnCancelled_whenNextTurnSubscribes_thenStillWaitsForTheRunningOne() {
+        Sinks.One<String> first = Sinks.one();
+        sequencer.sequence("session-1", first.asMono()).subscribe();
+        sequencer.sequence("session-1", Mono.just("cancelled")).subscribe().dispose();
+
+        StepVerifier.create(sequencer.sequence("session-1", Mono.just("third")))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(50))
+                .then(() -> first.tryEmitValue("first"))
+                .expectNext("third")
+                .verifyComplete();
+    }
+
+    @Test
+    void givenFailedTurn_whenNextTurnSubscribes_thenRuns() {
+        StepVerifier.create(sequencer.sequence("session-1", Mono.error(new IllegalStateException("boom"))))
+                .verifyError(IllegalStateException.class);
+
+        StepVerifier.create(sequencer.sequence("session-1", Mono.just("next")))
+                .expectNext("next")
+                .verifyComplete();
+    }
+}
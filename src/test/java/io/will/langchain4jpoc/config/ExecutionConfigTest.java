@@ -0,0 +1,66 @@
+package io.will.langchain4jpoc.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionConfigTest {
+
+    @Test
+    void givenVirtualThreadScheduler_whenManyTurnsBlock_thenMoreRunConcurrentlyThanBoundedElasticAllows() {
+        int boundedElasticCap = Runtime.getRuntime().availableProcessors() * 10;
+        int turns = boundedElasticCap + 200;
+        Scheduler scheduler = ExecutionConfig.virtualThreadScheduler();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        try {
+            Boolean allVirtual = Flux.range(0, turns)
+                    .flatMap(i -> Mono.fromCallable(() -> {
+                        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        Thread.sleep(500);
+                        inFlight.decrementAndGet();
+                        return Thread.currentThread().isVirtual();
+                    }).subscribeOn(scheduler), turns)
+                    .all(Boolean::booleanValue)
+                    .block(Duration.ofSeconds(30));
+
+            assertEquals(Boolean.TRUE, allVirtual);
+        } finally {
+            scheduler.dispose();
+        }
+
+        assertTrue(maxInFlight.get() > boundedElasticCap,
+                "expected more than " + boundedElasticCap + " turns in flight, got " + maxInFlight.get());
+    }
+
+    @Test
+    void givenVirtualThreadMode_whenShutdown_thenSchedulerDisposed() {
+        ExecutionConfig config = new ExecutionConfig();
+        ReflectionTestUtils.setField(config, "mode", ExecutionConfig.ExecutionMode.VIRTUAL_THREADS);
+        Scheduler scheduler = config.chatScheduler();
+
+        config.shutdown();
+
+        assertTrue(scheduler.isDisposed());
+    }
+
+    @Test
+    void givenBoundedElasticMode_whenShutdown_thenSharedSchedulerKept() {
+        ExecutionConfig config = new ExecutionConfig();
+        ReflectionTestUtils.setField(config, "mode", ExecutionConfig.ExecutionMode.BOUNDED_ELASTIC);
+        Scheduler scheduler = config.chatScheduler();
+
+        config.shutdown();
+
+        assertSame(Schedulers.boundedElastic(), scheduler);
+        assertFalse(scheduler.isDisposed());
+    }
+}
@@ -0,0 +1,56 @@
+package io.will.langchain4jpoc.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WebClientConfigTest {
+
+    private HttpClientProperties bind(Map<String, String> properties) {
+        return new Binder(new MapConfigurationPropertySource(properties))
+                .bindOrCreate("http", HttpClientProperties.class);
+    }
+
+    @Test
+    void givenPartialProfile_whenBound_thenLeftOutValuesUseDefaults() {
+        HttpClientProperties properties = bind(Map.of(
+                "http.clients.mem0.max-connections", "100",
+                "http.clients.mem0.response-timeout", "10s",
+                "http.clients.mem0.protocol", "h2c"));
+
+        HttpClientProperties.Profile mem0 = properties.profile("mem0");
+        assertEquals(100, mem0.getMaxConnections());
+        assertEquals(Duration.ofSeconds(10), mem0.getResponseTimeout());
+        assertEquals(HttpProtocol.H2C, mem0.getProtocol());
+        assertEquals(1000, mem0.getPendingAcquireMaxCount());
+        assertEquals(50, properties.profile("other").getMaxConnections());
+    }
+
+    @Test
+    void givenProfile_whenHttpClientBuilt_thenUsesItsPoolAndSettings() {
+        HttpClientProperties.Profile profile = new HttpClientProperties.Profile();
+        profile.setMaxConnections(7);
+        profile.setResponseTimeout(Duration.ofSeconds(4));
+        profile.setCompress(true);
+
+        ConnectionProvider connectionProvider = WebClientConfig.connectionProvider("test", profile);
+        try {
+            HttpClient httpClient = WebClientConfig.httpClient(connectionProvider, profile, uri -> WebClientConfig.ANY_URI);
+
+            assertEquals(7, connectionProvider.maxConnections());
+            assertSame(connectionProvider, httpClient.configuration().connectionProvider());
+            assertEquals(Duration.ofSeconds(4), httpClient.configuration().responseTimeout());
+            assertTrue(httpClient.configuration().isAcceptGzip());
+        } finally {
+            connectionProvider.dispose();
+        }
+    }
+}
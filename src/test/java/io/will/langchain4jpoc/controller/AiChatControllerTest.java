@@ -0,0 +1,218 @@
+package io.will.langchain4jpoc.controller;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.will.langchain4jpoc.cache.SemanticResponseCache;
+import io.will.langchain4jpoc.concurrent.AdaptiveLimiter;
+import io.will.langchain4jpoc.concurrent.KeyedSequencer;
+import io.will.langchain4jpoc.controller.AiChatController.BatchChatResponse;
+import io.will.langchain4jpoc.memory.mem0.Mem0ChatMemoryProvider;
+import io.will.langchain4jpoc.memory.mem0.Mem0ChatMemoryStore;
+import io.will.langchain4jpoc.metrics.ChatMetrics;
+import io.will.langchain4jpoc.service.AiAssistantService;
+import io.will.langchain4jpoc.streaming.TokenCoalescer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class AiChatControllerTest {
+
+    @Mock
+    private AiAssistantService aiAssistantService;
+
+    @Mock
+    private ObjectProvider<Mem0ChatMemoryProvider> mem0ChatMemoryProvider;
+
+    @Mock
+    private ObjectProvider<SemanticResponseCache> semanticResponseCache;
+
+    @Mock
+    private ObjectProvider<ChatMemoryProvider> chatMemoryProvider;
+
+    @Mock
+    private Mem0ChatMemoryStore mem0ChatMemoryStore;
+
+    private WebTestClient client(int batchConcurrency) {
+        AiChatController controller = new AiChatController(aiAssistantService, mem0ChatMemoryProvider,
+                new KeyedSequencer(), Schedulers.boundedElastic(), new ChatMetrics(new SimpleMeterRegistry()),
+                semanticResponseCache, chatMemoryProvider, AdaptiveLimiter.unlimited("llm"),
+                new TokenCoalescer(false, Duration.ofMillis(30), 512, new SimpleMeterRegistry()),
+                batchConcurrency, Duration.ofMillis(100));
+        return WebTestClient.bindToController(controller).build();
+    }
+
+    private List<BatchChatResponse> postBatch(WebTestClient client, String ndjson) {
+        return client.post().uri("/chat/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(ndjson)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(BatchChatResponse.class)
+                .getResponseBody()
+                .collectList()
+                .block(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void givenNdjsonItems_whenBatchPosted_thenNdjsonResultsCarryTheirIds() {
+        when(aiAssistantService.chat(anyString(), anyString()))
+                .thenAnswer(invocation -> "answer to " + invocation.getArgument(1));
+
+        List<BatchChatResponse> results = postBatch(client(8), """
+                {"id":"a","memoryId":"alice","message":"hello"}
+                {"memoryId":"bob","message":"hi"}
+                """);
+
+        // results come in completion order, an item without an id is known by its position
+        assertEquals(Set.of(
+                new BatchChatResponse("a", "alice", "answer to hello", null),
+                new BatchChatResponse("1", "bob", "answer to hi", null)), Set.copyOf(results));
+        assertEquals(2, results.size());
+    }
+
+    @Test
+    void givenBlankAndFailingItems_whenBatchPosted_thenReportedWhileBatchContinues() {
+        when(aiAssistantService.chat(anyString(), eq("boom"))).thenThrow(new RuntimeException("LLM unavailable"));
+        when(aiAssistantService.chat(anyString(), eq("fine"))).thenReturn("all good");
+
+        List<BatchChatResponse> results = postBatch(client(8), """
+                {"id":"blank","memoryId":"alice","message":" "}
+                {"id":"failing","memoryId":"bob","message":"boom"}
+                {"id":"ok","memoryId":"carol","message":"fine"}
+                """);
+
+        assertEquals(Set.of(
+                new BatchChatResponse("blank", "alice", null, "message is required"),
+                new BatchChatResponse("failing", "bob", null, "LLM unavailable"),
+                new BatchChatResponse("ok", "carol", "all good", null)), Set.copyOf(results));
+    }
+
+    @Test
+    void givenMoreItemsThanConcurrency_whenBatchPosted_thenAtMostConcurrencyInFlight() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(aiAssistantService.chat(anyString(), anyString())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            inFlight.decrementAndGet();
+            return "answer";
+        });
+
+        List<BatchChatResponse> results = postBatch(client(2), """
+                {"memoryId":"m0","message":"q"}
+                {"memoryId":"m1","message":"q"}
+                {"memoryId":"m2","message":"q"}
+                {"memoryId":"m3","message":"q"}
+                {"memoryId":"m4","message":"q"}
+                {"memoryId":"m5","message":"q"}
+                """);
+
+        assertEquals(6, results.size());
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    void givenItemsOfOneMemory_whenBatchPosted_thenSearchedPerItemAndAddedOnce() {
+        Mem0ChatMemoryProvider provider = mem0Provider();
+        when(mem0ChatMemoryStore.searchMessagesAsync("alice", "first"))
+                .thenReturn(Mono.just(List.of(UserMessage.from("Name is Alice"))));
+        when(mem0ChatMemoryStore.searchMessagesAsync("alice", "second"))
+                .thenReturn(Mono.just(List.of(UserMessage.from("Lives in Paris"))));
+        when(mem0ChatMemoryStore.addMessagesAsync(eq("alice"), anyList())).thenReturn(Mono.empty());
+        Map<String, List<ChatMessage>> seen = answerWithMemory(provider);
+
+        List<BatchChatResponse> results = postBatch(client(8), """
+                {"memoryId":"alice","message":"first"}
+                {"memoryId":"alice","message":"second"}
+                """);
+
+        assertEquals(List.of(
+                new BatchChatResponse("0", "alice", "answer to first", null),
+                new BatchChatResponse("1", "alice", "answer to second", null)), results);
+        // every item gets the history of its own question, and the later item sees the earlier one
+        // although nothing has been written to Mem0 yet
+        assertEquals(List.of(UserMessage.from("Name is Alice"), UserMessage.from("first")), seen.get("first"));
+        assertEquals(List.of(UserMessage.from("Lives in Paris"), UserMessage.from("first"),
+                AiMessage.from("answer to first"), UserMessage.from("second")), seen.get("second"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ChatMessage>> added = ArgumentCaptor.forClass(List.class);
+        verify(mem0ChatMemoryStore).addMessagesAsync(eq("alice"), added.capture());
+        verify(mem0ChatMemoryStore, never()).updateMessagesAsync(any(), anyList());
+        assertEquals(List.of(UserMessage.from("first"), AiMessage.from("answer to first"),
+                UserMessage.from("second"), AiMessage.from("answer to second")), added.getValue());
+    }
+
+    @Test
+    void givenItemsOfOneMemoryInConsecutiveGroups_whenBatchPosted_thenLaterGroupReadsAfterEarlierOneWrote() {
+        Mem0ChatMemoryProvider provider = mem0Provider();
+        when(mem0ChatMemoryStore.searchMessagesAsync(eq("alice"), anyString())).thenReturn(Mono.just(List.of()));
+        when(mem0ChatMemoryStore.addMessagesAsync(eq("alice"), anyList()))
+                .thenReturn(Mono.delay(Duration.ofMillis(100)).then());
+        answerWithMemory(provider);
+
+        // up to two items per group
+        List<BatchChatResponse> results = postBatch(client(2), """
+                {"memoryId":"alice","message":"first"}
+                {"memoryId":"alice","message":"second"}
+                {"memoryId":"alice","message":"third"}
+                """);
+
+        assertEquals(3, results.size());
+        InOrder inOrder = inOrder(mem0ChatMemoryStore);
+        inOrder.verify(mem0ChatMemoryStore).addMessagesAsync("alice", List.of(UserMessage.from("first"),
+                AiMessage.from("answer to first"), UserMessage.from("second"), AiMessage.from("answer to second")));
+        inOrder.verify(mem0ChatMemoryStore).searchMessagesAsync("alice", "third");
+        inOrder.verify(mem0ChatMemoryStore).addMessagesAsync("alice",
+                List.of(UserMessage.from("third"), AiMessage.from("answer to third")));
+    }
+
+    private Mem0ChatMemoryProvider mem0Provider() {
+        Mem0ChatMemoryProvider provider = new Mem0ChatMemoryProvider(mem0ChatMemoryStore, 100,
+                Duration.ofMinutes(30), Duration.ofSeconds(5));
+        when(mem0ChatMemoryProvider.getIfAvailable()).thenReturn(provider);
+        return provider;
+    }
+
+    /**
+     * Answers like the AI service would with the memory of a turn, and records what the memory gave it.
+     */
+    private Map<String, List<ChatMessage>> answerWithMemory(Mem0ChatMemoryProvider provider) {
+        Map<String, List<ChatMessage>> seen = new ConcurrentHashMap<>();
+        when(aiAssistantService.chat(anyString(), anyString())).thenAnswer(invocation -> {
+            String query = invocation.getArgument(1);
+            ChatMemory memory = provider.get(invocation.getArgument(0));
+            memory.add(UserMessage.from(query));
+            seen.put(query, memory.messages());
+            memory.add(AiMessage.from("answer to " + query));
+            return "answer to " + query;
+        });
+        return seen;
+    }
+}
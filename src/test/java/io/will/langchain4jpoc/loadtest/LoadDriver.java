@@ -0,0 +1,162 @@
+package io.will.langchain4jpoc.loadtest;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Open-loop load generator for {@code /chat} and {@code /chat/streaming}: requests are started at the
+ * target rate whether or not earlier ones have finished, so a saturated server shows up as growing
+ * latency and errors rather than as a lower request rate. Requests are spread over a fixed number of sessions.
+ */
+public class LoadDriver {
+
+    public enum Endpoint {
+        CHAT("/chat"),
+        STREAMING("/chat/streaming");
+
+        private final String path;
+
+        Endpoint(String path) {
+            this.path = path;
+        }
+    }
+
+    public record Report(Endpoint endpoint, double targetRps, long requests, long errors, double achievedRps,
+                         Duration p50, Duration p99, Duration ttftP50, Duration ttftP99) {
+
+        boolean sustains(double target, Duration p99Slo) {
+            return errors <= requests / 100 && achievedRps >= target * 0.9 && p99.compareTo(p99Slo) <= 0;
+        }
+
+        @Override
+        public String toString() {
+            String line = String.format("%-9s target %7.1f rps, achieved %7.1f rps, %d requests, %d errors, p50 %d ms, p99 %d ms",
+                    endpoint, targetRps, achievedRps, requests, errors, p50.toMillis(), p99.toMillis());
+            return endpoint == Endpoint.STREAMING
+                    ? line + String.format(", TTFT p50 %d ms, p99 %d ms", ttftP50.toMillis(), ttftP99.toMillis())
+                    : line;
+        }
+    }
+
+    private final WebClient webClient;
+    private final int sessions;
+    private final Duration timeout;
+
+    public LoadDriver(String baseUrl, int sessions, Duration timeout) {
+        ConnectionProvider connections = ConnectionProvider.builder("load-driver")
+                .maxConnections(5_000)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.webClient = WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                .build();
+        this.sessions = sessions;
+        this.timeout = timeout;
+    }
+
+    public Report run(Endpoint endpoint, double rps, Duration duration) {
+        long total = Math.max(1, (long) (rps * duration.toMillis() / 1000.0));
+        Latencies latencies = new Latencies();
+        Latencies timesToFirstToken = new Latencies();
+        AtomicLong errors = new AtomicLong();
+
+        long start = System.nanoTime();
+        Flux.interval(Duration.ofNanos((long) (1_000_000_000L / rps)))
+                .take(total)
+                .flatMap(i -> send(endpoint, i, latencies, timesToFirstToken)
+                        .onErrorResume(e -> {
+                            errors.incrementAndGet();
+                            return Mono.empty();
+                        }), Integer.MAX_VALUE)
+                .blockLast(duration.plus(timeout).plusSeconds(10));
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        return new Report(endpoint, rps, total, errors.get(), (total - errors.get()) / elapsedSeconds,
+                latencies.percentile(50), latencies.percentile(99),
+                timesToFirstToken.percentile(50), timesToFirstToken.percentile(99));
+    }
+
+    /**
+     * Raises the rate by {@code factor} per step until a step misses the p99 objective, drops more than 1%
+     * of its requests, or falls short of the target rate, and returns the last step that held.
+     */
+    public Report findMaxSustained(Endpoint endpoint, double startRps, double factor, double maxRps,
+                                   Duration stepDuration, Duration p99Slo) {
+        Report sustained = null;
+        for (double rps = startRps; rps <= maxRps; rps *= factor) {
+            Report report = run(endpoint, rps, stepDuration);
+            System.out.println("  step: " + report);
+            if (!report.sustains(rps, p99Slo)) {
+                break;
+            }
+            sustained = report;
+        }
+        return sustained;
+    }
+
+    private Mono<Void> send(Endpoint endpoint, long i, Latencies latencies, Latencies timesToFirstToken) {
+        Map<String, String> body = Map.of(
+                "memoryId", "load-" + (i % sessions),
+                "message", "Question " + i + ": what do you remember about me?");
+
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            WebClient.RequestBodySpec request = webClient.post().uri(endpoint.path).contentType(MediaType.APPLICATION_JSON);
+            if (endpoint == Endpoint.CHAT) {
+                return request.bodyValue(body)
+                        .retrieve()
+                        .bodyToMono(String.class)
+                        .timeout(timeout)
+                        .doOnSuccess(response -> latencies.record(System.nanoTime() - start))
+                        .then();
+            }
+            boolean[] first = {true};
+            return request.accept(MediaType.TEXT_EVENT_STREAM)
+                    .bodyValue(body)
+                    .retrieve()
+                    .bodyToFlux(String.class)
+                    .timeout(timeout)
+                    .doOnNext(token -> {
+                        if (first[0]) {
+                            first[0] = false;
+                            timesToFirstToken.record(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnComplete(() -> latencies.record(System.nanoTime() - start))
+                    .then();
+        });
+    }
+
+    private static final class Latencies {
+        private long[] values = new long[1024];
+        private int size;
+
+        synchronized void record(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        synchronized Duration percentile(double percentile) {
+            if (size == 0) {
+                return Duration.ZERO;
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+            return Duration.ofNanos(sorted[Math.max(0, index)]);
+        }
+    }
+}
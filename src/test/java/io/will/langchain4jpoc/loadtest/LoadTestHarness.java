@@ -0,0 +1,68 @@
+package io.will.langchain4jpoc.loadtest;
+
+import io.will.langchain4jpoc.LangChain4jSpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Runs the application against local Mem0 and OpenAI-compatible stubs and puts it under load, once per
+ * memory provider given as argument (default: mem0 and compression). Settings are system properties:
+ * <ul>
+ *     <li>{@code stub.mem0.latency-ms}, {@code stub.llm.latency-ms}: delay before a stub answers</li>
+ *     <li>{@code stub.llm.tokens-per-second}, {@code stub.llm.tokens}: speed and length of LLM answers</li>
+ *     <li>{@code load.rps}, {@code load.duration-seconds}, {@code load.sessions}: the load itself</li>
+ *     <li>{@code load.find-max}: step the rate up by half until {@code load.p99-slo-ms} or the error
+ *     budget is missed, and report the highest rate that held</li>
+ * </ul>
+ */
+public class LoadTestHarness {
+
+    public static void main(String[] args) {
+        Duration mem0Latency = Duration.ofMillis(Long.getLong("stub.mem0.latency-ms", 50));
+        Duration llmLatency = Duration.ofMillis(Long.getLong("stub.llm.latency-ms", 300));
+        int tokensPerSecond = Integer.getInteger("stub.llm.tokens-per-second", 50);
+        int tokens = Integer.getInteger("stub.llm.tokens", 40);
+        double rps = Double.parseDouble(System.getProperty("load.rps", "10"));
+        Duration duration = Duration.ofSeconds(Long.getLong("load.duration-seconds", 30));
+        int sessions = Integer.getInteger("load.sessions", 100);
+        boolean findMax = Boolean.getBoolean("load.find-max");
+        Duration p99Slo = Duration.ofMillis(Long.getLong("load.p99-slo-ms", 5_000));
+        List<String> providers = args.length > 0 ? List.of(args) : List.of("mem0", "compression");
+
+        try (Mem0StubServer mem0 = new Mem0StubServer(mem0Latency);
+             OpenAiStubServer llm = new OpenAiStubServer(llmLatency, tokensPerSecond, tokens)) {
+            for (String provider : providers) {
+                try (ConfigurableApplicationContext app = start(provider, mem0, llm)) {
+                    int port = app.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+                    LoadDriver driver = new LoadDriver("http://localhost:" + port, sessions, Duration.ofSeconds(60));
+
+                    System.out.println("== " + provider);
+                    for (LoadDriver.Endpoint endpoint : LoadDriver.Endpoint.values()) {
+                        LoadDriver.Report report = findMax
+                                ? driver.findMaxSustained(endpoint, rps, 1.5, 10_000, duration, p99Slo)
+                                : driver.run(endpoint, rps, duration);
+                        System.out.println((findMax ? "max sustained: " : "") + (report != null ? report : endpoint + " did not hold " + rps + " rps"));
+                    }
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String provider, Mem0StubServer mem0, OpenAiStubServer llm) {
+        // command line arguments, so that they win over application.properties
+        return new SpringApplicationBuilder(LangChain4jSpringBootApplication.class).run(
+                "--server.port=0",
+                "--chat.memory.provider=" + provider,
+                "--langchain4j.open-ai.chat-model.base-url=" + llm.baseUrl(),
+                "--langchain4j.open-ai.chat-model.api-key=stub",
+                "--langchain4j.open-ai.streaming-chat-model.base-url=" + llm.baseUrl(),
+                "--langchain4j.open-ai.streaming-chat-model.api-key=stub",
+                "--mem0.api.base-url=" + mem0.baseUrl(),
+                "--mem0.api.key=stub",
+                "--logging.level.root=WARN",
+                "--logging.level.io.will.langchain4jpoc=WARN");
+    }
+}
@@ -0,0 +1,124 @@
+package io.will.langchain4jpoc.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Local stand-in for the Mem0 memory endpoints used by {@code Mem0Client}: add (v1), get and search (v2).
+ * Memories are kept per user in memory, search returns the latest {@code top_k} of them.
+ */
+public class Mem0StubServer implements AutoCloseable {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, List<String>> memories = new ConcurrentHashMap<>();
+    private final Duration latency;
+    private final DisposableServer server;
+
+    public Mem0StubServer(Duration latency) {
+        this.latency = latency;
+        this.server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.route(request -> request.method() == HttpMethod.POST, this::handle))
+                .bindNow();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.port();
+    }
+
+    private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        String path = normalizedPath(request.uri());
+        return request.receive().aggregate().asByteArray()
+                .defaultIfEmpty(new byte[0])
+                .map(body -> {
+                    try {
+                        JsonNode json = objectMapper.readTree(body);
+                        Object result = switch (path) {
+                            case "/v1/memories" -> add(json);
+                            case "/v2/memories" -> get(json);
+                            case "/v2/memories/search" -> search(json);
+                            default -> null;
+                        };
+                        return result != null ? objectMapper.writeValueAsBytes(result) : new byte[0];
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("Invalid request to " + path, e);
+                    }
+                })
+                .delayElement(latency)
+                .flatMap(body -> body.length == 0
+                        ? response.status(HttpResponseStatus.NOT_FOUND).send().then()
+                        : response.header("Content-Type", "application/json").sendByteArray(Mono.just(body)).then());
+    }
+
+    static String normalizedPath(String uri) {
+        int query = uri.indexOf('?');
+        String path = query >= 0 ? uri.substring(0, query) : uri;
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private ArrayNode add(JsonNode request) {
+        String userId = request.path("user_id").asText();
+        List<String> userMemories = memories.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>());
+        ArrayNode result = objectMapper.createArrayNode();
+        for (JsonNode message : request.path("messages")) {
+            String content = message.path("content").asText();
+            userMemories.add(content);
+            result.addObject()
+                    .put("id", UUID.randomUUID().toString())
+                    .put("event", "ADD")
+                    .putObject("data").put("memory", content);
+        }
+        return result;
+    }
+
+    private ArrayNode get(JsonNode request) {
+        return toMemories(userMemories(request), Integer.MAX_VALUE);
+    }
+
+    private ArrayNode search(JsonNode request) {
+        return toMemories(userMemories(request), request.path("top_k").asInt(3));
+    }
+
+    private List<String> userMemories(JsonNode request) {
+        for (JsonNode condition : request.path("filters").path("AND")) {
+            if (condition.has("user_id")) {
+                return memories.getOrDefault(condition.get("user_id").asText(), List.of());
+            }
+        }
+        return List.of();
+    }
+
+    private ArrayNode toMemories(List<String> userMemories, int limit) {
+        ArrayNode result = objectMapper.createArrayNode();
+        int from = Math.max(0, userMemories.size() - limit);
+        for (String memory : userMemories.subList(from, userMemories.size())) {
+            ObjectNode node = result.addObject();
+            node.put("id", UUID.randomUUID().toString());
+            node.put("memory", memory);
+            node.put("score", 0.5);
+            node.put("updated_at", Instant.now().toString());
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+}
@@ -0,0 +1,46 @@
+package io.will.langchain4jpoc.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.will.langchain4jpoc.memory.mem0.Mem0Client;
+import io.will.langchain4jpoc.memory.mem0.Mem0Memory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Mem0StubServerTest {
+
+    private Mem0StubServer server;
+    private Mem0Client mem0Client;
+
+    @BeforeEach
+    void setUp() {
+        server = new Mem0StubServer(Duration.ZERO);
+        mem0Client = new Mem0Client("stub", server.baseUrl(), WebClient.create(), new ObjectMapper(), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void givenAddedMemories_whenSearch_thenReturnsLatestTopKOfTheUser() {
+        mem0Client.addMemory("user123", "test-app", List.of(new Mem0Client.Message("user", "Hello, my name is Will")));
+        mem0Client.addMemory("user123", "test-app", List.of(new Mem0Client.Message("user", "I live in Guangzhou")));
+        mem0Client.addMemory("other", "test-app", List.of(new Mem0Client.Message("user", "I live in Beijing")));
+
+        List<Mem0Memory> memories = mem0Client.searchMemories("Where do I live?", "user123", "test-app", 1);
+
+        assertEquals(1, memories.size());
+        assertEquals("I live in Guangzhou", memories.getFirst().memory());
+        assertEquals(0.5, memories.getFirst().score());
+        assertEquals(2, mem0Client.getMemories("user123", "test-app").size());
+    }
+}
@@ -0,0 +1,137 @@
+package io.will.langchain4jpoc.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.time.Duration;
+
+/**
+ * Local stand-in for an OpenAI-compatible {@code /chat/completions} endpoint, plain and streaming.
+ * Every answer has the same number of tokens. The first one arrives after {@code latency}, the
+ * rest at {@code tokensPerSecond}.
+ */
+public class OpenAiStubServer implements AutoCloseable {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Duration latency;
+    private final Duration tokenInterval;
+    private final int tokens;
+    private final DisposableServer server;
+
+    public OpenAiStubServer(Duration latency, int tokensPerSecond, int tokens) {
+        this.latency = latency;
+        this.tokenInterval = Duration.ofNanos(1_000_000_000L / tokensPerSecond);
+        this.tokens = tokens;
+        this.server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.route(request -> request.method() == HttpMethod.POST, this::handle))
+                .bindNow();
+    }
+
+    /**
+     * The value for {@code langchain4j.open-ai.*.base-url}.
+     */
+    public String baseUrl() {
+        return "http://localhost:" + server.port() + "/v1";
+    }
+
+    private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        if (!Mem0StubServer.normalizedPath(request.uri()).endsWith("/chat/completions")) {
+            return response.status(HttpResponseStatus.NOT_FOUND).send().then();
+        }
+        return request.receive().aggregate().asByteArray()
+                .flatMap(body -> {
+                    JsonNode json;
+                    try {
+                        json = objectMapper.readTree(body);
+                    } catch (Exception e) {
+                        return response.status(HttpResponseStatus.BAD_REQUEST).send().then();
+                    }
+                    return json.path("stream").asBoolean(false) ? stream(response) : complete(response);
+                });
+    }
+
+    private Mono<Void> complete(HttpServerResponse response) {
+        // a non-streaming answer arrives when the last token would have
+        Duration delay = latency.plus(tokenInterval.multipliedBy(tokens - 1L));
+        ObjectNode completion = objectMapper.createObjectNode()
+                .put("id", "chatcmpl-stub")
+                .put("object", "chat.completion")
+                .put("created", System.currentTimeMillis() / 1000)
+                .put("model", "stub");
+        ObjectNode choice = completion.putArray("choices").addObject();
+        choice.put("index", 0);
+        choice.putObject("message").put("role", "assistant").put("content", answer());
+        choice.put("finish_reason", "stop");
+        usage(completion);
+
+        return Mono.delay(delay)
+                .then(response.header("Content-Type", "application/json")
+                        .sendString(Mono.just(completion.toString()))
+                        .then());
+    }
+
+    private Mono<Void> stream(HttpServerResponse response) {
+        Flux<String> events = Flux.interval(Duration.ZERO, tokenInterval)
+                .take(tokens)
+                .map(i -> chunk(token(i.intValue()), null))
+                .concatWith(Flux.just(chunk(null, "stop"), "[DONE]"))
+                .map(data -> "data: " + data + "\n\n");
+
+        return Mono.delay(latency)
+                .then(response.header("Content-Type", "text/event-stream")
+                        .sendString(events)
+                        .then());
+    }
+
+    private String chunk(String content, String finishReason) {
+        ObjectNode chunk = objectMapper.createObjectNode()
+                .put("id", "chatcmpl-stub")
+                .put("object", "chat.completion.chunk")
+                .put("created", System.currentTimeMillis() / 1000)
+                .put("model", "stub");
+        ObjectNode choice = chunk.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode delta = choice.putObject("delta");
+        if (content != null) {
+            delta.put("content", content);
+        }
+        if (finishReason != null) {
+            choice.put("finish_reason", finishReason);
+            usage(chunk);
+        }
+        return chunk.toString();
+    }
+
+    private void usage(ObjectNode node) {
+        node.putObject("usage")
+                .put("prompt_tokens", 100)
+                .put("completion_tokens", tokens)
+                .put("total_tokens", 100 + tokens);
+    }
+
+    private String answer() {
+        StringBuilder answer = new StringBuilder();
+        for (int i = 0; i < tokens; i++) {
+            answer.append(token(i));
+        }
+        return answer.toString();
+    }
+
+    private static String token(int i) {
+        return "token" + i + " ";
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+}
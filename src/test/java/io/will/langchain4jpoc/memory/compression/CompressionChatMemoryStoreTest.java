@@ -0,0 +1,192 @@
+package io.will.langchain4jpoc.memory.compression;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageType;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CompressionChatMemoryStoreTest {
+
+    @Mock
+    private ChatModel chatModel;
+
+    private CompressionChatMemoryStore store;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    private CompressionChatMemoryStore newStore(boolean async) {
+        CompressionChatMemoryStore newStore = new CompressionChatMemoryStore(
+                new InMemoryChatMemoryStore(), chatModel, new CharacterRatioTokenCountEstimator(4), async, 1, 10, meterRegistry);
+        ReflectionTestUtils.setField(newStore, "threshold", 3);
+        return newStore;
+    }
+
+    private static List<ChatMessage> conversation(int turns) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < turns; i++) {
+            messages.add(UserMessage.from("question " + i));
+            messages.add(AiMessage.from("answer " + i));
+        }
+        return messages;
+    }
+
+    @Test
+    void givenHistoryAboveThreshold_whenUpdateMessages_thenReplacesHistoryWithSummary() {
+        store = newStore(false);
+        when(chatModel.chat(anyString())).thenReturn("a short summary");
+
+        store.updateMessages("user123", conversation(2));
+
+        List<ChatMessage> messages = store.getMessages("user123");
+        assertEquals(1, messages.size());
+        assertEquals(ChatMessageType.SYSTEM, messages.getFirst().type());
+        assertTrue(((SystemMessage) messages.getFirst()).text().endsWith("a short summary"));
+        assertEquals(1, meterRegistry.get("compression.summarizations").tags("outcome", "success").timer().count());
+        assertEquals(4, meterRegistry.get("compression.messages").tags("stage", "before").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("compression.messages").tags("stage", "after").summary().totalAmount());
+    }
+
+    @Test
+    void givenAsyncMode_whenUpdateMessages_thenKeepsRawMessagesUntilSummaryIsReady() throws Exception {
+        store = newStore(true);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch summarized = new CountDownLatch(1);
+        when(chatModel.chat(anyString())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            summarized.countDown();
+            return "a short summary";
+        });
+
+        List<ChatMessage> history = conversation(2);
+        store.updateMessages("user123", history);
+        assertEquals(4, store.getMessages("user123").size());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // a later turn while the summary is still in flight doesn't trigger a second summarization
+        List<ChatMessage> longer = new ArrayList<>(history);
+        longer.add(UserMessage.from("question 2"));
+        store.updateMessages("user123", longer);
+
+        release.countDown();
+        assertTrue(summarized.await(5, TimeUnit.SECONDS));
+        verify(chatModel, timeout(5000).times(1)).chat(anyString());
+
+        List<ChatMessage> messages = waitForSize(store, "user123", 2);
+        assertEquals(ChatMessageType.SYSTEM, messages.get(0).type());
+        assertEquals("question 2", ((UserMessage) messages.get(1)).singleText());
+    }
+
+    @Test
+    void givenIncrementalMode_whenUpdateMessages_thenKeepsRecentTurnsVerbatim() {
+        store = newStore(false);
+        ReflectionTestUtils.setField(store, "mode", CompressionChatMemoryStore.CompressionMode.INCREMENTAL);
+        ReflectionTestUtils.setField(store, "keepRecentTurns", 1);
+        ArgumentCaptor<String> prompt = ArgumentCaptor.forClass(String.class);
+        when(chatModel.chat(prompt.capture())).thenReturn("a short summary");
+
+        store.updateMessages("user123", conversation(3));
+
+        List<ChatMessage> messages = store.getMessages("user123");
+        assertEquals(3, messages.size());
+        assertEquals(ChatMessageType.SYSTEM, messages.get(0).type());
+        assertEquals("question 2", ((UserMessage) messages.get(1)).singleText());
+        assertEquals("answer 2", ((AiMessage) messages.get(2)).text());
+        assertTrue(prompt.getValue().contains("User: question 1"));
+        assertFalse(prompt.getValue().contains("question 2"));
+    }
+
+    @Test
+    void givenTokenTrigger_whenHistoryIsSmall_thenSkipsCompressionRegardlessOfMessageCount() {
+        store = newStore(false);
+        ReflectionTestUtils.setField(store, "trigger", CompressionChatMemoryStore.CompressionTrigger.TOKENS);
+        ReflectionTestUtils.setField(store, "maxTokens", 1000);
+
+        store.updateMessages("user123", conversation(4));
+
+        assertEquals(8, store.getMessages("user123").size());
+        assertTrue(store.tokenFootprint("user123") > 0);
+        verifyNoInteractions(chatModel);
+    }
+
+    @Test
+    void givenTokenTrigger_whenHistoryExceedsBudget_thenCompresses() {
+        store = newStore(false);
+        ReflectionTestUtils.setField(store, "trigger", CompressionChatMemoryStore.CompressionTrigger.TOKENS);
+        ReflectionTestUtils.setField(store, "maxTokens", 50);
+        when(chatModel.chat(anyString())).thenReturn("a short summary");
+
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(UserMessage.from("Please review this document: " + "lorem ipsum ".repeat(50)));
+        messages.add(AiMessage.from("Done"));
+        store.updateMessages("user123", messages);
+
+        assertEquals(1, store.getMessages("user123").size());
+    }
+
+    @Test
+    void givenSummaryInFlight_whenMessageAdded_thenNotBlockedAndKeptAfterSwap() throws Exception {
+        store = newStore(false);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(chatModel.chat(anyString())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "a short summary";
+        });
+        List<ChatMessage> history = conversation(1);
+        history.add(UserMessage.from("question 1"));
+        store.updateMessages("user123", history);
+
+        CompletableFuture<Void> summarizing = CompletableFuture.runAsync(
+                () -> store.addMessage("user123", AiMessage.from("answer 1")));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> store.addMessage("user123", UserMessage.from("question 2")));
+        release.countDown();
+        summarizing.get(5, TimeUnit.SECONDS);
+
+        List<ChatMessage> messages = store.getMessages("user123");
+        assertEquals(2, messages.size());
+        assertEquals(ChatMessageType.SYSTEM, messages.get(0).type());
+        assertEquals("question 2", ((UserMessage) messages.get(1)).singleText());
+    }
+
+    private static List<ChatMessage> waitForSize(CompressionChatMemoryStore store, Object memoryId, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        List<ChatMessage> messages = store.getMessages(memoryId);
+        while (messages.size() != size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            messages = store.getMessages(memoryId);
+        }
+        return messages;
+    }
+}
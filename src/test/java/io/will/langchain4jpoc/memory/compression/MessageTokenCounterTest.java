@@ -0,0 +1,35 @@
+package io.will.langchain4jpoc.memory.compression;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class MessageTokenCounterTest {
+
+    @Mock
+    private TokenCountEstimator estimator;
+
+    @Test
+    void givenHistoryDecodedAgain_whenCounted_thenEstimatedOnlyOnce() {
+        when(estimator.estimateTokenCountInMessage(any(ChatMessage.class))).thenReturn(5);
+        MessageTokenCounter counter = new MessageTokenCounter(estimator);
+
+        // stores that decode on every read hand out new but equal instances
+        assertEquals(10, counter.count(List.of(UserMessage.from("Hello"), AiMessage.from("Hi there"))));
+        assertEquals(10, counter.count(List.of(UserMessage.from("Hello"), AiMessage.from("Hi there"))));
+
+        verify(estimator, times(2)).estimateTokenCountInMessage(any(ChatMessage.class));
+    }
+}
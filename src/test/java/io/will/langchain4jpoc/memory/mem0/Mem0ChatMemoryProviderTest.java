@@ -0,0 +1,109 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class Mem0ChatMemoryProviderTest {
+
+    @Mock
+    private Mem0ChatMemoryStore store;
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    // maintenance runs on the calling thread so that evictions are visible right away
+    private Mem0ChatMemoryProvider provider(long maxSize, Duration idleTimeout) {
+        return new Mem0ChatMemoryProvider(store, maxSize, idleTimeout, Duration.ofMillis(50), nanos::get, Runnable::run);
+    }
+
+    @Test
+    void givenMoreSessionsThanMaxSize_whenGet_thenEvictsDownToMaxSize() {
+        Mem0ChatMemoryProvider provider = provider(2, Duration.ofMinutes(30));
+
+        for (int i = 0; i < 5; i++) {
+            provider.get("user" + i);
+        }
+
+        assertEquals(2, provider.residentCount());
+        assertEquals(3, provider.evictionCount());
+    }
+
+    @Test
+    void givenIdleSession_whenTimeoutPasses_thenExpiredAndRecreated() {
+        Mem0ChatMemoryProvider provider = provider(100, Duration.ofMinutes(30));
+        ChatMemory idle = provider.get("user1");
+        nanos.addAndGet(Duration.ofMinutes(20).toNanos());
+        ChatMemory active = provider.get("user2");
+
+        nanos.addAndGet(Duration.ofMinutes(20).toNanos());
+
+        assertEquals(1, provider.residentCount());
+        assertEquals(1, provider.evictionCount());
+        assertSame(active, provider.get("user2"));
+        assertNotSame(idle, provider.get("user1"));
+    }
+
+    @Test
+    void givenEqualSystemMessages_whenAddedToSessions_thenShareOneInstance() {
+        Mem0ChatMemoryProvider provider = provider(100, Duration.ofMinutes(30));
+        ChatMemory first = provider.get("user1");
+        ChatMemory second = provider.get("user2");
+
+        first.add(new SystemMessage("You are a helpful assistant"));
+        second.add(new SystemMessage("You are a helpful assistant"));
+
+        assertSame(first.messages().getFirst(), second.messages().getFirst());
+    }
+
+    @Test
+    void givenEvictedSessionWithPendingPrefetch_whenGetAgain_thenKeepsItUntilTurnEnds() {
+        when(store.searchMessagesAsync("user0", "What's my name?")).thenReturn(Mono.just(List.of()));
+        Mem0ChatMemoryProvider provider = provider(1, Duration.ofMinutes(30));
+        Object turn = new Object();
+        ChatMemory pending = provider.get("user0");
+        provider.prefetch("user0", turn, "What's my name?");
+
+        provider.get("user1");
+        assertEquals(1, provider.evictionCount());
+        assertSame(pending, provider.get("user0"));
+
+        provider.endTurn("user0", turn);
+        provider.get("user1");
+        assertNotSame(pending, provider.get("user0"));
+    }
+
+    @Test
+    void givenWriteInFlight_whenSessionEvictedAndRecreated_thenNextWriteWaitsForIt() {
+        Sinks.Empty<Void> firstWrite = Sinks.empty();
+        when(store.updateMessagesAsync(eq("user0"), anyList()))
+                .thenReturn(firstWrite.asMono())
+                .thenReturn(Mono.empty());
+        Mem0ChatMemoryProvider provider = provider(1, Duration.ofMinutes(30));
+        ChatMemory evicted = provider.get("user0");
+        evicted.add(UserMessage.from("first"));
+
+        provider.get("user1");
+        ChatMemory recreated = provider.get("user0");
+        assertNotSame(evicted, recreated);
+        recreated.add(UserMessage.from("second"));
+        verify(store, times(1)).updateMessagesAsync(eq("user0"), anyList());
+
+        firstWrite.tryEmitEmpty();
+        verify(store).updateMessagesAsync("user0", List.of(UserMessage.from("second")));
+    }
+}
@@ -1,15 +1,20 @@
 package io.will.langchain4jpoc.memory.mem0;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.UserMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,6 +35,11 @@ public class Mem0ChatMemoryStoreTest {
         objectMapper = new ObjectMapper();
     }
 
+    private List<Mem0Memory> memories(String json) throws Exception {
+        // decoded the way the client decodes responses, unknown fields are skipped
+        return objectMapper.readValue(json, new TypeReference<>() {});
+    }
+
     @Test
     void givenArrayResponse_whenGetMessages_thenReturnsParsedMessages() throws Exception {
         Object memoryId = "user123";
@@ -60,7 +70,7 @@ public class Mem0ChatMemoryStoreTest {
             ]
             """;
 
-        JsonNode response = objectMapper.readTree(responseJson);
+        List<Mem0Memory> response = memories(responseJson);
         when(mem0Client.getMemories("user123", "test-app")).thenReturn(response);
 
         List<ChatMessage> messages = store.getMessages(memoryId);
@@ -76,7 +86,7 @@ public class Mem0ChatMemoryStoreTest {
     void givenEmptyArrayResponse_whenGetMessages_thenReturnsEmptyList() throws Exception {
         Object memoryId = "user123";
         String responseJson = "[]";
-        JsonNode response = objectMapper.readTree(responseJson);
+        List<Mem0Memory> response = memories(responseJson);
         when(mem0Client.getMemories("user123", "test-app")).thenReturn(response);
 
         List<ChatMessage> messages = store.getMessages(memoryId);
@@ -105,7 +115,7 @@ public class Mem0ChatMemoryStoreTest {
             ]
             """;
 
-        JsonNode response = objectMapper.readTree(responseJson);
+        List<Mem0Memory> response = memories(responseJson);
         when(mem0Client.searchMemories(query, "user123", "test-app", 3)).thenReturn(response);
 
         List<ChatMessage> messages = store.searchMessages(memoryId, query);
@@ -121,7 +131,7 @@ public class Mem0ChatMemoryStoreTest {
         Object memoryId = "user123";
         String query = "unknown query";
         String responseJson = "[]";
-        JsonNode response = objectMapper.readTree(responseJson);
+        List<Mem0Memory> response = memories(responseJson);
         when(mem0Client.searchMemories(query, "user123", "test-app", 3)).thenReturn(response);
 
         List<ChatMessage> messages = store.searchMessages(memoryId, query);
@@ -129,5 +139,97 @@ public class Mem0ChatMemoryStoreTest {
         assertNotNull(messages);
         assertTrue(messages.isEmpty());
     }
-}
 
+    @Test
+    void givenArrayResponse_whenSearchMessagesAsync_thenEmitsMatchingMessages() throws Exception {
+        Object memoryId = "user123";
+        String query = "What is my name?";
+        String responseJson = """
+            [
+              {
+                "id": "3c90c3cc-0d44-4b50-8888-8dd25736052a",
+                "memory": "Hello, my name is Will",
+                "user_id": "user123"
+              }
+            ]
+            """;
+
+        List<Mem0Memory> response = memories(responseJson);
+        when(mem0Client.searchMemoriesAsync(query, "user123", "test-app", 3)).thenReturn(Mono.just(response));
+
+        StepVerifier.create(store.searchMessagesAsync(memoryId, query))
+                .assertNext(messages -> {
+                    assertEquals(1, messages.size());
+                    assertEquals("Hello, my name is Will", ((UserMessage) messages.getFirst()).singleText());
+                })
+                .verifyComplete();
+        verify(mem0Client, never()).searchMemories(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void givenCachedSearch_whenSearchAgainAfterWrite_thenCallsMem0Again() throws Exception {
+        Mem0MemoryCache cache = new Mem0MemoryCache(true, 100, Duration.ofMinutes(1));
+        Mem0ChatMemoryStore cachingStore = new Mem0ChatMemoryStore(mem0Client, "test-app", 3, cache,
+                Mem0WriteBehindQueue.disabled(), new SimpleMeterRegistry());
+        List<Mem0Memory> response = memories("[{\"memory\": \"Hello, my name is Will\"}]");
+        when(mem0Client.searchMemories(any(), eq("user123"), eq("test-app"), eq(3))).thenReturn(response);
+
+        cachingStore.searchMessages("user123", "What is my name?");
+        List<ChatMessage> cached = cachingStore.searchMessages("user123", "  what is   my name? ");
+
+        assertEquals(1, cached.size());
+        verify(mem0Client, times(1)).searchMemories(any(), eq("user123"), eq("test-app"), eq(3));
+        assertEquals(1, cache.stats().hitCount());
+
+        cachingStore.updateMessages("user123", List.of(UserMessage.from("I live in Guangzhou")));
+        cachingStore.searchMessages("user123", "What is my name?");
+
+        verify(mem0Client, times(2)).searchMemories(any(), eq("user123"), eq("test-app"), eq(3));
+    }
+
+    @Test
+    void givenCachedSearch_whenSearchAgain_thenRecordsReadSources() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Mem0ChatMemoryStore cachingStore = new Mem0ChatMemoryStore(mem0Client, "test-app", 3,
+                new Mem0MemoryCache(true, 100, Duration.ofMinutes(1)), Mem0WriteBehindQueue.disabled(), meterRegistry);
+        List<Mem0Memory> response = memories("[{\"memory\": \"Hello, my name is Will\"}]");
+        when(mem0Client.searchMemories(any(), eq("user123"), eq("test-app"), eq(3))).thenReturn(response);
+
+        cachingStore.searchMessages("user123", "What is my name?");
+        cachingStore.searchMessages("user123", "What is my name?");
+
+        assertEquals(1, meterRegistry.get("mem0.store.reads").tags("operation", "search", "source", "mem0").timer().count());
+        assertEquals(1, meterRegistry.get("mem0.store.reads").tags("operation", "search", "source", "cache").timer().count());
+        assertEquals(2, meterRegistry.get("mem0.store.read.messages").summary().totalAmount());
+    }
+
+    @Test
+    void givenEarlierSearch_whenMem0Unavailable_thenFallsBackToLastKnownHistory() throws Exception {
+        List<Mem0Memory> response = memories("[{\"memory\": \"Hello, my name is Will\"}]");
+        when(mem0Client.searchMemoriesAsync(any(), eq("user123"), eq("test-app"), eq(3)))
+                .thenReturn(Mono.just(response))
+                .thenReturn(Mono.error(new Mem0UnavailableException("Mem0 circuit breaker is open")));
+
+        store.searchMessagesAsync("user123", "What is my name?").block();
+
+        StepVerifier.create(store.searchMessagesAsync("user123", "Where do I live?"))
+                .assertNext(messages -> assertEquals(List.of(UserMessage.from("Hello, my name is Will")), messages))
+                .verifyComplete();
+    }
+
+    @Test
+    void givenSeveralTurns_whenAddMessagesAsync_thenWritesUserAndAiMessagesInOneAdd() {
+        when(mem0Client.addMemoryAsync(eq("user123"), eq("test-app"), anyList())).thenReturn(Mono.empty());
+
+        StepVerifier.create(store.addMessagesAsync("user123", List.of(
+                        UserMessage.from("My name is Will"), AiMessage.from("Hi Will"),
+                        UserMessage.from("I live in Paris"), AiMessage.from("Nice city"))))
+                .verifyComplete();
+
+        verify(mem0Client, times(1)).addMemoryAsync("user123", "test-app", List.of(
+                new Mem0Client.Message("user", "My name is Will"),
+                new Mem0Client.Message("assistant", "Hi Will"),
+                new Mem0Client.Message("user", "I live in Paris"),
+                new Mem0Client.Message("assistant", "Nice city")));
+    }
+}
@@ -0,0 +1,137 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class Mem0ChatMemoryTest {
+
+    @Mock
+    private Mem0ChatMemoryStore store;
+
+    private final Object turn = new Object();
+
+    private Mem0ChatMemory memory(String query) {
+        return memory(query, () -> turn);
+    }
+
+    private Mem0ChatMemory memory(String query, Supplier<Object> currentTurn) {
+        return Mem0ChatMemory.builder()
+                .chatMemoryStore(store)
+                .memoryId("user123")
+                .querySupplier(() -> query)
+                .turnSupplier(currentTurn)
+                .prefetchDeadline(Duration.ofMillis(50))
+                .build();
+    }
+
+    @Test
+    void givenPrefetchedHistory_whenMessages_thenJoinsItWithoutSearchingAgain() {
+        when(store.searchMessagesAsync("user123", "What's my name?"))
+                .thenReturn(Mono.just(List.of(UserMessage.from("Name is Will"))));
+        Mem0ChatMemory memory = memory("What's my name?");
+
+        memory.prefetch(turn, "What's my name?");
+        List<ChatMessage> messages = memory.messages();
+
+        assertEquals(List.of(UserMessage.from("Name is Will"), UserMessage.from("What's my name?")), messages);
+        verify(store, never()).searchMessages(any(), anyString());
+    }
+
+    @Test
+    void givenPrefetchedHistory_whenMessagesAskedAgain_thenJoinsItUntilTurnEnds() {
+        when(store.searchMessagesAsync("user123", "What's my name?"))
+                .thenReturn(Mono.just(List.of(UserMessage.from("Name is Will"))));
+        when(store.searchMessages("user123", "What's my name?")).thenReturn(List.of());
+        Mem0ChatMemory memory = memory("What's my name?");
+
+        memory.prefetch(turn, "What's my name?");
+        memory.messages();
+        // e.g. the semantic cache reads the context before the AI service does
+        assertEquals(UserMessage.from("Name is Will"), memory.messages().getFirst());
+        verify(store, never()).searchMessages(any(), anyString());
+
+        memory.endTurn(turn);
+        memory.messages();
+        verify(store).searchMessages("user123", "What's my name?");
+    }
+
+    @Test
+    void givenSlowPrefetch_whenDeadlinePasses_thenFallsBackToCachedHistory() {
+        Sinks.One<List<ChatMessage>> pending = Sinks.one();
+        when(store.searchMessagesAsync("user123", "What's my name?")).thenReturn(pending.asMono());
+        when(store.cachedMessages("user123", "What's my name?")).thenReturn(List.of(UserMessage.from("Name is Will")));
+        Mem0ChatMemory memory = memory("What's my name?");
+
+        memory.prefetch(turn, "What's my name?");
+        List<ChatMessage> messages = memory.messages();
+
+        assertEquals(List.of(UserMessage.from("Name is Will"), UserMessage.from("What's my name?")), messages);
+        verify(store, never()).searchMessages(any(), anyString());
+    }
+
+    @Test
+    void givenPrefetchOfOtherTurn_whenMessages_thenSearchesForTheCurrentOne() {
+        when(store.searchMessagesAsync("user123", "earlier question")).thenReturn(Mono.just(List.of()));
+        when(store.searchMessages("user123", "What's my name?")).thenReturn(List.of(UserMessage.from("Name is Will")));
+        Mem0ChatMemory memory = memory("What's my name?");
+
+        memory.prefetch(new Object(), "earlier question");
+        List<ChatMessage> messages = memory.messages();
+
+        assertEquals(List.of(UserMessage.from("Name is Will"), UserMessage.from("What's my name?")), messages);
+    }
+
+    @Test
+    void givenQueuedTurnsWithSameQuery_whenMessages_thenEachJoinsItsOwnPrefetch() {
+        Object first = new Object();
+        Object second = new Object();
+        AtomicReference<Object> currentTurn = new AtomicReference<>();
+        when(store.searchMessagesAsync("user123", "What's my name?"))
+                .thenReturn(Mono.just(List.of(UserMessage.from("Name is Will"))))
+                .thenReturn(Mono.just(List.of(UserMessage.from("Name is Bill"))));
+        Mem0ChatMemory memory = memory("What's my name?", currentTurn::get);
+
+        memory.prefetch(first, "What's my name?");
+        memory.prefetch(second, "What's my name?");
+
+        currentTurn.set(first);
+        assertEquals(UserMessage.from("Name is Will"), memory.messages().getFirst());
+        currentTurn.set(second);
+        assertEquals(UserMessage.from("Name is Bill"), memory.messages().getFirst());
+        verify(store, never()).searchMessages(any(), anyString());
+    }
+
+    @Test
+    void givenManyPendingPrefetches_whenPrefetch_thenKeepsThoseInFlightAndDropsSettledOnes() {
+        Sinks.One<List<ChatMessage>> pending = Sinks.one();
+        when(store.searchMessagesAsync("user123", "pending")).thenReturn(pending.asMono());
+        when(store.searchMessagesAsync("user123", "settled")).thenReturn(Mono.just(List.of()));
+        Object inFlight = new Object();
+        Mem0ChatMemory memory = memory("pending", () -> inFlight);
+
+        memory.prefetch(inFlight, "pending");
+        for (int i = 0; i < 40; i++) {
+            memory.prefetch(new Object(), "settled");
+        }
+        pending.tryEmitValue(List.of(UserMessage.from("Name is Will")));
+
+        assertEquals(List.of(UserMessage.from("Name is Will"), UserMessage.from("pending")), memory.messages());
+        verify(store, never()).searchMessages(any(), anyString());
+    }
+}
@@ -0,0 +1,69 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.will.langchain4jpoc.loadtest.Mem0StubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Mem0ClientTest {
+
+    private Mem0StubServer server;
+    private SimpleMeterRegistry meterRegistry;
+    private Mem0Client mem0Client;
+
+    @BeforeEach
+    void setUp() {
+        // slow enough for the concurrent reads to overlap
+        server = new Mem0StubServer(Duration.ofMillis(300));
+        meterRegistry = new SimpleMeterRegistry();
+        mem0Client = new Mem0Client("stub", server.baseUrl(), WebClient.create(), new ObjectMapper(), meterRegistry);
+        mem0Client.addMemory("user123", "test-app", List.of(new Mem0Client.Message("user", "Hello, my name is Will")));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void givenIdenticalConcurrentSearches_whenSubscribed_thenShareOneMem0Call() {
+        List<List<Mem0Memory>> results = Mono.zip(
+                        mem0Client.searchMemoriesAsync("What is my name?", "user123", "test-app", 3),
+                        mem0Client.searchMemoriesAsync("What is my name?", "user123", "test-app", 3),
+                        mem0Client.searchMemoriesAsync("What is my name?", "user123", "test-app", 3))
+                .map(tuple -> List.of(tuple.getT1(), tuple.getT2(), tuple.getT3()))
+                .block(Duration.ofSeconds(5));
+
+        assertNotNull(results);
+        results.forEach(memories -> assertEquals("Hello, my name is Will", memories.getFirst().memory()));
+        assertEquals(1, meterRegistry.get("mem0.client.requests").tags("operation", "search").timer().count());
+        assertEquals(2, meterRegistry.get("mem0.client.deduplicated").tags("operation", "search").counter().count());
+    }
+
+    @Test
+    void givenDifferentQueries_whenSubscribedConcurrently_thenEachCallsMem0() {
+        Mono.zip(
+                        mem0Client.searchMemoriesAsync("What is my name?", "user123", "test-app", 3),
+                        mem0Client.searchMemoriesAsync("Where do I live?", "user123", "test-app", 3))
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(2, meterRegistry.get("mem0.client.requests").tags("operation", "search").timer().count());
+    }
+
+    @Test
+    void givenCompletedSearch_whenSearchAgain_thenCallsMem0Again() {
+        mem0Client.searchMemories("What is my name?", "user123", "test-app", 3);
+        mem0Client.searchMemories("What is my name?", "user123", "test-app", 3);
+
+        assertEquals(2, meterRegistry.get("mem0.client.requests").tags("operation", "search").timer().count());
+    }
+}
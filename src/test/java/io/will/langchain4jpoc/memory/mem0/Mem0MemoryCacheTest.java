@@ -0,0 +1,54 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Mem0MemoryCacheTest {
+
+    private final Mem0MemoryCache cache = new Mem0MemoryCache(true, 100, Duration.ofSeconds(60));
+
+    private final List<ChatMessage> history = List.of(UserMessage.from("Name is Will"));
+
+    @Test
+    void givenCachedUsers_whenOneInvalidated_thenOnlyItsEntriesAreGone() {
+        cache.put("user1", "app", "What is my name?", 3, history, System.nanoTime());
+        cache.put("user1", "app", null, 0, history, System.nanoTime());
+        cache.put("user2", "app", "What is my name?", 3, history, System.nanoTime());
+
+        cache.invalidateUser("user1");
+
+        assertNull(cache.get("user1", "app", "What is my name?", 3));
+        assertNull(cache.get("user1", "app", null, 0));
+        assertEquals(history, cache.get("user2", "app", "What is my name?", 3));
+    }
+
+    @Test
+    void givenReadStartedBeforeInvalidation_whenPut_thenNotCached() {
+        long readStartedAt = System.nanoTime();
+        cache.invalidateUser("user1");
+
+        cache.put("user1", "app", "What is my name?", 3, history, readStartedAt);
+        assertNull(cache.get("user1", "app", "What is my name?", 3));
+
+        cache.put("user1", "app", "What is my name?", 3, history, System.nanoTime());
+        assertEquals(history, cache.get("user1", "app", "What is my name?", 3));
+    }
+
+    @Test
+    void givenEntryReplaced_whenUserInvalidated_thenStillRemoved() throws Exception {
+        cache.put("user1", "app", "What is my name?", 3, history, System.nanoTime());
+        cache.put("user1", "app", "What is my name?", 3, history, System.nanoTime());
+        // the removal listener of the replaced entry runs asynchronously
+        Thread.sleep(50);
+
+        cache.invalidateUser("user1");
+
+        assertNull(cache.get("user1", "app", "What is my name?", 3));
+    }
+}
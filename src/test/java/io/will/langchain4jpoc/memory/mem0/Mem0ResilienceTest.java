@@ -0,0 +1,146 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Mem0ResilienceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private Mem0Resilience resilience(Duration openDuration) {
+        return new Mem0Resilience(true, Duration.ofMillis(100), Duration.ofSeconds(2), 2.0,
+                true, Duration.ofMillis(20), 2, Duration.ofMillis(500),
+                10, 5, 0.5, openDuration, meterRegistry);
+    }
+
+    private void warmUp(Mem0Resilience resilience) {
+        for (int i = 0; i < 20; i++) {
+            resilience.read("search", () -> Mono.just("fast")).block();
+        }
+    }
+
+    @Test
+    void givenNoHistory_whenTimeout_thenMaximum() {
+        assertEquals(Duration.ofSeconds(2), resilience(Duration.ofSeconds(30)).timeout("search"));
+    }
+
+    @Test
+    void givenFastCalls_whenTimeout_thenShrinksToMinimum() {
+        Mem0Resilience resilience = resilience(Duration.ofSeconds(30));
+        warmUp(resilience);
+
+        assertEquals(Duration.ofMillis(100), resilience.timeout("search"));
+    }
+
+    @Test
+    void givenTimedOutCall_whenTimeout_thenWidens() {
+        Mem0Resilience resilience = resilience(Duration.ofSeconds(30));
+        for (int i = 0; i < 20; i++) {
+            resilience.write("add", () -> Mono.just("fast")).block();
+        }
+        Duration before = resilience.timeout("add");
+        assertTrue(before.compareTo(Duration.ofMillis(150)) < 0, before.toString());
+
+        StepVerifier.create(resilience.write("add", () -> Mono.delay(Duration.ofMillis(150))))
+                .verifyError(TimeoutException.class);
+
+        // the timed-out call is the slowest sample, counted at the timeout it ran with
+        assertEquals(before.multipliedBy(2), resilience.timeout("add"));
+        StepVerifier.create(resilience.write("add", () -> Mono.delay(Duration.ofMillis(150))))
+                .expectNext(0L)
+                .verifyComplete();
+    }
+
+    @Test
+    void givenSlowFirstAttempt_whenRead_thenHedgeAnswers() {
+        Mem0Resilience resilience = resilience(Duration.ofSeconds(30));
+        warmUp(resilience);
+        AtomicInteger attempts = new AtomicInteger();
+
+        StepVerifier.create(resilience.read("search", () -> attempts.incrementAndGet() == 1 ? Mono.never() : Mono.just("hedged")))
+                .expectNext("hedged")
+                .verifyComplete();
+
+        assertEquals(2, attempts.get());
+        assertEquals(1, meterRegistry.get("mem0.resilience.hedges").counter().count());
+    }
+
+    @Test
+    void givenTooManyRequests_whenRetryAfterIsShort_thenRetries() {
+        Mem0Resilience resilience = resilience(Duration.ofSeconds(30));
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "0");
+        AtomicInteger attempts = new AtomicInteger();
+
+        StepVerifier.create(resilience.write("add", () -> attempts.incrementAndGet() == 1
+                        ? Mono.error(WebClientResponseException.create(429, "Too Many Requests", headers, new byte[0], null))
+                        : Mono.just("added")))
+                .expectNext("added")
+                .verifyComplete();
+
+        assertEquals(2, attempts.get());
+        assertEquals(Mem0Resilience.CircuitState.CLOSED, resilience.circuitState());
+    }
+
+    @Test
+    void givenRepeatedFailures_whenRead_thenShortCircuitsUntilProbeSucceeds() throws Exception {
+        Mem0Resilience resilience = resilience(Duration.ofMillis(100));
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(resilience.write("add", () -> {
+                        calls.incrementAndGet();
+                        return Mono.error(new IllegalStateException("connection refused"));
+                    }))
+                    .verifyError(IllegalStateException.class);
+        }
+        assertEquals(Mem0Resilience.CircuitState.OPEN, resilience.circuitState());
+
+        StepVerifier.create(resilience.write("add", () -> {
+                    calls.incrementAndGet();
+                    return Mono.just("added");
+                }))
+                .verifyError(Mem0UnavailableException.class);
+        assertEquals(5, calls.get());
+
+        Thread.sleep(150);
+        StepVerifier.create(resilience.write("add", () -> Mono.just("added")))
+                .expectNext("added")
+                .verifyComplete();
+        assertEquals(Mem0Resilience.CircuitState.CLOSED, resilience.circuitState());
+    }
+
+    @Test
+    void givenRetryAfterHeader_whenParsed_thenSecondsOrDate() {
+        HttpHeaders seconds = new HttpHeaders();
+        seconds.set(HttpHeaders.RETRY_AFTER, "3");
+        assertEquals(Duration.ofSeconds(3), Mem0Resilience.retryAfter(seconds));
+        assertEquals(Duration.ofSeconds(1), Mem0Resilience.retryAfter(new HttpHeaders()));
+
+        HttpHeaders date = new HttpHeaders();
+        date.set(HttpHeaders.RETRY_AFTER, DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(10)));
+        Duration untilDate = Mem0Resilience.retryAfter(date);
+        // the header has a resolution of seconds
+        assertTrue(untilDate.compareTo(Duration.ofSeconds(8)) > 0 && untilDate.compareTo(Duration.ofSeconds(10)) <= 0, untilDate.toString());
+
+        HttpHeaders past = new HttpHeaders();
+        past.set(HttpHeaders.RETRY_AFTER, "Wed, 21 Oct 2015 07:28:00 GMT");
+        assertEquals(Duration.ZERO, Mem0Resilience.retryAfter(past));
+
+        HttpHeaders invalid = new HttpHeaders();
+        invalid.set(HttpHeaders.RETRY_AFTER, "soon");
+        assertEquals(Duration.ofSeconds(1), Mem0Resilience.retryAfter(invalid));
+    }
+}
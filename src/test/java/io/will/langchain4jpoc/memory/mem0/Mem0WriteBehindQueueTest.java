@@ -0,0 +1,144 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class Mem0WriteBehindQueueTest {
+
+    @Mock
+    private Mem0Client mem0Client;
+
+    private Mem0WriteBehindQueue queue;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    private Mem0WriteBehindQueue newQueue(int capacity, Mem0WriteBehindQueue.OverflowPolicy overflowPolicy) {
+        // long flush interval, the tests flush explicitly
+        return new Mem0WriteBehindQueue(mem0Client, Mem0MemoryCache.disabled(), "test-app", true,
+                Duration.ofHours(1), 10, capacity, overflowPolicy, 2, Duration.ofMillis(10), Duration.ofSeconds(1),
+                meterRegistry);
+    }
+
+    @Test
+    void givenQueuedMessages_whenFlush_thenSendsOneBatchInOrder() {
+        queue = newQueue(100, Mem0WriteBehindQueue.OverflowPolicy.DROP_OLDEST);
+        when(mem0Client.addMemoryAsync(eq("user123"), eq("test-app"), anyList()))
+                .thenReturn(Mono.empty());
+
+        queue.enqueue("user123", new Mem0Client.Message("user", "Hello, my name is Will"));
+        queue.enqueue("user123", new Mem0Client.Message("assistant", "Nice to meet you, Will"));
+        queue.flushAll();
+
+        verify(mem0Client, times(1)).addMemoryAsync("user123", "test-app", List.of(
+                new Mem0Client.Message("user", "Hello, my name is Will"),
+                new Mem0Client.Message("assistant", "Nice to meet you, Will")));
+        assertEquals(0, queue.pendingCount());
+    }
+
+    @Test
+    void givenFullQueue_whenDropOldest_thenKeepsLatestMessages() {
+        queue = newQueue(2, Mem0WriteBehindQueue.OverflowPolicy.DROP_OLDEST);
+        when(mem0Client.addMemoryAsync(eq("user123"), eq("test-app"), anyList()))
+                .thenReturn(Mono.empty());
+
+        queue.enqueue("user123", new Mem0Client.Message("user", "one"));
+        queue.enqueue("user123", new Mem0Client.Message("user", "two"));
+        queue.enqueue("user123", new Mem0Client.Message("user", "three"));
+        queue.flushAll();
+
+        assertEquals(1, queue.droppedCount());
+        verify(mem0Client).addMemoryAsync("user123", "test-app", List.of(
+                new Mem0Client.Message("user", "two"),
+                new Mem0Client.Message("user", "three")));
+    }
+
+    @Test
+    void givenBatchInFlight_whenCallerRuns_thenChainedAfterItWithoutBlocking() {
+        queue = newQueue(1, Mem0WriteBehindQueue.OverflowPolicy.CALLER_RUNS);
+        Sinks.Empty<Void> inFlight = Sinks.empty();
+        when(mem0Client.addMemoryAsync(eq("user123"), eq("test-app"), anyList()))
+                .thenReturn(inFlight.asMono())
+                .thenReturn(Mono.empty());
+
+        queue.enqueue("user123", new Mem0Client.Message("user", "one")).block();
+        queue.flushAll();
+        queue.enqueue("user123", new Mem0Client.Message("user", "two")).block();
+
+        // returns right away, the batch of the caller only goes out after the one in flight
+        Mono<Void> overflow = queue.enqueue("user123", new Mem0Client.Message("user", "three"));
+        verify(mem0Client, times(1)).addMemoryAsync(any(), any(), anyList());
+
+        StepVerifier.create(overflow)
+                .then(inFlight::tryEmitEmpty)
+                .verifyComplete();
+
+        InOrder inOrder = inOrder(mem0Client);
+        inOrder.verify(mem0Client).addMemoryAsync("user123", "test-app", List.of(new Mem0Client.Message("user", "one")));
+        inOrder.verify(mem0Client).addMemoryAsync("user123", "test-app", List.of(
+                new Mem0Client.Message("user", "two"),
+                new Mem0Client.Message("user", "three")));
+        verify(mem0Client, never()).addMemory(any(), any(), anyList());
+        assertEquals(0, queue.pendingCount());
+    }
+
+    @Test
+    void givenFailingMem0_whenFlush_thenRetriedBeforeDropped() throws Exception {
+        queue = newQueue(100, Mem0WriteBehindQueue.OverflowPolicy.DROP_OLDEST);
+        AtomicInteger attempts = new AtomicInteger();
+        when(mem0Client.addMemoryAsync(eq("user123"), eq("test-app"), anyList()))
+                .thenReturn(Mono.defer(() -> {
+                    attempts.incrementAndGet();
+                    return Mono.error(new Mem0UnavailableException("Mem0 circuit breaker is open"));
+                }));
+
+        queue.enqueue("user123", new Mem0Client.Message("user", "one")).block();
+        queue.enqueue("user123", new Mem0Client.Message("user", "two")).block();
+        queue.flushAll();
+        queue.shutdown();
+
+        assertEquals(3, attempts.get());
+        assertEquals(2, queue.droppedCount());
+        assertEquals(2.0, meterRegistry.get("mem0.write-behind.dropped").functionCounter().count());
+    }
+
+    @Test
+    void givenFailedAttempt_whenRetrySucceeds_thenNothingDropped() {
+        queue = newQueue(100, Mem0WriteBehindQueue.OverflowPolicy.DROP_OLDEST);
+        AtomicInteger attempts = new AtomicInteger();
+        when(mem0Client.addMemoryAsync(eq("user123"), eq("test-app"), anyList()))
+                .thenReturn(Mono.defer(() -> attempts.incrementAndGet() == 1
+                        ? Mono.error(new RuntimeException("connection reset"))
+                        : Mono.empty()));
+
+        queue.enqueue("user123", new Mem0Client.Message("user", "one")).block();
+        queue.flushAll();
+        queue.shutdown();
+
+        assertEquals(2, attempts.get());
+        assertEquals(0, queue.droppedCount());
+    }
+}
@@ -0,0 +1,84 @@
+package io.will.langchain4jpoc.memory.mem0;
+
+import io.micrometer.context.ContextSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryContextTest {
+
+    @AfterEach
+    void tearDown() {
+        QueryContext.clearQuery("user123");
+    }
+
+    @Test
+    void givenReactorContext_whenScopeOpen_thenQueryVisibleOnThread() {
+        try (ContextSnapshot.Scope scope = QueryContext.openScope(QueryContext.createContext("user123", "What is my name?"))) {
+            assertEquals("What is my name?", QueryContext.getQuery("user123"));
+        }
+        assertNull(QueryContext.getQuery("user123"));
+        assertFalse(QueryContext.isBound());
+    }
+
+    @Test
+    void givenReactorContext_whenScopeOpen_thenTurnOfTheQueryVisibleOnThread() {
+        Context first = QueryContext.createContext("user123", "What is my name?");
+        Context second = QueryContext.createContext("user123", "What is my name?");
+        Object turn = QueryContext.getTurnFromContext(first, "user123");
+
+        try (ContextSnapshot.Scope scope = QueryContext.openScope(first)) {
+            assertSame(turn, QueryContext.getTurn("user123"));
+        }
+        assertNotSame(turn, QueryContext.getTurnFromContext(second, "user123"));
+        assertNull(QueryContext.getTurn("user123"));
+    }
+
+    @Test
+    void givenQuerySetOnThread_whenScopeClosed_thenPreviousQueryRestored() {
+        QueryContext.setQuery("user123", "outer");
+
+        try (ContextSnapshot.Scope scope = QueryContext.openScope(QueryContext.createContext("user123", "inner"))) {
+            assertEquals("inner", QueryContext.getQuery("user123"));
+        }
+        assertEquals("outer", QueryContext.getQuery("user123"));
+    }
+
+    @Test
+    void givenPooledThread_whenTurnsFinish_thenNoQueriesLeftBehind() {
+        Scheduler single = Schedulers.newSingle("query-context-test");
+        try {
+            Mono<String> turn = Mono.deferContextual(ctx -> Mono.fromCallable(() -> {
+                        try (ContextSnapshot.Scope scope = QueryContext.openScope(ctx)) {
+                            return QueryContext.getQuery("user123");
+                        }
+                    }))
+                    .subscribeOn(single)
+                    .contextWrite(QueryContext.createContext("user123", "What is my name?"));
+
+            StepVerifier.create(turn).expectNext("What is my name?").verifyComplete();
+            StepVerifier.create(turn).expectNext("What is my name?").verifyComplete();
+
+            // the same pooled thread afterwards
+            StepVerifier.create(Mono.fromCallable(QueryContext::isBound).subscribeOn(single))
+                    .expectNext(false)
+                    .verifyComplete();
+        } finally {
+            single.dispose();
+        }
+    }
+
+    @Test
+    void givenLastQueryCleared_whenCheckThread_thenNothingBound() {
+        QueryContext.setQuery("user123", "What is my name?");
+        QueryContext.clearQuery("user123");
+
+        assertFalse(QueryContext.isBound());
+    }
+}
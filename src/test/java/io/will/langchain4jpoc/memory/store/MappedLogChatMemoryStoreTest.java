@@ -0,0 +1,51 @@
+package io.will.langchain4jpoc.memory.store;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedLogChatMemoryStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private MappedSegmentLog openLog() {
+        return new MappedSegmentLog(directory, 2, 4096, MappedSegmentLog.FsyncPolicy.NEVER,
+                Duration.ofSeconds(1), Duration.ZERO, 0.5);
+    }
+
+    @Test
+    void givenMixedMessages_whenStoreReopened_thenReadBackEqual() {
+        List<ChatMessage> messages = List.of(
+                SystemMessage.from("You are a helpful assistant"),
+                UserMessage.from("Hello, my name is Will ✋"),
+                AiMessage.from(ToolExecutionRequest.builder().id("1").name("weather").arguments("{\"city\":\"Guangzhou\"}").build()),
+                ToolExecutionResultMessage.from("1", "weather", "sunny"),
+                AiMessage.from("Nice to meet you, Will"));
+        try (MappedLogChatMemoryStore store = new MappedLogChatMemoryStore(openLog())) {
+            store.updateMessages("user123", messages);
+            assertEquals(messages, store.getMessages("user123"));
+        }
+
+        try (MappedLogChatMemoryStore store = new MappedLogChatMemoryStore(openLog())) {
+            List<ChatMessage> stored = store.getMessages("user123");
+
+            assertEquals(5, stored.size());
+            assertEquals(messages.get(4), stored.get(4));
+            assertEquals(messages, stored);
+            assertThrows(UnsupportedOperationException.class, () -> stored.add(UserMessage.from("more")));
+            assertEquals(List.of(), store.getMessages("unknown"));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package io.will.langchain4jpoc.memory.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedSegmentLogTest {
+
+    @TempDir
+    Path directory;
+
+    private MappedSegmentLog open() {
+        return new MappedSegmentLog(directory, 2, 4096, MappedSegmentLog.FsyncPolicy.NEVER,
+                Duration.ofSeconds(1), Duration.ZERO, 0.5);
+    }
+
+    private static String text(ByteBuffer value) {
+        return value != null ? StandardCharsets.UTF_8.decode(value).toString() : null;
+    }
+
+    @Test
+    void givenOverwrittenKeys_whenGet_thenReturnsLatestValue() {
+        try (MappedSegmentLog log = open()) {
+            for (int i = 0; i < 200; i++) {
+                log.put("user" + (i % 10), ("history " + i).getBytes(StandardCharsets.UTF_8));
+            }
+
+            assertEquals("history 191", text(log.get("user1")));
+            assertEquals(10, log.size());
+        }
+    }
+
+    @Test
+    void givenClosedLog_whenReopened_thenRecoversIndexAndDeletes() {
+        try (MappedSegmentLog log = open()) {
+            log.put("user1", "first".getBytes(StandardCharsets.UTF_8));
+            log.put("user1", "second".getBytes(StandardCharsets.UTF_8));
+            log.put("user2", "other".getBytes(StandardCharsets.UTF_8));
+            log.delete("user2");
+        }
+
+        try (MappedSegmentLog log = open()) {
+            assertEquals("second", text(log.get("user1")));
+            assertNull(log.get("user2"));
+            assertEquals(1, log.size());
+        }
+    }
+
+    @Test
+    void givenSupersededRecords_whenCompact_thenShrinksAndKeepsLiveValues() {
+        try (MappedSegmentLog log = open()) {
+            for (int i = 0; i < 500; i++) {
+                log.put("user" + (i % 5), ("history " + i + " " + "x".repeat(40)).getBytes(StandardCharsets.UTF_8));
+            }
+            log.put("large", "y".repeat(10_000).getBytes(StandardCharsets.UTF_8));
+            long before = log.diskBytes();
+
+            log.compact();
+
+            assertTrue(log.diskBytes() < before);
+            assertTrue(text(log.get("user4")).startsWith("history 499 "));
+            assertEquals(10_000, text(log.get("large")).length());
+        }
+
+        try (MappedSegmentLog log = open()) {
+            assertTrue(text(log.get("user4")).startsWith("history 499 "));
+            assertEquals(6, log.size());
+        }
+    }
+
+    @Test
+    void givenTombstoneWhoseValueIsCompactedAway_whenCompact_thenTombstoneDroppedToo() throws Exception {
+        String filler = "x".repeat(1000);
+        try (MappedSegmentLog log = new MappedSegmentLog(directory, 1, 4096, MappedSegmentLog.FsyncPolicy.NEVER,
+                Duration.ofSeconds(1), Duration.ZERO, 0.5)) {
+            log.put("gone", filler.getBytes(StandardCharsets.UTF_8));
+            for (int round = 0; round < 3; round++) {
+                if (round == 1) {
+                    log.delete("gone");
+                }
+                for (int i = 0; i < 3; i++) {
+                    log.put("user" + i, (round + filler).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            log.compact();
+        }
+        // a compaction that crashed before replacing its segment
+        Path shard = directory.resolve("shard-000");
+        Path leftover = shard.resolve("00000000000000000001.log.compacting");
+        Files.write(leftover, "garbage".getBytes(StandardCharsets.UTF_8));
+
+        try (MappedSegmentLog log = new MappedSegmentLog(directory, 1, 4096, MappedSegmentLog.FsyncPolicy.NEVER,
+                Duration.ofSeconds(1), Duration.ZERO, 0.5)) {
+            assertNull(log.get("gone"));
+            assertTrue(text(log.get("user2")).startsWith("2x"));
+            assertEquals(3, log.size());
+        }
+        assertFalse(Files.exists(leftover));
+        try (var files = Files.list(shard)) {
+            for (Path file : files.toList()) {
+                String content = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+                assertFalse(content.contains("gone"), file + " still holds a record of the deleted key");
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.will.langchain4jpoc.memory.store;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackedChatMemoryStoreTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void givenMixedMessages_whenStored_thenReadBackEqual() {
+        PackedChatMemoryStore store = new PackedChatMemoryStore(-1, meterRegistry);
+        List<ChatMessage> messages = List.of(
+                SystemMessage.from("You are a helpful assistant"),
+                UserMessage.from("Hello, my name is Will ✋"),
+                UserMessage.from("Will", "I'm named"),
+                AiMessage.from(ToolExecutionRequest.builder().id("1").name("weather").arguments("{\"city\":\"Guangzhou\"}").build()),
+                ToolExecutionResultMessage.from("1", "weather", "sunny"),
+                AiMessage.from("Nice to meet you, Will"));
+
+        store.updateMessages("user123", messages);
+
+        assertEquals(messages, store.getMessages("user123"));
+        assertEquals(messages.get(5), store.getMessages("user123").get(5));
+    }
+
+    @Test
+    void givenLongHistory_whenStored_thenDeflatedBelowItsTextSize() {
+        PackedChatMemoryStore store = new PackedChatMemoryStore(512, meterRegistry);
+        List<ChatMessage> messages = new ArrayList<>();
+        int textBytes = 0;
+        for (int i = 0; i < 50; i++) {
+            String text = "Message number " + i + " of a conversation that repeats itself quite a lot";
+            messages.add(i % 2 == 0 ? UserMessage.from(text) : AiMessage.from(text));
+            textBytes += text.length();
+        }
+
+        store.updateMessages("user123", messages);
+
+        assertEquals(messages, store.getMessages("user123"));
+        assertTrue(store.residentBytes("user123") < textBytes / 2, "resident bytes: " + store.residentBytes("user123"));
+    }
+
+    @Test
+    void givenStoredHistories_whenReplacedAndDeleted_thenResidentBytesFollow() {
+        PackedChatMemoryStore store = new PackedChatMemoryStore(-1, meterRegistry);
+        store.updateMessages("user123", List.of(UserMessage.from("Hello")));
+        store.updateMessages("user456", List.of(UserMessage.from("Hi")));
+        store.updateMessages("user123", List.of(UserMessage.from("Hello"), AiMessage.from("Hello to you too")));
+
+        assertEquals(store.residentBytes("user123") + store.residentBytes("user456"), store.totalResidentBytes());
+        assertEquals(store.totalResidentBytes(), meterRegistry.get("chat-memory.packed.resident.bytes").gauge().value());
+
+        store.deleteMessages("user123");
+
+        assertTrue(store.getMessages("user123").isEmpty());
+        assertEquals(store.residentBytes("user456"), store.totalResidentBytes());
+        assertEquals(1, meterRegistry.get("chat-memory.packed.sessions").gauge().value());
+    }
+
+    @Test
+    void givenTruncatedDeflatedHistory_whenRead_thenFailsInsteadOfSpinning() {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            messages.add(UserMessage.from("Message number " + i + " of a long conversation"));
+        }
+        PackedChatMemoryStore.PackedHistory history = PackedChatMemoryStore.PackedHistory.pack(messages, 0);
+        assertTrue(history.compressed());
+
+        PackedChatMemoryStore.PackedHistory truncated = new PackedChatMemoryStore.PackedHistory(
+                Arrays.copyOf(history.data(), history.data().length / 2), history.rawLength(), history.count(), true);
+
+        assertThrows(IllegalStateException.class, truncated::raw);
+    }
+
+    @Test
+    void givenView_whenModified_thenRejected() {
+        PackedChatMemoryStore store = new PackedChatMemoryStore(-1, meterRegistry);
+        store.updateMessages("user123", List.of(UserMessage.from("Hello")));
+
+        assertThrows(UnsupportedOperationException.class, () -> store.getMessages("user123").add(AiMessage.from("Hi")));
+    }
+}
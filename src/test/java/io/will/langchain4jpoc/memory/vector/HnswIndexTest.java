@@ -0,0 +1,74 @@
+package io.will.langchain4jpoc.memory.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HnswIndexTest {
+
+    @Test
+    void givenEmptyIndex_whenSearched_thenReturnsNothing() {
+        assertTrue(new HnswIndex(16, 100, 50).search(new float[]{1, 0}, 3).isEmpty());
+    }
+
+    @Test
+    void givenFewVectors_whenSearched_thenReturnsExactTopK() {
+        HnswIndex index = new HnswIndex(16, 100, 50);
+        index.add(HnswIndex.normalize(new float[]{1, 0}));
+        index.add(HnswIndex.normalize(new float[]{0, 1}));
+        index.add(HnswIndex.normalize(new float[]{1, 1}));
+
+        List<HnswIndex.Scored> hits = index.search(HnswIndex.normalize(new float[]{1, 0.1f}), 2);
+
+        assertEquals(List.of(0, 2), hits.stream().map(HnswIndex.Scored::id).toList());
+        assertTrue(hits.get(0).score() > hits.get(1).score());
+    }
+
+    @Test
+    void givenManyVectors_whenSearched_thenRecallIsHigh() {
+        Random random = new Random(7);
+        HnswIndex index = new HnswIndex(16, 100, 50);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            float[] vector = randomVector(random, 32);
+            vectors.add(vector);
+            index.add(vector);
+        }
+
+        int found = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random, 32);
+            List<Integer> exact = IntStream.range(0, vectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble((Integer i) -> dot(query, vectors.get(i))).reversed())
+                    .limit(10)
+                    .toList();
+            List<Integer> approximate = index.search(query, 10).stream().map(HnswIndex.Scored::id).toList();
+            found += (int) approximate.stream().filter(exact::contains).count();
+        }
+
+        assertTrue(found / (queries * 10.0) > 0.9, "recall was " + found / (queries * 10.0));
+    }
+
+    private static float[] randomVector(Random random, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return HnswIndex.normalize(vector);
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,156 @@
+package io.will.langchain4jpoc.memory.vector;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalVectorChatMemoryStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void givenMessages_whenSearched_thenReturnsMostRelevantInInsertionOrder() {
+        LocalVectorChatMemoryStore store = store("");
+        store.updateMessages("alice", List.of(UserMessage.from("My cat is called Tom")));
+        store.updateMessages("alice", List.of(AiMessage.from("Tom is a nice name for a cat")));
+        store.updateMessages("alice", List.of(UserMessage.from("I work as a plumber")));
+        store.updateMessages("alice", List.of(UserMessage.from("I live in Berlin")));
+
+        List<ChatMessage> messages = store.searchMessages("alice", "what is my cat called");
+
+        assertEquals(List.of(UserMessage.from("My cat is called Tom"), AiMessage.from("Tom is a nice name for a cat")),
+                messages.subList(0, 2));
+        assertEquals(3, messages.size());
+    }
+
+    @Test
+    void givenMessagesOfOtherUser_whenSearched_thenNotReturned() {
+        LocalVectorChatMemoryStore store = store("");
+        store.updateMessages("bob", List.of(UserMessage.from("My cat is called Tom")));
+
+        assertTrue(store.searchMessages("alice", "what is my cat called").isEmpty());
+    }
+
+    @Test
+    void givenPersistedMessages_whenStoreRecreated_thenIndexIsRebuilt() {
+        LocalVectorChatMemoryStore store = store(dir.toString());
+        store.updateMessages("alice", List.of(UserMessage.from("My cat is called Tom")));
+        store.updateMessages("alice", List.of(AiMessage.from("Nice to meet Tom")));
+
+        LocalVectorChatMemoryStore reopened = store(dir.toString());
+
+        assertEquals(List.of(UserMessage.from("My cat is called Tom"), AiMessage.from("Nice to meet Tom")),
+                reopened.getMessages("alice"));
+        assertEquals(2, reopened.size("alice"));
+    }
+
+    @Test
+    void givenTruncatedFile_whenStoreRecreated_thenKeepsCompleteRecords() throws Exception {
+        LocalVectorChatMemoryStore store = store(dir.toString());
+        store.updateMessages("alice", List.of(UserMessage.from("My cat is called Tom")));
+        store.updateMessages("alice", List.of(UserMessage.from("I live in Berlin")));
+        try (var files = Files.list(dir)) {
+            Path file = files.findFirst().orElseThrow();
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+        }
+
+        LocalVectorChatMemoryStore recovered = store(dir.toString());
+        assertEquals(List.of(UserMessage.from("My cat is called Tom")), recovered.getMessages("alice"));
+
+        // appended after the recovered records, not behind the cut-off one
+        recovered.updateMessages("alice", List.of(UserMessage.from("I work in Munich")));
+
+        assertEquals(List.of(UserMessage.from("My cat is called Tom"), UserMessage.from("I work in Munich")),
+                store(dir.toString()).getMessages("alice"));
+    }
+
+    @Test
+    void givenPersistedMessages_whenDeleted_thenGoneAfterRestart() {
+        LocalVectorChatMemoryStore store = store(dir.toString());
+        store.updateMessages("alice", List.of(UserMessage.from("My cat is called Tom")));
+
+        store.deleteMessages("alice");
+
+        assertTrue(store.getMessages("alice").isEmpty());
+        assertTrue(store(dir.toString()).getMessages("alice").isEmpty());
+    }
+
+    @Test
+    void givenCorruptRecord_whenStoreRecreated_thenKeepsRecordsBeforeIt() throws Exception {
+        LocalVectorChatMemoryStore store = store(dir.toString());
+        store.updateMessages("alice", List.of(UserMessage.from("My cat is called Tom")));
+        long firstRecordEnd;
+        try (var files = Files.list(dir)) {
+            firstRecordEnd = Files.size(files.findFirst().orElseThrow());
+        }
+        store.updateMessages("alice", List.of(UserMessage.from("I live in Berlin")));
+        try (var files = Files.list(dir)) {
+            Path file = files.findFirst().orElseThrow();
+            byte[] bytes = Files.readAllBytes(file);
+            // a flipped bit in the text of the second record, its length is still right
+            bytes[(int) firstRecordEnd + 20] ^= 1;
+            Files.write(file, bytes);
+        }
+
+        assertEquals(List.of(UserMessage.from("My cat is called Tom")), store(dir.toString()).getMessages("alice"));
+    }
+
+    @Test
+    void givenMoreUsersThanCached_whenEvictedUserRead_thenReloadedFromFile() {
+        LocalVectorChatMemoryStore store = store(dir.toString(), 1);
+        store.updateMessages("alice", List.of(UserMessage.from("My cat is called Tom")));
+        store.updateMessages("bob", List.of(UserMessage.from("I live in Berlin")));
+        store.updateMessages("carol", List.of(UserMessage.from("I work as a plumber")));
+
+        assertEquals(List.of(UserMessage.from("My cat is called Tom")), store.getMessages("alice"));
+        assertEquals(List.of(UserMessage.from("I live in Berlin")), store.searchMessages("bob", "where do I live"));
+        store.updateMessages("alice", List.of(UserMessage.from("Tom is grey")));
+        assertEquals(List.of(UserMessage.from("My cat is called Tom"), UserMessage.from("Tom is grey")),
+                store.getMessages("alice"));
+    }
+
+    private LocalVectorChatMemoryStore store(String dir) {
+        return store(dir, 100);
+    }
+
+    private LocalVectorChatMemoryStore store(String dir, long maxCachedUsers) {
+        return new LocalVectorChatMemoryStore(new BagOfWordsEmbeddingModel(), 3, 16, 100, 50, dir, maxCachedUsers,
+                new SimpleMeterRegistry());
+    }
+
+    /**
+     * Hashes lower-cased words into a small vector, enough to rank messages by shared words offline.
+     */
+    private static class BagOfWordsEmbeddingModel implements EmbeddingModel {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            return Response.from(textSegments.stream().map(segment -> vectorOf(segment.text())).toList());
+        }
+
+        private Embedding vectorOf(String text) {
+            float[] vector = new float[64];
+            for (String word : text.toLowerCase().split("\\W+")) {
+                if (!word.isEmpty()) {
+                    vector[Math.floorMod(word.hashCode(), vector.length)] += 1;
+                }
+            }
+            return Embedding.from(vector);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.will.langchain4jpoc.streaming;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenCoalescerTest {
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+    private TokenCoalescer coalescer(int maxFrameBytes) {
+        return new TokenCoalescer(true, Duration.ofMillis(30), maxFrameBytes, scheduler, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void givenTokens_whenCoalesced_thenFirstSentAloneAndRestWhenWindowCloses() {
+        Sinks.Many<String> tokens = Sinks.many().unicast().onBackpressureBuffer();
+
+        StepVerifier.create(coalescer(512).coalesce(tokens.asFlux()))
+                .then(() -> tokens.tryEmitNext("Hello"))
+                .expectNext("Hello")
+                .then(() -> {
+                    tokens.tryEmitNext(",");
+                    tokens.tryEmitNext(" world");
+                })
+                .expectNoEvent(Duration.ofMillis(10))
+                .then(() -> scheduler.advanceTimeBy(Duration.ofMillis(30)))
+                .expectNext(", world")
+                .then(() -> {
+                    tokens.tryEmitNext("!");
+                    tokens.tryEmitComplete();
+                })
+                .expectNext("!")
+                .verifyComplete();
+    }
+
+    @Test
+    void givenFrameFull_whenTokenArrives_thenSentWithoutWaitingForWindow() {
+        Flux<String> tokens = Flux.just("first", "abcd", "efgh", "ij");
+
+        StepVerifier.create(coalescer(8).coalesce(tokens))
+                .expectNext("first", "abcdefgh", "ij")
+                .verifyComplete();
+    }
+
+    @Test
+    void givenStreamFails_whenCoalesced_thenCollectedTokensSentBeforeError() {
+        Flux<String> tokens = Flux.just("first", "second")
+                .concatWith(Flux.error(new IllegalStateException("LLM failed")));
+
+        StepVerifier.create(coalescer(512).coalesce(tokens))
+                .expectNext("first", "second")
+                .verifyErrorMessage("LLM failed");
+    }
+
+    @Test
+    void givenDisabled_whenCoalesced_thenTokensPassedThrough() {
+        TokenCoalescer coalescer = new TokenCoalescer(false, Duration.ofMillis(30), 512, scheduler, new SimpleMeterRegistry());
+
+        StepVerifier.create(coalescer.coalesce(Flux.just("a", "b", "c")))
+                .expectNext("a", "b", "c")
+                .verifyComplete();
+    }
+
+    @Test
+    void givenMultiByteText_whenUtf8Length_thenCountsEncodedBytes() {
+        assertEquals(5, TokenCoalescer.utf8Length("hello"));
+        assertEquals(6, TokenCoalescer.utf8Length("中国"));
+        assertEquals(4, TokenCoalescer.utf8Length("😀"));
+    }
+}